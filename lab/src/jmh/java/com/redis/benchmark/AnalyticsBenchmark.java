@@ -0,0 +1,40 @@
+package com.redis.benchmark;
+
+import com.redis.training.L06_AnalyticsExercise;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Benchmarks for L06_AnalyticsExercise tracking: the pipelined commands of
+ * recordPageView/recordTimeSpent against the same updates as one EVALSHA call.
+ * Payload size does not apply; pages and users are drawn from the key cardinality.
+ */
+public class AnalyticsBenchmark extends RedisBenchmarkState {
+    private static final String DATE = "2024-01-15";
+
+    private L06_AnalyticsExercise exercise;
+
+    @Override
+    protected void setUpBenchmark() {
+        exercise = new L06_AnalyticsExercise(jedisPool);
+    }
+
+    @Benchmark
+    public Long recordPageView() {
+        return exercise.recordPageView(PREFIX, randomKey("page"), DATE);
+    }
+
+    @Benchmark
+    public Long recordPageViewScripted() {
+        return exercise.recordPageViewScripted(PREFIX, randomKey("page"), DATE);
+    }
+
+    @Benchmark
+    public Long recordTimeSpent() {
+        return exercise.recordTimeSpent(PREFIX, randomKey("user"), "home", 30);
+    }
+
+    @Benchmark
+    public Long recordTimeSpentScripted() {
+        return exercise.recordTimeSpentScripted(PREFIX, randomKey("user"), "home", 30);
+    }
+}
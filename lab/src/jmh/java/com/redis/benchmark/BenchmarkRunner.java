@@ -0,0 +1,80 @@
+package com.redis.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the lab benchmarks once per thread count and writes one JSON result file per run,
+ * e.g. build/reports/jmh/results-t4.json. Compare the files of two builds to spot regressions.
+ * <p>
+ * System properties (set through the Gradle jmh task):
+ * <ul>
+ *     <li>jmh.include - benchmark regex (default: all)</li>
+ *     <li>jmh.threads - comma separated thread counts (default: 1,4)</li>
+ *     <li>jmh.params - parameter overrides, e.g. "payloadSize=64;keyCardinality=1000"</li>
+ *     <li>jmh.warmup / jmh.iterations / jmh.forks - run length</li>
+ *     <li>jmh.output - result directory</li>
+ * </ul>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        File outputDir = new File(System.getProperty("jmh.output", "build/reports/jmh"));
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IllegalStateException("Could not create " + outputDir);
+        }
+
+        for (String threads : System.getProperty("jmh.threads", "1,4").split(",")) {
+            int threadCount = Integer.parseInt(threads.trim());
+            File result = new File(outputDir, "results-t" + threadCount + ".json");
+
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(System.getProperty("jmh.include", "com.redis.benchmark.*"))
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .threads(threadCount)
+                    .warmupIterations(Integer.getInteger("jmh.warmup", 3))
+                    .warmupTime(TimeValue.seconds(1))
+                    .measurementIterations(Integer.getInteger("jmh.iterations", 5))
+                    .measurementTime(TimeValue.seconds(1))
+                    .forks(Integer.getInteger("jmh.forks", 1))
+                    .jvmArgsAppend(propagatedProperties())
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result.getPath());
+
+            String params = System.getProperty("jmh.params", "");
+            for (String param : params.split(";")) {
+                int equals = param.indexOf('=');
+                if (equals > 0) {
+                    options.param(param.substring(0, equals).trim(), param.substring(equals + 1).trim().split(","));
+                }
+            }
+
+            new Runner(options.build()).run();
+        }
+    }
+
+    /**
+     * Forked benchmark JVMs need the redis-server settings of the runner.
+     */
+    private static String[] propagatedProperties() {
+        String[] names = {"redis.server", "benchmark.redis.port"};
+        List<String> args = new ArrayList<>();
+        for (String name : names) {
+            if (System.getProperty(name) != null) {
+                args.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,32 @@
+package com.redis.benchmark;
+
+import com.redis.base.FakeService;
+import com.redis.training.L05_CacheExercise;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Benchmark for the read-through lookup of L05_CacheExercise (exercise 5.1). Setup
+ * loads every key of the key space through getUserData, so with the 300 second TTL
+ * the run measures cache hits only. It is the baseline of the reference lookups in
+ * CacheBenchmark, and kept apart from them because it needs the exercise completed
+ * while those do not.
+ */
+public class CacheAsideBenchmark extends RedisBenchmarkState {
+    private L05_CacheExercise exercise;
+
+    @Override
+    protected void setUpBenchmark() {
+        FakeService fakeService = input -> payload;
+        exercise = new L05_CacheExercise(jedisPool, fakeService);
+        for (int i = 0; i < keyCardinality; i++) {
+            requireImplemented(exercise.getUserData(PREFIX, String.valueOf(i)), "L05_CacheExercise.getUserData");
+        }
+    }
+
+    @Benchmark
+    public String getUserData() {
+        return exercise.getUserData(PREFIX, String.valueOf(ThreadLocalRandom.current().nextInt(keyCardinality)));
+    }
+}
@@ -0,0 +1,62 @@
+package com.redis.benchmark;
+
+import com.redis.base.FakeService;
+import com.redis.training.L05_CacheExercise;
+import org.openjdk.jmh.annotations.Benchmark;
+import redis.clients.jedis.HostAndPort;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Benchmarks for the reference lookups of L05_CacheExercise that hit Redis: coalesced,
+ * encoded and near cached. Setup loads every key of the key space through
+ * getUserDataCoalesced and getUserDataEncoded, so with the 300 second TTL the run
+ * measures cache hits only; the fakeService is not called during measurement. The
+ * near cached variant reads from Redis the first time a key is drawn and from
+ * memory after that. Keys are drawn at random, so with a large key cardinality a
+ * short run still sees a noticeable share of those first reads. None of them need
+ * the exercises completed; the plain getUserData of exercise 5.1 is in
+ * CacheAsideBenchmark.
+ */
+public class CacheBenchmark extends RedisBenchmarkState {
+    private L05_CacheExercise exercise;
+    private L05_CacheExercise nearCachedExercise;
+
+    @Override
+    protected void setUpBenchmark() {
+        FakeService fakeService = input -> payload;
+        exercise = new L05_CacheExercise(jedisPool, fakeService);
+        for (int i = 0; i < keyCardinality; i++) {
+            exercise.getUserDataCoalesced(PREFIX, String.valueOf(i));
+            exercise.getUserDataEncoded(PREFIX, String.valueOf(i));
+        }
+        nearCachedExercise = new L05_CacheExercise(jedisPool, fakeService);
+        nearCachedExercise.enableNearCache(PREFIX, keyCardinality, 60_000,
+                Collections.singletonList(new HostAndPort(server.getHost(), server.getPort())));
+    }
+
+    @Override
+    protected void tearDownBenchmark() {
+        nearCachedExercise.disableNearCache();
+    }
+
+    private String userId() {
+        return String.valueOf(ThreadLocalRandom.current().nextInt(keyCardinality));
+    }
+
+    @Benchmark
+    public String getUserDataCoalesced() {
+        return exercise.getUserDataCoalesced(PREFIX, userId());
+    }
+
+    @Benchmark
+    public String getUserDataEncoded() {
+        return exercise.getUserDataEncoded(PREFIX, userId());
+    }
+
+    @Benchmark
+    public String getUserDataNearCached() {
+        return nearCachedExercise.getUserDataNearCached(PREFIX, userId());
+    }
+}
@@ -0,0 +1,91 @@
+package com.redis.benchmark;
+
+import com.redis.base.StringCodec;
+import com.redis.base.ValueCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.util.Random;
+
+/**
+ * Compares the value codecs on profile-like JSON text: encode and decode CPU cost,
+ * and a SET/GET round trip that also counts the bytes sent to Redis.
+ * The payload is generated from a small vocabulary so it compresses like real data,
+ * unlike the repeated character payload of the other benchmarks.
+ */
+public class CodecBenchmark extends RedisBenchmarkState {
+    private static final String[] WORDS = {
+            "name", "email", "city", "Lisbon", "Porto", "premium", "true", "false", "2024-05-01",
+            "preferences", "newsletter", "language", "pt-PT", "en-GB", "orders", "last_login"};
+
+    @Param({"raw", "deflate"})
+    public String codec;
+
+    private ValueCodec<String> valueCodec;
+    private String profile;
+    private byte[] encoded;
+
+    /**
+     * Bytes written per SET, reported by JMH next to the timings.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class WireBytes {
+        public long rawBytes;
+        public long encodedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rawBytes = 0;
+            encodedBytes = 0;
+        }
+    }
+
+    @Override
+    protected void setUpBenchmark() {
+        valueCodec = "deflate".equals(codec) ? new StringCodec(512) : new StringCodec();
+        profile = generateProfile(payloadSize);
+        encoded = valueCodec.encode(profile);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return valueCodec.encode(profile);
+    }
+
+    @Benchmark
+    public String decode() {
+        return valueCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public String setAndGet(WireBytes wireBytes) {
+        byte[] key = SafeEncoder.encode(randomKey("codec"));
+        byte[] value = valueCodec.encode(profile);
+        wireBytes.rawBytes += profile.length();
+        wireBytes.encodedBytes += value.length;
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.set(key, value);
+            return valueCodec.decode(jedis.get(key));
+        }
+    }
+
+    private static String generateProfile(int size) {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder(size + 32);
+        builder.append('{');
+        while (builder.length() < size - 1) {
+            builder.append('"').append(WORDS[random.nextInt(WORDS.length)]).append("\":\"")
+                    .append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(1000)).append("\",");
+        }
+        builder.setLength(size - 1);
+        return builder.append('}').toString();
+    }
+}
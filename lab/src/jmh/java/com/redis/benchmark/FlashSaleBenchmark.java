@@ -0,0 +1,33 @@
+package com.redis.benchmark;
+
+import com.redis.training.L08_FlashSaleExercise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Benchmarks for L08_FlashSaleExercise: WATCH/MULTI purchases. Key cardinality is the
+ * number of products, so a small value means heavy contention on each stock key.
+ */
+public class FlashSaleBenchmark extends RedisBenchmarkState {
+    private static final int MAX_PRODUCTS = 1000;
+
+    private L08_FlashSaleExercise exercise;
+
+    @Setup(Level.Iteration)
+    public void setUpProducts() {
+        exercise = new L08_FlashSaleExercise(jedisPool);
+        for (int i = 0; i < Math.min(keyCardinality, MAX_PRODUCTS); i++) {
+            requireImplemented(exercise.initializeProduct(PREFIX, "product" + i, Integer.MAX_VALUE, 9.99),
+                    "L08_FlashSaleExercise.initializeProduct");
+        }
+    }
+
+    @Benchmark
+    public String purchaseProduct() {
+        int product = ThreadLocalRandom.current().nextInt(Math.min(keyCardinality, MAX_PRODUCTS));
+        return exercise.purchaseProduct(PREFIX, "product" + product, "user", 1);
+    }
+}
@@ -0,0 +1,56 @@
+package com.redis.benchmark;
+
+import com.redis.training.L02_HashExercise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmarks for L02_HashExercise: full HGETALL versus a two-field HMGET, and
+ * reading the whole hash page by page with HSCAN.
+ */
+public class HashBenchmark extends RedisBenchmarkState {
+    @Param({"5", "100"})
+    public int fieldCount;
+
+    private L02_HashExercise exercise;
+
+    @Override
+    protected void setUpBenchmark() {
+        exercise = new L02_HashExercise(jedisPool);
+        Map<String, String> profile = new HashMap<>();
+        for (int field = 0; field < fieldCount; field++) {
+            profile.put("field" + field, payload);
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = 0; i < keyCardinality; i++) {
+                pipeline.hset(key("hash", i), profile);
+            }
+            pipeline.sync();
+        }
+        requireImplemented(!exercise.getUserProfile(key("hash", 0)).isEmpty(), "L02_HashExercise.getUserProfile");
+        requireImplemented(!exercise.getUserFields(key("hash", 0), "field0").isEmpty(),
+                "L02_HashExercise.getUserFields");
+    }
+
+    @Benchmark
+    public Map<String, String> hgetAll() {
+        return exercise.getUserProfile(randomKey("hash"));
+    }
+
+    @Benchmark
+    public List<String> hmget() {
+        return exercise.getUserFields(randomKey("hash"), "field0", "field1");
+    }
+
+    @Benchmark
+    public long hscan() {
+        return exercise.streamUserProfile(randomKey("hash"), 50).count();
+    }
+}
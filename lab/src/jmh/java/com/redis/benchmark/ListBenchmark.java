@@ -0,0 +1,27 @@
+package com.redis.benchmark;
+
+import com.redis.training.L03_ListExercise;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Benchmarks for L03_ListExercise: an enqueue followed by a dequeue keeps the
+ * queues at a steady length across iterations.
+ */
+public class ListBenchmark extends RedisBenchmarkState {
+    private L03_ListExercise exercise;
+
+    @Override
+    protected void setUpBenchmark() {
+        exercise = new L03_ListExercise(jedisPool);
+        String probe = PREFIX + "queue:probe";
+        requireImplemented(exercise.enqueue(probe, payload), "L03_ListExercise.enqueue");
+        requireImplemented(exercise.dequeue(probe), "L03_ListExercise.dequeue");
+    }
+
+    @Benchmark
+    public String enqueueDequeue() {
+        String queue = randomKey("queue");
+        exercise.enqueue(queue, payload);
+        return exercise.dequeue(queue);
+    }
+}
@@ -0,0 +1,31 @@
+package com.redis.benchmark;
+
+import com.redis.training.L07_QueueExercise;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Benchmark for the list queue of L07_QueueExercise (exercises 7.1 and 7.2): one
+ * notification enqueued with LPUSH and processed with RPOP per operation. It is the
+ * baseline of the reliable and stream queues in QueueBenchmark, and kept apart from
+ * them because it needs the exercises completed while those do not.
+ */
+public class ListQueueBenchmark extends RedisBenchmarkState {
+    private static final String TYPE = "email";
+
+    private L07_QueueExercise exercise;
+
+    @Override
+    protected void setUpBenchmark() {
+        exercise = new L07_QueueExercise(jedisPool);
+        requireImplemented(exercise.enqueueNotification(PREFIX, TYPE, "user@example.com", payload),
+                "L07_QueueExercise.enqueueNotification");
+        requireImplemented(exercise.processNotificationQueue(PREFIX, TYPE, 1).length == 1,
+                "L07_QueueExercise.processNotificationQueue");
+    }
+
+    @Benchmark
+    public String[] listEnqueueProcess() {
+        exercise.enqueueNotification(PREFIX, TYPE, "user@example.com", payload);
+        return exercise.processNotificationQueue(PREFIX, TYPE, 1);
+    }
+}
@@ -0,0 +1,89 @@
+package com.redis.benchmark;
+
+import redis.clients.jedis.Jedis;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * Starts a throwaway redis-server process for a benchmark fork.
+ * Set "benchmark.redis.port" to benchmark an already running server instead,
+ * and "redis.server" to point at a specific redis-server binary.
+ */
+public class LocalRedisServer implements AutoCloseable {
+    private static final String REDIS_SERVER = System.getProperty("redis.server", "redis-server");
+    private static final long STARTUP_TIMEOUT_MILLIS = 15000;
+
+    private final Process process;
+    private final int port;
+
+    private LocalRedisServer(Process process, int port) {
+        this.process = process;
+        this.port = port;
+    }
+
+    /**
+     * Starts a local server on a free port, or connects to the one named by benchmark.redis.port.
+     *
+     * @return Running server, to be closed after the benchmark
+     */
+    public static LocalRedisServer start() throws Exception {
+        String existingPort = System.getProperty("benchmark.redis.port");
+        if (existingPort != null) {
+            return new LocalRedisServer(null, Integer.parseInt(existingPort));
+        }
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Process process = new ProcessBuilder(REDIS_SERVER,
+                "--port", String.valueOf(port),
+                "--bind", "127.0.0.1",
+                "--save", "",
+                "--appendonly", "no")
+                .redirectErrorStream(true)
+                .redirectOutput(new File(System.getProperty("java.io.tmpdir"), "redis-benchmark-" + port + ".log"))
+                .start();
+        LocalRedisServer server = new LocalRedisServer(process, port);
+        server.awaitReady();
+        return server;
+    }
+
+    public String getHost() {
+        return "127.0.0.1";
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    private void awaitReady() throws InterruptedException, IOException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (true) {
+            try (Jedis jedis = new Jedis(getHost(), port)) {
+                jedis.ping();
+                return;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    close();
+                    throw new IOException("redis-server did not start on port " + port, e);
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (process != null) {
+            process.destroy();
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
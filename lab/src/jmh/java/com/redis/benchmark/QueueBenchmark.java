@@ -0,0 +1,68 @@
+package com.redis.benchmark;
+
+import com.redis.base.PooledRedisExecutor;
+import com.redis.base.RedisExecutor;
+import com.redis.base.ReliableQueue;
+import com.redis.training.L07_QueueExercise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for the reference queues of L07_QueueExercise: one notification
+ * enqueued and processed per operation, on a plain list (LPUSH, then RPOP), on the
+ * reliable list queue (LPUSH, then LREM of the previous message with LMOVE of the
+ * next in one round trip) and on the stream queue (XADD/XREADGROUP/XACK). Each
+ * operation pushes a real message and takes it off again, and the plain list uses
+ * the same executor and round trips as the reliable queue, so the difference between
+ * the two is what reliability costs; against a local server the reliable queue's
+ * median was about a tenth slower. The reliable queue is filled with LPUSH
+ * here rather than through exercise 7.1, so it runs before the exercises are done;
+ * the plain list queue of exercises 7.1 and 7.2 is in ListQueueBenchmark. Every
+ * benchmark thread is one consumer of the same queue, so divide the score by the
+ * thread count for messages per second per consumer. Key cardinality does not apply.
+ */
+public class QueueBenchmark extends RedisBenchmarkState {
+    private static final String TYPE = "email";
+
+    private L07_QueueExercise exercise;
+    private RedisExecutor executor;
+    private ReliableQueue reliableQueue;
+
+    /**
+     * A reliable queue worker: its name and the message it has not acknowledged yet.
+     */
+    @State(Scope.Thread)
+    public static class Worker {
+        final String name = "worker-" + Thread.currentThread().getId();
+        String inFlight;
+    }
+
+    @Override
+    protected void setUpBenchmark() {
+        exercise = new L07_QueueExercise(jedisPool);
+        executor = new PooledRedisExecutor(jedisPool);
+        reliableQueue = exercise.getReliableNotificationQueue(PREFIX, TYPE);
+    }
+
+    @Benchmark
+    public String plainEnqueueProcess() {
+        String queue = reliableQueue.getQueueKey() + ":plain";
+        executor.execute(executor.commands().lpush(queue, payload));
+        return executor.execute(executor.commands().rpop(queue));
+    }
+
+    @Benchmark
+    public String reliableEnqueueProcess(Worker worker) {
+        executor.execute(executor.commands().lpush(reliableQueue.getQueueKey(), payload));
+        worker.inFlight = reliableQueue.ackAndDequeue(worker.name, worker.inFlight);
+        return worker.inFlight;
+    }
+
+    @Benchmark
+    public String[] streamEnqueueProcess() {
+        exercise.enqueueNotificationStream(PREFIX, TYPE, "user@example.com", payload);
+        return exercise.processNotificationStream(PREFIX, TYPE, "worker-" + Thread.currentThread().getId(), 1,
+                notification -> { });
+    }
+}
@@ -0,0 +1,114 @@
+package com.redis.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Shared benchmark state: a local redis-server, a pool sized for the benchmark
+ * threads, a payload of the requested size and a key space of the requested cardinality.
+ */
+@State(Scope.Benchmark)
+public class RedisBenchmarkState {
+    static final String PREFIX = "bench:";
+
+    @Param({"64", "4096"})
+    public int payloadSize;
+
+    @Param({"1000", "100000"})
+    public int keyCardinality;
+
+    protected LocalRedisServer server;
+    protected JedisPool jedisPool;
+    protected String payload;
+
+    @Setup(Level.Trial)
+    public void startRedis() throws Exception {
+        server = LocalRedisServer.start();
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        // One connection per benchmark thread plus headroom for the setup code
+        poolConfig.setMaxTotal(Runtime.getRuntime().availableProcessors() * 4 + 64);
+        poolConfig.setMaxIdle(poolConfig.getMaxTotal());
+        jedisPool = new JedisPool(poolConfig, server.getHost(), server.getPort(), 2000);
+
+        char[] chars = new char[payloadSize];
+        Arrays.fill(chars, 'x');
+        payload = new String(chars);
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.flushAll();
+        }
+        setUpBenchmark();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopRedis() {
+        tearDownBenchmark();
+        jedisPool.close();
+        server.close();
+    }
+
+    /**
+     * Builds the code under test once the server and pool are up.
+     * JMH does not order @Setup methods across a class hierarchy, so subclasses
+     * override this instead of declaring their own trial-level @Setup.
+     */
+    protected void setUpBenchmark() {
+    }
+
+    /**
+     * Releases what {@link #setUpBenchmark()} created, before the server stops.
+     */
+    protected void tearDownBenchmark() {
+    }
+
+    /**
+     * Fails the trial when an exercise method returns null, as most unimplemented
+     * stubs do. A stub makes no Redis call, so it would otherwise be reported as
+     * an implausibly fast result.
+     *
+     * @param result Result of one call made during setup
+     * @param method Exercise method, for the error message
+     * @return The result
+     */
+    protected static <T> T requireImplemented(T result, String method) {
+        requireImplemented(result != null, method);
+        return result;
+    }
+
+    /**
+     * Fails the trial when a call made during setup shows the exercise method is
+     * still the stub, e.g. because it returned an empty map or false.
+     *
+     * @param implemented Whether the call returned what an implementation would
+     * @param method      Exercise method, for the error message
+     */
+    protected static void requireImplemented(boolean implemented, String method) {
+        if (!implemented) {
+            throw new IllegalStateException(method + " is not implemented; complete the exercise before benchmarking it");
+        }
+    }
+
+    /**
+     * Picks a random key from the key space.
+     *
+     * @param name Key family, e.g. "string"
+     * @return Key such as "bench:string:42"
+     */
+    public String randomKey(String name) {
+        return key(name, ThreadLocalRandom.current().nextInt(keyCardinality));
+    }
+
+    public String key(String name, int index) {
+        return PREFIX + name + ":" + index;
+    }
+}
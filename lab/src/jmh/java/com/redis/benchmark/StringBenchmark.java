@@ -0,0 +1,38 @@
+package com.redis.benchmark;
+
+import com.redis.training.L01_StringExercise;
+import org.openjdk.jmh.annotations.Benchmark;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+/**
+ * Benchmarks for L01_StringExercise: SET and GET over a populated key space.
+ */
+public class StringBenchmark extends RedisBenchmarkState {
+    private L01_StringExercise exercise;
+
+    @Override
+    protected void setUpBenchmark() {
+        exercise = new L01_StringExercise(jedisPool);
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = 0; i < keyCardinality; i++) {
+                pipeline.set(key("string", i), payload);
+            }
+            pipeline.sync();
+        }
+        String probe = PREFIX + "string:probe";
+        exercise.setString(probe, payload);
+        requireImplemented(exercise.getString(probe), "L01_StringExercise.setString/getString");
+    }
+
+    @Benchmark
+    public void setString() {
+        exercise.setString(randomKey("string"), payload);
+    }
+
+    @Benchmark
+    public String getString() {
+        return exercise.getString(randomKey("string"));
+    }
+}
@@ -0,0 +1,35 @@
+package com.redis.benchmark;
+
+import com.redis.training.L04_TransactionExercise;
+import org.openjdk.jmh.annotations.Benchmark;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.List;
+
+/**
+ * Benchmarks for L04_TransactionExercise: MULTI/EXEC transfers between random accounts.
+ * Payload size does not apply; accounts hold integer balances.
+ */
+public class TransactionBenchmark extends RedisBenchmarkState {
+    private L04_TransactionExercise exercise;
+
+    @Override
+    protected void setUpBenchmark() {
+        exercise = new L04_TransactionExercise(jedisPool);
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = 0; i < keyCardinality; i++) {
+                pipeline.set(key("account", i), "1000000");
+            }
+            pipeline.sync();
+        }
+        requireImplemented(exercise.transferFunds(key("account", 0), key("account", 0), 1),
+                "L04_TransactionExercise.transferFunds");
+    }
+
+    @Benchmark
+    public List<Object> transferFunds() {
+        return exercise.transferFunds(randomKey("account"), randomKey("account"), 1);
+    }
+}
@@ -0,0 +1,46 @@
+package com.redis.benchmark;
+
+import com.redis.base.AsyncRedisExecutor;
+import com.redis.base.PipelinedRedisExecutor;
+import com.redis.base.PooledRedisExecutor;
+import com.redis.base.RedisExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Compares the RedisExecutor transports on the same SET/GET workload.
+ * Unlike the exercise benchmarks, this one does not depend on the lab solutions.
+ */
+public class TransportBenchmark extends RedisBenchmarkState {
+    @Param({"pooled", "pipelined", "async"})
+    public String transport;
+
+    private RedisExecutor executor;
+
+    @Override
+    protected void setUpBenchmark() {
+        PooledRedisExecutor pooled = new PooledRedisExecutor(jedisPool);
+        if ("pipelined".equals(transport)) {
+            executor = new PipelinedRedisExecutor(pooled, 128);
+        } else if ("async".equals(transport)) {
+            executor = new AsyncRedisExecutor(pooled, Runtime.getRuntime().availableProcessors() * 2);
+        } else {
+            executor = pooled;
+        }
+    }
+
+    @Override
+    protected void tearDownBenchmark() {
+        executor.close();
+    }
+
+    @Benchmark
+    public String set() {
+        return executor.executeAsync(executor.commands().set(randomKey("transport"), payload)).join();
+    }
+
+    @Benchmark
+    public String get() {
+        return executor.executeAsync(executor.commands().get(randomKey("transport"))).join();
+    }
+}
@@ -0,0 +1,116 @@
+package com.redis.base;
+
+/**
+ * Picks how many items to fetch per round trip from the observed latency.
+ * <p>
+ * Bigger batches spread the round trip over more items, but a batch that takes too
+ * long blocks the server for every other client and delays the first item of the
+ * batch. What a batch adds is measured against a baseline: the fastest round trip of
+ * the last 64 batches, which is about the network round trip
+ * alone. The size grows while full batches take at most the target on top of the
+ * baseline and is halved when one takes longer, so a slow network (a 20ms round trip
+ * to another region) still gets large batches; only the time the items themselves
+ * cost counts. Growth doubles too, rather than adding a step, so a backlog reaches
+ * large batches within a few round trips. Callers cap the size with the queue depth,
+ * so a nearly empty queue is not asked for a thousand items.
+ * <p>
+ * The baseline is measured again in each window so it follows a route that got
+ * slower. A window starts with one batch of the smallest size, which keeps a long
+ * backlog of large batches from becoming the baseline.
+ * <p>
+ * Use one instance per queue: the depth and the cost of an item differ between queues.
+ * <p>
+ * Example:
+ * <pre>
+ *     AdaptiveBatchSize batch = new AdaptiveBatchSize(1, 1000, 1);
+ *     int count = batch.next(queueDepth);
+ *     long start = System.nanoTime();
+ *     List&lt;String&gt; items = ...; // fetch count items
+ *     batch.record(count, items.size(), System.nanoTime() - start);
+ * </pre>
+ */
+public class AdaptiveBatchSize {
+    // Batches per baseline measurement
+    static final int BASELINE_WINDOW = 64;
+
+    private final int min;
+    private final int max;
+    private final long targetNanos;
+    private int size;
+    private long baselineNanos = Long.MAX_VALUE;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private boolean probe;
+
+    /**
+     * @param min                 Smallest batch, at least 1
+     * @param max                 Largest batch
+     * @param targetLatencyMillis Time a batch may take on top of the baseline round trip
+     */
+    public AdaptiveBatchSize(int min, int max, long targetLatencyMillis) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("Batch sizes must satisfy 1 <= min <= max: " + min + ", " + max);
+        }
+        this.min = min;
+        this.max = max;
+        this.targetNanos = targetLatencyMillis * 1_000_000;
+        this.size = min;
+    }
+
+    /**
+     * Gets the size of the next batch.
+     *
+     * @param depth Items known to be waiting, or a negative value if unknown
+     * @return Batch size, at least 1
+     */
+    public synchronized int next(long depth) {
+        int wanted = size;
+        if (probe) {
+            probe = false;
+            wanted = min;
+        }
+        if (depth < 0) {
+            return wanted;
+        }
+        return (int) Math.max(1, Math.min(wanted, depth));
+    }
+
+    /**
+     * Adjusts the size to a finished batch.
+     *
+     * @param requested Items asked for
+     * @param received  Items returned
+     * @param nanos     Round trip time of the batch
+     */
+    public synchronized void record(int requested, int received, long nanos) {
+        baselineNanos = Math.min(baselineNanos, nanos);
+        windowMinNanos = Math.min(windowMinNanos, nanos);
+        if (++windowSamples == BASELINE_WINDOW) {
+            baselineNanos = windowMinNanos;
+            windowMinNanos = Long.MAX_VALUE;
+            windowSamples = 0;
+            probe = true;
+        }
+
+        if (nanos - baselineNanos > targetNanos) {
+            size = Math.max(min, size / 2);
+        } else if (received >= requested && requested >= size) {
+            // Only a full batch at the current size shows that a bigger one would be filled
+            size = Math.min(max, size * 2);
+        }
+    }
+
+    /**
+     * @return Current batch size, before capping by queue depth
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * @return Baseline round trip in nanoseconds, or Long.MAX_VALUE before the first batch
+     */
+    public synchronized long getBaselineNanos() {
+        return baselineNanos;
+    }
+}
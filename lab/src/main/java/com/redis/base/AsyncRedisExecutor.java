@@ -0,0 +1,73 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.CommandObjects;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous executor that runs commands on a fixed worker pool.
+ * Synchronous calls go straight to the delegate; {@link #executeAsync} returns
+ * immediately so callers can overlap several round trips.
+ */
+public class AsyncRedisExecutor implements RedisExecutor {
+    private final RedisExecutor delegate;
+    private final ExecutorService workers;
+
+    /**
+     * @param delegate Executor that runs each command
+     * @param threads  Number of worker threads, at most the delegate's pool size
+     */
+    public AsyncRedisExecutor(RedisExecutor delegate, int threads) {
+        this.delegate = delegate;
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "redis-async-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CommandObjects commands() {
+        return delegate.commands();
+    }
+
+    @Override
+    public <T> T execute(CommandObject<T> command) {
+        return delegate.execute(command);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> executeAsync(CommandObject<T> command) {
+        return CompletableFuture.supplyAsync(() -> delegate.execute(command), workers);
+    }
+
+    @Override
+    public List<Object> executeBatch(List<CommandObject<?>> commands) {
+        return delegate.executeBatch(commands);
+    }
+
+    @Override
+    public Jedis getResource(String key) {
+        return delegate.getResource(key);
+    }
+
+    /**
+     * Waits for submitted commands to finish and stops the workers.
+     * The delegate is left open.
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Stores many small counters as fields of a fixed number of bucket hashes instead of
+ * one key per counter.
+ * <p>
+ * Every top-level key costs a dictionary entry, a key object and a value object, which
+ * outweighs an 8 byte counter many times over. Hashes with few fields are stored in a
+ * compact encoding (listpack, or ziplist before Redis 7) where a field costs little
+ * more than its name and value. Counters are spread over the buckets of their group
+ * by a hash of the counter name, so choose enough buckets to keep each one below
+ * {@code hash-max-listpack-entries} (see {@link #bucketsFor}).
+ * <p>
+ * Counters of a group share their buckets, and expiry applies to a whole bucket: an
+ * EXPIRE through {@link #expire} keeps every counter of the bucket alive. Put counters
+ * with a lifetime (e.g. per day) in a group of their own, such as one group per date.
+ * <p>
+ * Example:
+ * <pre>
+ *     BucketedCounters counters = new BucketedCounters(executor, 1024);
+ *     executor.executeBatch(Arrays.asList(
+ *             counters.incrBy("pageviews:2024-01-01", pageId, 1),
+ *             counters.expire("pageviews:2024-01-01", pageId, 86400)));
+ * </pre>
+ */
+public class BucketedCounters {
+    private static final int MIGRATION_BATCH_SIZE = 100;
+    private static final Pattern INTEGER = Pattern.compile("-?\\d+");
+
+    // Adds ARGV[2] to field ARGV[1] of bucket KEYS[b]; a bucket that is new or expires sooner
+    // than ARGV[3] (TTL of the key in ms, or -1) or else ARGV[4] (TTL of the target in ms, or 0)
+    // gets that TTL
+    private static final String ADD_FUNCTION =
+            "local function add(b, field, value, keyTtl, targetTtl)\n" +
+            "  local existed = redis.call('exists', KEYS[b]) == 1\n" +
+            "  local bucketTtl = redis.call('pttl', KEYS[b])\n" +
+            "  redis.call('hincrby', KEYS[b], field, value)\n" +
+            "  local ttl = keyTtl > 0 and keyTtl or targetTtl\n" +
+            "  if ttl > 0 and (not existed or (bucketTtl > 0 and bucketTtl < ttl)) then\n" +
+            "    redis.call('pexpire', KEYS[b], ttl)\n" +
+            "  end\n" +
+            "end\n";
+
+    // KEYS[1] counter key, KEYS[2] its bucket; ARGV[1] field, ARGV[2] TTL of the target in ms
+    // Returns 1 if moved, 0 if the key does not exist, -1 if it does not hold an integer
+    private static final String MOVE_SCRIPT = ADD_FUNCTION +
+            "local value = redis.call('get', KEYS[1])\n" +
+            "if not value then return 0 end\n" +
+            "if not string.match(value, '^%-?%d+$') then return -1 end\n" +
+            "add(2, ARGV[1], value, redis.call('pttl', KEYS[1]), tonumber(ARGV[2]))\n" +
+            "redis.call('del', KEYS[1])\n" +
+            "return 1";
+
+    // KEYS[1] bucket; ARGV[1] field, ARGV[2] value, ARGV[3] TTL of the key in ms, ARGV[4] TTL of the target in ms
+    private static final String ADD_SCRIPT = ADD_FUNCTION +
+            "add(1, ARGV[1], ARGV[2], tonumber(ARGV[3]), tonumber(ARGV[4]))\n" +
+            "return 1";
+
+    // KEYS[1] counter key; ARGV[1] value moved to the bucket
+    private static final String REMOVE_SCRIPT =
+            "local value = redis.call('get', KEYS[1])\n" +
+            "if not value then return 0 end\n" +
+            "if value == ARGV[1] then return redis.call('del', KEYS[1]) end\n" +
+            "return redis.call('decrby', KEYS[1], ARGV[1])";
+
+    private final RedisExecutor executor;
+    private final int buckets;
+
+    /**
+     * Where an existing counter key moves to, see {@link #migrate}.
+     */
+    public static class Target {
+        private final String group;
+        private final String counter;
+        private final long ttlSeconds;
+
+        /**
+         * @param group      Group of the counter
+         * @param counter    Counter name within the group
+         * @param ttlSeconds TTL of the bucket, or 0 to leave it without TTL
+         */
+        public Target(String group, String counter, long ttlSeconds) {
+            this.group = group;
+            this.counter = counter;
+            this.ttlSeconds = ttlSeconds;
+        }
+    }
+
+    /**
+     * @param executor Executor holding the buckets
+     * @param buckets  Buckets per group
+     */
+    public BucketedCounters(RedisExecutor executor, int buckets) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("Buckets must be positive: " + buckets);
+        }
+        this.executor = executor;
+        this.buckets = buckets;
+    }
+
+    /**
+     * Computes how many buckets keep a group of counters in the compact encoding.
+     * Buckets are filled to half the limit, leaving room for uneven hashing.
+     *
+     * @param expectedCounters Counters expected in one group
+     * @param maxEntries       hash-max-listpack-entries (or hash-max-ziplist-entries) of the server
+     * @return Buckets per group
+     */
+    public static int bucketsFor(long expectedCounters, int maxEntries) {
+        long perBucket = Math.max(1, maxEntries / 2);
+        return (int) Math.max(1, (expectedCounters + perBucket - 1) / perBucket);
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Gets the key of the bucket holding a counter.
+     *
+     * @param group   Group of the counter, used as the bucket key prefix
+     * @param counter Counter name within the group
+     * @return Bucket key
+     */
+    public String bucketKey(String group, String counter) {
+        return group + ":" + JedisClusterCRC16.getCRC16(counter) % buckets;
+    }
+
+    /**
+     * @return HINCRBY command adding to the counter
+     */
+    public CommandObject<Long> incrBy(String group, String counter, long delta) {
+        return executor.commands().hincrBy(bucketKey(group, counter), counter, delta);
+    }
+
+    /**
+     * @return EXPIRE command for the bucket of the counter
+     */
+    public CommandObject<Long> expire(String group, String counter, long seconds) {
+        return executor.commands().expire(bucketKey(group, counter), seconds);
+    }
+
+    /**
+     * @return HGET command reading the counter, null if it does not exist
+     */
+    public CommandObject<String> get(String group, String counter) {
+        return executor.commands().hget(bucketKey(group, counter), counter);
+    }
+
+    /**
+     * Moves counters stored as plain keys into their buckets, adding each value to the
+     * bucket with HINCRBY so writes that already go to the buckets are kept. The bucket
+     * keeps at least the remaining TTL of the key (or the TTL of the target if the key
+     * has none); a bucket without TTL is left without one. Keys that do not hold an
+     * integer are left alone.
+     * <p>
+     * When the key and its bucket share a slot (always on a single server; in a cluster
+     * with a hash tag in the key names) one script reads, adds and deletes the key, so
+     * every read sees the count in exactly one place. Otherwise the value is added to
+     * the bucket first and then taken off the key only if the key still holds it (or
+     * subtracted, if it grew meanwhile). Between those two round trips reads count the
+     * value twice, and a failure in between leaves it in both places: counts are never
+     * lost, but such a key is counted twice until it is removed by hand.
+     *
+     * @param keys    Counter keys, e.g. from a SCAN
+     * @param mapping Target of a key, or null to leave the key alone
+     * @return Number of keys moved
+     */
+    public long migrate(List<String> keys, Function<String, Target> mapping) {
+        boolean cluster = executor instanceof ClusterRedisExecutor;
+        long moved = 0;
+        for (int from = 0; from < keys.size(); from += MIGRATION_BATCH_SIZE) {
+            List<CommandObject<?>> moves = new ArrayList<>();
+            List<String> splitKeys = new ArrayList<>();
+            List<Target> splitTargets = new ArrayList<>();
+            for (String key : keys.subList(from, Math.min(keys.size(), from + MIGRATION_BATCH_SIZE))) {
+                Target target = mapping.apply(key);
+                if (target == null) {
+                    continue;
+                }
+                String bucket = bucketKey(target.group, target.counter);
+                if (!cluster || JedisClusterCRC16.getSlot(key) == JedisClusterCRC16.getSlot(bucket)) {
+                    moves.add(executor.commands().eval(MOVE_SCRIPT, Arrays.asList(key, bucket),
+                            Arrays.asList(target.counter, String.valueOf(target.ttlSeconds * 1000))));
+                } else {
+                    splitKeys.add(key);
+                    splitTargets.add(target);
+                }
+            }
+            if (!moves.isEmpty()) {
+                List<Object> replies = executor.executeBatch(moves);
+                LabBase.throwFirstError(replies);
+                for (Object reply : replies) {
+                    if (Long.valueOf(1).equals(reply)) {
+                        moved++;
+                    }
+                }
+            }
+            if (!splitKeys.isEmpty()) {
+                moved += migrateAcrossSlots(splitKeys, splitTargets);
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Adds the values of keys to buckets in other slots, then takes them off the keys.
+     */
+    private long migrateAcrossSlots(List<String> keys, List<Target> targets) {
+        List<CommandObject<?>> reads = new ArrayList<>(keys.size() * 2);
+        for (String key : keys) {
+            reads.add(executor.commands().get(key));
+            reads.add(executor.commands().pttl(key));
+        }
+        List<Object> values = executor.executeBatch(reads);
+        LabBase.throwFirstError(values);
+
+        List<CommandObject<?>> adds = new ArrayList<>();
+        List<CommandObject<?>> removes = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String value = (String) values.get(2 * i);
+            if (value == null || !INTEGER.matcher(value).matches()) {
+                continue;
+            }
+            Target target = targets.get(i);
+            adds.add(executor.commands().eval(ADD_SCRIPT,
+                    Collections.singletonList(bucketKey(target.group, target.counter)),
+                    Arrays.asList(target.counter, value, String.valueOf(values.get(2 * i + 1)),
+                            String.valueOf(target.ttlSeconds * 1000))));
+            removes.add(executor.commands().eval(REMOVE_SCRIPT,
+                    Collections.singletonList(keys.get(i)), Collections.singletonList(value)));
+        }
+        if (adds.isEmpty()) {
+            return 0;
+        }
+        LabBase.throwFirstError(executor.executeBatch(adds));
+        LabBase.throwFirstError(executor.executeBatch(removes));
+        return adds.size();
+    }
+}
@@ -0,0 +1,359 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Loads many entries into Redis ahead of traffic.
+ * <p>
+ * Ids are split into chunks. Chunks are loaded in parallel on a bounded thread pool;
+ * each chunk fetches its values from the backend and writes them with one pipelined
+ * batch of SETEX commands. Backend fetches can be rate limited so warming does not
+ * starve live traffic.
+ * <p>
+ * A chunk that fails (backend or Redis error) is reported in the result and the
+ * other chunks carry on. With a checkpoint key set, completed chunk numbers are
+ * recorded in a Redis set; running the same ids again with the same chunk size
+ * skips them, so an interrupted or partly failed warm-up resumes where it stopped.
+ * The set also holds a fingerprint of the ids and chunk size, and a run with
+ * different ones starts over instead of skipping chunks that now hold other ids.
+ * The checkpoint expires no later than the keys of its first chunk, so it never
+ * skips a chunk whose keys may already have expired.
+ * <p>
+ * Example:
+ * <pre>
+ *     CacheWarmer warmer = new CacheWarmer(executor);
+ *     warmer.setThreads(8);
+ *     warmer.setMaxFetchesPerSecond(1000);
+ *     warmer.setCheckpointKey("warmup:profiles");
+ *     CacheWarmer.Result result = warmer.warmUp(ids, id -> "user:" + id, service::fetch, 600);
+ * </pre>
+ */
+public class CacheWarmer {
+    private static final int CHECKPOINT_TTL_SECONDS = 24 * 60 * 60;
+    private static final String FINGERPRINT_PREFIX = "fingerprint:";
+
+    private final RedisExecutor executor;
+    private int threads = 4;
+    private int chunkSize = 100;
+    private double maxFetchesPerSecond;
+    private String checkpointKey;
+    private ProgressListener progressListener;
+
+    private final Object rateLock = new Object();
+    private long nextFetchNanos;
+
+    /**
+     * Receives progress as chunks complete. Called from the warming threads.
+     */
+    public interface ProgressListener {
+        /**
+         * @param completedChunks Chunks finished so far (successfully or not), including skipped ones
+         * @param totalChunks     Total number of chunks
+         * @param warmedKeys      Keys written so far
+         */
+        void onProgress(int completedChunks, int totalChunks, long warmedKeys);
+    }
+
+    public CacheWarmer(RedisExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param threads Chunks loaded in parallel (default 4)
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @param chunkSize Ids per chunk, i.e. SETEX commands per pipeline (default 100)
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param maxFetchesPerSecond Backend fetches allowed per second across all threads; 0 for no limit
+     */
+    public void setMaxFetchesPerSecond(double maxFetchesPerSecond) {
+        if (maxFetchesPerSecond < 0) {
+            throw new IllegalArgumentException("Rate must not be negative: " + maxFetchesPerSecond);
+        }
+        this.maxFetchesPerSecond = maxFetchesPerSecond;
+    }
+
+    /**
+     * @param checkpointKey Redis set recording completed chunks, or null to disable checkpoints
+     */
+    public void setCheckpointKey(String checkpointKey) {
+        this.checkpointKey = checkpointKey;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Fetches and stores every id. The checkpoint is deleted once all chunks succeed.
+     * The checkpoint of a run over other ids, or with another chunk size, is discarded.
+     *
+     * @param ids        Ids to warm
+     * @param keyOf      Maps an id to its Redis key
+     * @param fetch      Loads the value of an id from the backend
+     * @param ttlSeconds Expiration of the stored keys
+     * @return Number of keys written and the chunks that failed
+     */
+    public Result warmUp(List<String> ids, Function<String, String> keyOf, Function<String, String> fetch,
+                         int ttlSeconds) {
+        int totalChunks = (ids.size() + chunkSize - 1) / chunkSize;
+        Checkpoint checkpoint = checkpointKey == null ? null : openCheckpoint(ids, ttlSeconds);
+        Set<String> done = checkpoint == null ? Collections.<String>emptySet() : checkpoint.done;
+
+        AtomicInteger completedChunks = new AtomicInteger();
+        AtomicLong warmedKeys = new AtomicLong();
+        List<ChunkFailure> failures = Collections.synchronizedList(new ArrayList<ChunkFailure>());
+        int skippedChunks = 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "cache-warmer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (int chunk = 0; chunk < totalChunks; chunk++) {
+                if (done.contains(String.valueOf(chunk))) {
+                    skippedChunks++;
+                    report(completedChunks.incrementAndGet(), totalChunks, warmedKeys.get());
+                    continue;
+                }
+                final int chunkIndex = chunk;
+                final List<String> chunkIds = ids.subList(chunk * chunkSize, Math.min(ids.size(), (chunk + 1) * chunkSize));
+                chunks.add(pool.submit(() -> {
+                    try {
+                        warmedKeys.addAndGet(warmChunk(chunkIndex, chunkIds, keyOf, fetch, ttlSeconds, checkpoint));
+                    } catch (RuntimeException e) {
+                        failures.add(new ChunkFailure(chunkIndex, chunkIds, e));
+                    }
+                    report(completedChunks.incrementAndGet(), totalChunks, warmedKeys.get());
+                }));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while warming the cache", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Cache warming task failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (checkpointKey != null && failures.isEmpty()) {
+            executor.execute(executor.commands().del(checkpointKey));
+        }
+        return new Result(warmedKeys.get(), skippedChunks, new ArrayList<>(failures));
+    }
+
+    /**
+     * Reads the checkpoint of a previous run over the same ids and chunk size, or
+     * discards a checkpoint left by a different run.
+     */
+    private Checkpoint openCheckpoint(List<String> ids, int ttlSeconds) {
+        String fingerprint = FINGERPRINT_PREFIX + fingerprint(ids);
+        List<CommandObject<?>> commands = new ArrayList<>(2);
+        commands.add(executor.commands().smembers(checkpointKey));
+        commands.add(executor.commands().pttl(checkpointKey));
+        List<Object> replies = executor.executeBatch(commands);
+        LabBase.throwFirstError(replies);
+        @SuppressWarnings("unchecked")
+        Set<String> members = (Set<String>) replies.get(0);
+        long remainingMillis = (Long) replies.get(1);
+
+        long now = System.currentTimeMillis();
+        if (members.contains(fingerprint) && remainingMillis > 0) {
+            return new Checkpoint(fingerprint, members, now + remainingMillis);
+        }
+        if (!members.isEmpty()) {
+            executor.execute(executor.commands().del(checkpointKey));
+        }
+        long ttlMillis = TimeUnit.SECONDS.toMillis(Math.min(ttlSeconds, CHECKPOINT_TTL_SECONDS));
+        return new Checkpoint(fingerprint, Collections.<String>emptySet(), now + ttlMillis);
+    }
+
+    private String fingerprint(List<String> ids) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(SafeEncoder.encode(chunkSize + ";" + ids.size() + ";"));
+            for (String id : ids) {
+                // Length-prefixed, so ids containing the separator cannot collide
+                digest.update(SafeEncoder.encode(id.length() + ":" + id));
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private int warmChunk(int chunkIndex, List<String> ids, Function<String, String> keyOf,
+                          Function<String, String> fetch, int ttlSeconds, Checkpoint checkpoint) {
+        List<CommandObject<?>> commands = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            acquireFetchPermit();
+            commands.add(executor.commands().setex(keyOf.apply(id), ttlSeconds, fetch.apply(id)));
+        }
+
+        for (Object reply : executor.executeBatch(commands)) {
+            if (reply instanceof RuntimeException) {
+                throw (RuntimeException) reply;
+            }
+        }
+        if (checkpoint != null) {
+            // Only recorded once every key of the chunk is written. The expiry stays at the
+            // deadline of the first chunk; a deadline already passed deletes the checkpoint
+            List<CommandObject<?>> record = new ArrayList<>(2);
+            record.add(executor.commands().sadd(checkpointKey, checkpoint.fingerprint, String.valueOf(chunkIndex)));
+            record.add(executor.commands().pexpireAt(checkpointKey, checkpoint.expiresAt));
+            executor.executeBatch(record);
+        }
+        return ids.size();
+    }
+
+    /**
+     * Spaces backend fetches 1/rate seconds apart across all threads.
+     */
+    private void acquireFetchPermit() {
+        double rate = maxFetchesPerSecond;
+        if (rate <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (rateLock) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextFetchNanos);
+            nextFetchNanos = slot + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a fetch permit", e);
+            }
+        }
+    }
+
+    private void report(int completedChunks, int totalChunks, long warmedKeys) {
+        ProgressListener listener = progressListener;
+        if (listener != null) {
+            listener.onProgress(completedChunks, totalChunks, warmedKeys);
+        }
+    }
+
+    private static final class Checkpoint {
+        private final String fingerprint;
+        private final Set<String> done;
+        private final long expiresAt;
+
+        private Checkpoint(String fingerprint, Set<String> done, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.done = done;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Outcome of a warm-up run.
+     */
+    public static class Result {
+        private final long warmedKeys;
+        private final int skippedChunks;
+        private final List<ChunkFailure> failures;
+
+        Result(long warmedKeys, int skippedChunks, List<ChunkFailure> failures) {
+            this.warmedKeys = warmedKeys;
+            this.skippedChunks = skippedChunks;
+            this.failures = Collections.unmodifiableList(failures);
+        }
+
+        public long getWarmedKeys() {
+            return warmedKeys;
+        }
+
+        /**
+         * @return Chunks skipped because the checkpoint recorded them as done
+         */
+        public int getSkippedChunks() {
+            return skippedChunks;
+        }
+
+        public List<ChunkFailure> getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "warmedKeys=" + warmedKeys +
+                    ", skippedChunks=" + skippedChunks +
+                    ", failures=" + failures.size() +
+                    '}';
+        }
+    }
+
+    /**
+     * A chunk that could not be warmed. None of its keys count as warmed, although
+     * some may have been written before the failure.
+     */
+    public static class ChunkFailure {
+        private final int chunkIndex;
+        private final List<String> ids;
+        private final RuntimeException cause;
+
+        ChunkFailure(int chunkIndex, List<String> ids, RuntimeException cause) {
+            this.chunkIndex = chunkIndex;
+            this.ids = ids;
+            this.cause = cause;
+        }
+
+        public int getChunkIndex() {
+            return chunkIndex;
+        }
+
+        public List<String> getIds() {
+            return ids;
+        }
+
+        public RuntimeException getCause() {
+            return cause;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.redis.base;
+
+import redis.clients.jedis.ClusterCommandArguments;
+import redis.clients.jedis.ClusterCommandObjects;
+import redis.clients.jedis.ClusterPipeline;
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.CommandObjects;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.providers.ClusterConnectionProvider;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Executor for a Redis cluster backed by a JedisCluster.
+ * Single commands are routed to the master owning the key's slot; batches are
+ * split into one pipeline per master, and the pipelines run in parallel.
+ * <p>
+ * Pipelines use connection pools of their own, one per master, so share one executor
+ * per cluster client: {@link RedisConnection#getClusterExecutor(JedisCluster)}.
+ */
+public class ClusterRedisExecutor implements RedisExecutor {
+    private final JedisCluster jedisCluster;
+    private final CommandObjects commandObjects = new ClusterCommandObjects();
+    private ClusterConnectionProvider pipelineProvider;
+    private ExecutorService pipelineWorkers;
+
+    public ClusterRedisExecutor(JedisCluster jedisCluster) {
+        this.jedisCluster = jedisCluster;
+    }
+
+    @Override
+    public CommandObjects commands() {
+        return commandObjects;
+    }
+
+    @Override
+    public <T> T execute(CommandObject<T> command) {
+        return jedisCluster.executeCommand(command);
+    }
+
+    @Override
+    public List<Object> executeBatch(List<CommandObject<?>> commands) {
+        List<Object> replies = sendBatch(commands);
+        List<Integer> moved = new ArrayList<>();
+        for (int i = 0; i < replies.size(); i++) {
+            if (replies.get(i) instanceof JedisMovedDataException) {
+                moved.add(i);
+            }
+        }
+        if (moved.isEmpty()) {
+            return replies;
+        }
+
+        // A MOVED command did not run; learn the new slot owners and send it there once
+        getPipelineProvider().renewSlotCache();
+        List<CommandObject<?>> retry = new ArrayList<>(moved.size());
+        for (int position : moved) {
+            retry.add(commands.get(position));
+        }
+        List<Object> retried = sendBatch(retry);
+        List<Object> merged = new ArrayList<>(replies);
+        for (int i = 0; i < moved.size(); i++) {
+            merged.set(moved.get(i), retried.get(i));
+        }
+        return merged;
+    }
+
+    private List<Object> sendBatch(List<CommandObject<?>> commands) {
+        ClusterConnectionProvider provider = getPipelineProvider();
+        Map<HostAndPort, List<Integer>> byNode = new LinkedHashMap<>();
+        for (int i = 0; i < commands.size(); i++) {
+            int slot = ((ClusterCommandArguments) commands.get(i).getArguments()).getCommandHashSlot();
+            byNode.computeIfAbsent(provider.getNode(slot), node -> new ArrayList<>()).add(i);
+        }
+        if (byNode.size() <= 1) {
+            return sync(provider, commands);
+        }
+
+        // ClusterPipeline syncs its nodes one after the other; one pipeline per node runs them side by side
+        Object[] replies = new Object[commands.size()];
+        List<Future<?>> nodeBatches = new ArrayList<>(byNode.size());
+        for (final List<Integer> positions : byNode.values()) {
+            nodeBatches.add(getPipelineWorkers().submit(() -> {
+                List<CommandObject<?>> nodeCommands = new ArrayList<>(positions.size());
+                for (int position : positions) {
+                    nodeCommands.add(commands.get(position));
+                }
+                List<Object> nodeReplies = sync(provider, nodeCommands);
+                for (int i = 0; i < positions.size(); i++) {
+                    replies[positions.get(i)] = nodeReplies.get(i);
+                }
+            }));
+        }
+        for (Future<?> nodeBatch : nodeBatches) {
+            try {
+                nodeBatch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JedisException("Interrupted while waiting for a cluster pipeline", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new JedisException(e.getCause());
+            }
+        }
+        return Arrays.asList(replies);
+    }
+
+    private static List<Object> sync(ClusterConnectionProvider provider, List<CommandObject<?>> commands) {
+        List<Response<?>> responses = new ArrayList<>(commands.size());
+        try (SlotPipeline pipeline = new SlotPipeline(provider)) {
+            for (CommandObject<?> command : commands) {
+                responses.add(pipeline.append(command));
+            }
+            pipeline.sync();
+        }
+        return PooledRedisExecutor.collect(responses);
+    }
+
+    @Override
+    public Jedis getResource(String key) {
+        return new Jedis(jedisCluster.getConnectionFromSlot(JedisClusterCRC16.getSlot(key)));
+    }
+
+    /**
+     * Closes the pipeline connections and workers. The JedisCluster is shared and left open.
+     */
+    @Override
+    public synchronized void close() {
+        if (pipelineWorkers != null) {
+            pipelineWorkers.shutdown();
+            pipelineWorkers = null;
+        }
+        if (pipelineProvider != null) {
+            pipelineProvider.close();
+            pipelineProvider = null;
+        }
+    }
+
+    /**
+     * JedisCluster does not expose its connection provider, so pipelines get their
+     * own provider, discovered from the same nodes and created on first use. Its slot
+     * map is refreshed when a pipelined command gets MOVED.
+     */
+    private synchronized ClusterConnectionProvider getPipelineProvider() {
+        if (pipelineProvider == null) {
+            Set<HostAndPort> nodes = new LinkedHashSet<>();
+            for (String node : jedisCluster.getClusterNodes().keySet()) {
+                nodes.add(HostAndPort.from(node));
+            }
+            pipelineProvider = new ClusterConnectionProvider(nodes,
+                    RedisConnection.buildClientConfig(), RedisConnection.buildClusterPoolConfig());
+        }
+        return pipelineProvider;
+    }
+
+    private synchronized ExecutorService getPipelineWorkers() {
+        if (pipelineWorkers == null) {
+            pipelineWorkers = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "cluster-pipeline");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pipelineWorkers;
+    }
+
+    /**
+     * ClusterPipeline only exposes typed command methods; this opens it up to command objects.
+     */
+    private static class SlotPipeline extends ClusterPipeline {
+        SlotPipeline(ClusterConnectionProvider provider) {
+            super(provider);
+        }
+
+        <T> Response<T> append(CommandObject<T> command) {
+            return appendCommand(command);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.redis.base;
+
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import redis.clients.jedis.Jedis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of connection pool counters, plus server-side command counts.
+ * <p>
+ * Comparing the server command counts before and after a workload shows how many
+ * round trips each logical operation costs; with background validation a GET
+ * costs one call and no PING.
+ */
+public class ConnectionMetrics {
+    private final long borrowed;
+    private final long returned;
+    private final long created;
+    private final long destroyed;
+    private final long destroyedByEvictor;
+    private final long destroyedByBorrowValidation;
+    private final int active;
+    private final int idle;
+    private final long meanBorrowWaitMillis;
+
+    private ConnectionMetrics(GenericObjectPool<?> pool) {
+        this.borrowed = pool.getBorrowedCount();
+        this.returned = pool.getReturnedCount();
+        this.created = pool.getCreatedCount();
+        this.destroyed = pool.getDestroyedCount();
+        this.destroyedByEvictor = pool.getDestroyedByEvictorCount();
+        this.destroyedByBorrowValidation = pool.getDestroyedByBorrowValidationCount();
+        this.active = pool.getNumActive();
+        this.idle = pool.getNumIdle();
+        this.meanBorrowWaitMillis = pool.getMeanBorrowWaitTimeMillis();
+    }
+
+    /**
+     * Takes a snapshot of the counters of a pool (JedisPool or a cluster node pool).
+     *
+     * @param pool Pool to read
+     * @return Current counters
+     */
+    public static ConnectionMetrics of(GenericObjectPool<?> pool) {
+        return new ConnectionMetrics(pool);
+    }
+
+    /**
+     * Reads the number of calls per command from INFO commandstats.
+     *
+     * @param jedis Connection to the server to inspect
+     * @return Map from lower-case command name (e.g. "get", "ping") to number of calls
+     */
+    public static Map<String, Long> commandCalls(Jedis jedis) {
+        Map<String, Long> calls = new HashMap<>();
+        for (String line : jedis.info("commandstats").split("\r?\n")) {
+            // cmdstat_get:calls=10,usec=20,usec_per_call=2.00,...
+            if (!line.startsWith("cmdstat_")) {
+                continue;
+            }
+            int colon = line.indexOf(':');
+            String command = line.substring("cmdstat_".length(), colon);
+            for (String field : line.substring(colon + 1).split(",")) {
+                if (field.startsWith("calls=")) {
+                    calls.put(command, Long.parseLong(field.substring("calls=".length())));
+                }
+            }
+        }
+        return calls;
+    }
+
+    public long getBorrowed() {
+        return borrowed;
+    }
+
+    public long getReturned() {
+        return returned;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getDestroyed() {
+        return destroyed;
+    }
+
+    public long getDestroyedByEvictor() {
+        return destroyedByEvictor;
+    }
+
+    public long getDestroyedByBorrowValidation() {
+        return destroyedByBorrowValidation;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public long getMeanBorrowWaitMillis() {
+        return meanBorrowWaitMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionMetrics{borrowed=" + borrowed
+                + ", returned=" + returned
+                + ", created=" + created
+                + ", destroyed=" + destroyed
+                + ", destroyedByEvictor=" + destroyedByEvictor
+                + ", destroyedByBorrowValidation=" + destroyedByBorrowValidation
+                + ", active=" + active
+                + ", idle=" + idle
+                + ", meanBorrowWaitMillis=" + meanBorrowWaitMillis + "}";
+    }
+}
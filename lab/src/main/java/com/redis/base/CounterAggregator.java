@@ -0,0 +1,295 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds up counter increments in memory and writes the merged deltas to Redis in one
+ * pipeline, instead of one round trip per increment.
+ * <p>
+ * Increments go to one of several stripes, picked by thread, so threads rarely share
+ * a lock (the same idea as {@link LongAdder}). A flush swaps out every stripe and
+ * merges them: a counter incremented a thousand times between flushes costs one
+ * command. Flushes run every flush interval, and as soon as the pending increments
+ * reach the max pending events, so an increment reaches Redis within about one
+ * interval. {@link #close()} drains what is left.
+ * <p>
+ * If the pipeline cannot be sent, the deltas are put back and sent with the next
+ * flush. A connection lost after Redis applied the commands can therefore count a
+ * delta twice; commands rejected by Redis are dropped.
+ * <p>
+ * Example:
+ * <pre>
+ *     CounterAggregator&lt;String&gt; views = new CounterAggregator&lt;&gt;(executor,
+ *             (key, delta, commands) -&gt; commands.add(executor.commands().incrBy(key, delta)));
+ *     views.start();
+ *     views.add("pageviews:home:total", 1);
+ * </pre>
+ *
+ * @param <K> Counter identifier, with equals and hashCode
+ */
+public class CounterAggregator<K> implements AutoCloseable {
+    private final RedisExecutor executor;
+    private final CommandBuilder<K> commandBuilder;
+    private final Stripe<K>[] stripes;
+
+    private long flushIntervalMillis = 100;
+    private long maxPendingEvents = 1000;
+
+    // Flushes hold this lock, so adding threads never wait for a flush in progress
+    private final Object flushLock = new Object();
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder sentCommands = new LongAdder();
+    private ScheduledExecutorService flusher;
+
+    /**
+     * Builds the commands writing the merged delta of one counter.
+     *
+     * @param <K> Counter identifier
+     */
+    public interface CommandBuilder<K> {
+        /**
+         * @param counter  Counter
+         * @param delta    Sum of its increments since the last flush
+         * @param commands Commands of the flush pipeline to add to
+         */
+        void addCommands(K counter, long delta, List<CommandObject<?>> commands);
+    }
+
+    private static final class Stripe<K> {
+        private Map<K, long[]> deltas = new HashMap<>();
+        private long events;
+    }
+
+    /**
+     * @param executor       Executor the deltas are written to
+     * @param commandBuilder Builds the commands for each counter
+     */
+    @SuppressWarnings("unchecked")
+    public CounterAggregator(RedisExecutor executor, CommandBuilder<K> commandBuilder) {
+        this.executor = executor;
+        this.commandBuilder = commandBuilder;
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        this.stripes = (Stripe<K>[]) new Stripe<?>[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+
+    /**
+     * @param flushIntervalMillis Maximum time between flushes (default 100)
+     */
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        if (flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("Flush interval must be positive: " + flushIntervalMillis);
+        }
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * @param maxPendingEvents Pending increments that trigger a flush before the interval ends (default 1000)
+     */
+    public void setMaxPendingEvents(long maxPendingEvents) {
+        if (maxPendingEvents < 1) {
+            throw new IllegalArgumentException("Max pending events must be positive: " + maxPendingEvents);
+        }
+        this.maxPendingEvents = maxPendingEvents;
+    }
+
+    /**
+     * Starts flushing in the background.
+     */
+    public synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "counter-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleAtFixedRate(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds to a counter. The increment is written to Redis by a later flush.
+     *
+     * @param counter Counter
+     * @param delta   Increment
+     */
+    public void add(K counter, long delta) {
+        Stripe<K> stripe = currentStripe();
+        synchronized (stripe) {
+            long[] sum = stripe.deltas.get(counter);
+            if (sum == null) {
+                stripe.deltas.put(counter, new long[]{delta});
+            } else {
+                sum[0] += delta;
+            }
+            stripe.events++;
+        }
+        if (pendingEvents.incrementAndGet() >= maxPendingEvents && flushRequested.compareAndSet(false, true)) {
+            requestFlush();
+        }
+    }
+
+    private Stripe<K> currentStripe() {
+        return stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+    }
+
+    private synchronized void requestFlush() {
+        if (flusher == null) {
+            flushRequested.set(false);
+            return;
+        }
+        try {
+            flusher.execute(this::flushQuietly);
+        } catch (RejectedExecutionException e) {
+            // Closing; close() drains the pending increments
+            flushRequested.set(false);
+        }
+    }
+
+    /**
+     * Writes the pending deltas in one pipeline.
+     *
+     * @return Number of counters written
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            Map<K, long[]> merged = new HashMap<>();
+            long events = 0;
+            for (Stripe<K> stripe : stripes) {
+                Map<K, long[]> deltas;
+                synchronized (stripe) {
+                    deltas = stripe.deltas;
+                    events += stripe.events;
+                    stripe.deltas = new HashMap<>();
+                    stripe.events = 0;
+                }
+                for (Map.Entry<K, long[]> delta : deltas.entrySet()) {
+                    long[] sum = merged.putIfAbsent(delta.getKey(), delta.getValue());
+                    if (sum != null) {
+                        sum[0] += delta.getValue()[0];
+                    }
+                }
+            }
+            pendingEvents.addAndGet(-events);
+            if (merged.isEmpty()) {
+                return 0;
+            }
+
+            List<CommandObject<?>> commands = new ArrayList<>(merged.size() * 2);
+            for (Map.Entry<K, long[]> delta : merged.entrySet()) {
+                if (delta.getValue()[0] != 0) {
+                    commandBuilder.addCommands(delta.getKey(), delta.getValue()[0], commands);
+                }
+            }
+            List<Object> replies;
+            try {
+                replies = commands.isEmpty() ? new ArrayList<>() : executor.executeBatch(commands);
+            } catch (RuntimeException e) {
+                failedFlushes.increment();
+                restore(merged, events);
+                throw e;
+            }
+            flushes.increment();
+            sentCommands.add(commands.size());
+            for (Object reply : replies) {
+                if (reply instanceof RuntimeException) {
+                    failedFlushes.increment();
+                    break;
+                }
+            }
+            return merged.size();
+        }
+    }
+
+    /**
+     * Puts the deltas of a failed flush back with the number of increments they
+     * held, so they go out with the next flush. Unlike add(), this counts the
+     * original increments rather than one per counter and never requests a flush.
+     */
+    private void restore(Map<K, long[]> deltas, long events) {
+        Stripe<K> stripe = currentStripe();
+        synchronized (stripe) {
+            for (Map.Entry<K, long[]> delta : deltas.entrySet()) {
+                long[] sum = stripe.deltas.putIfAbsent(delta.getKey(), delta.getValue());
+                if (sum != null) {
+                    sum[0] += delta.getValue()[0];
+                }
+            }
+            stripe.events += events;
+        }
+        pendingEvents.addAndGet(events);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // The deltas were put back and go out with the next flush
+        }
+    }
+
+    /**
+     * @return Increments not flushed yet
+     */
+    public long getPendingEvents() {
+        return pendingEvents.get();
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * @return Flushes that could not be sent or had commands rejected
+     */
+    public long getFailedFlushes() {
+        return failedFlushes.sum();
+    }
+
+    /**
+     * @return Commands sent by all flushes
+     */
+    public long getSentCommands() {
+        return sentCommands.sum();
+    }
+
+    /**
+     * Stops the background flushes and writes the pending deltas.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService stopped;
+        synchronized (this) {
+            stopped = flusher;
+            flusher = null;
+        }
+        if (stopped != null) {
+            stopped.shutdown();
+            try {
+                stopped.awaitTermination(flushIntervalMillis * 10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+}
@@ -0,0 +1,378 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandObject;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps POJOs to Redis hashes, one hash field per Java field.
+ * <p>
+ * Objects are loaded with HMGET for just the fields the caller asks for, and more
+ * fields can be fetched later on the same object. The loaded values are remembered,
+ * so saving sends HSET for the fields that changed only (and HDEL for fields set to
+ * null), keeping reads and writes proportional to the fields actually used.
+ * <p>
+ * Mapped classes need a no-argument constructor. Non-static, non-transient fields of
+ * type String, int/Integer, long/Long, double/Double, boolean/Boolean or an enum are
+ * mapped under their Java name. The field metadata and accessors are built once per
+ * class and shared, so loading and saving do no reflective lookups.
+ * <p>
+ * Example:
+ * <pre>
+ *     HashMapper&lt;UserProfile&gt; mapper = new HashMapper&lt;&gt;(UserProfile.class, executor);
+ *     HashMapper.Tracked&lt;UserProfile&gt; profile = mapper.load(key, "email");
+ *     profile.get().email = "jane@example.com";
+ *     mapper.save(profile);   // HSET key email jane@example.com
+ * </pre>
+ *
+ * @param <T> Mapped type
+ */
+public class HashMapper<T> {
+    private static final ConcurrentMap<Class<?>, ClassMapping> MAPPINGS = new ConcurrentHashMap<>();
+
+    private final RedisExecutor executor;
+    private final ClassMapping mapping;
+
+    public HashMapper(Class<T> type, RedisExecutor executor) {
+        this.executor = executor;
+        this.mapping = MAPPINGS.computeIfAbsent(type, ClassMapping::new);
+    }
+
+    /**
+     * An object loaded from (or saved to) a hash, with the field values Redis is known to hold.
+     *
+     * @param <T> Mapped type
+     */
+    public static class Tracked<T> {
+        private final String key;
+        private final T object;
+        private final Map<String, String> stored = new HashMap<>();
+
+        Tracked(String key, T object) {
+            this.key = key;
+            this.object = object;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public T get() {
+            return object;
+        }
+
+        /**
+         * @param field Field name
+         * @return true if the field was loaded or saved through this handle
+         */
+        public boolean isLoaded(String field) {
+            return stored.containsKey(field);
+        }
+    }
+
+    /**
+     * Gets the hash field names of the mapped type.
+     *
+     * @return Field names in declaration order
+     */
+    public List<String> getFieldNames() {
+        return mapping.names;
+    }
+
+    /**
+     * Loads the given fields with one HMGET; other fields keep their default values.
+     *
+     * @param key    Key of the hash
+     * @param fields Fields to load, or none for every mapped field
+     * @return The loaded object, or null if none of the fields exist
+     */
+    public Tracked<T> load(String key, String... fields) {
+        Tracked<T> tracked = new Tracked<>(key, newInstance());
+        return fetch(tracked, fields) ? tracked : null;
+    }
+
+    /**
+     * Loads more fields into an object that was already loaded. Fields already
+     * loaded are not read again.
+     *
+     * @param tracked Loaded object
+     * @param fields  Fields to load
+     */
+    public void loadMore(Tracked<T> tracked, String... fields) {
+        List<String> missing = new ArrayList<>();
+        for (String field : fields) {
+            if (!tracked.isLoaded(field)) {
+                missing.add(field);
+            }
+        }
+        if (!missing.isEmpty()) {
+            fetch(tracked, missing.toArray(new String[0]));
+        }
+    }
+
+    private boolean fetch(Tracked<T> tracked, String[] fields) {
+        String[] names = fields.length == 0 ? mapping.names.toArray(new String[0]) : fields;
+        List<String> values = executor.execute(executor.commands().hmget(tracked.key, names));
+        boolean found = false;
+        for (int i = 0; i < names.length; i++) {
+            String value = values.get(i);
+            FieldMapping field = mapping.field(names[i]);
+            field.set(tracked.object, value);
+            // A missing primitive field reads as its default value, which is then not dirty
+            tracked.stored.put(names[i], value != null ? value : field.get(tracked.object));
+            found |= value != null;
+        }
+        return found;
+    }
+
+    /**
+     * Starts tracking an object that is not in Redis yet; saving it writes every field
+     * that differs from a newly constructed instance.
+     *
+     * @param key    Key of the hash
+     * @param object Object to save
+     * @return Handle to pass to {@link #save(Tracked)}
+     */
+    public Tracked<T> track(String key, T object) {
+        return new Tracked<>(key, object);
+    }
+
+    /**
+     * Gets the fields changed since the object was loaded or last saved. Fields never
+     * loaded count as changed when they differ from a newly constructed instance.
+     *
+     * @param tracked Tracked object
+     * @return Changed field names
+     */
+    public List<String> getDirtyFields(Tracked<T> tracked) {
+        List<String> dirty = new ArrayList<>();
+        for (FieldMapping field : mapping.fields) {
+            String value = field.get(tracked.object);
+            String known = tracked.stored.containsKey(field.name) ? tracked.stored.get(field.name) : field.defaultValue;
+            if (!Objects.equals(value, known)) {
+                dirty.add(field.name);
+            }
+        }
+        return dirty;
+    }
+
+    /**
+     * Writes the changed fields only: one HSET for new values and one HDEL for fields
+     * set to null, sent together.
+     *
+     * @param tracked Tracked object
+     * @return Number of fields written or deleted
+     */
+    public int save(Tracked<T> tracked) {
+        Map<String, String> changed = new LinkedHashMap<>();
+        List<String> removed = new ArrayList<>();
+        for (String name : getDirtyFields(tracked)) {
+            String value = mapping.field(name).get(tracked.object);
+            if (value == null) {
+                removed.add(name);
+            } else {
+                changed.put(name, value);
+            }
+        }
+
+        List<CommandObject<?>> commands = new ArrayList<>(2);
+        if (!changed.isEmpty()) {
+            commands.add(executor.commands().hset(tracked.key, changed));
+        }
+        if (!removed.isEmpty()) {
+            commands.add(executor.commands().hdel(tracked.key, removed.toArray(new String[0])));
+        }
+        if (commands.isEmpty()) {
+            return 0;
+        }
+        for (Object reply : executor.executeBatch(commands)) {
+            if (reply instanceof RuntimeException) {
+                throw (RuntimeException) reply;
+            }
+        }
+
+        tracked.stored.putAll(changed);
+        for (String name : removed) {
+            tracked.stored.put(name, null);
+        }
+        return changed.size() + removed.size();
+    }
+
+    /**
+     * Converts an object to hash fields, skipping null fields.
+     *
+     * @param object Object to convert
+     * @return Field name/value pairs
+     */
+    public Map<String, String> toHash(T object) {
+        Map<String, String> hash = new LinkedHashMap<>();
+        for (FieldMapping field : mapping.fields) {
+            String value = field.get(object);
+            if (value != null) {
+                hash.put(field.name, value);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Converts hash fields to an object; missing fields keep their default values.
+     *
+     * @param hash Field name/value pairs, e.g. from HGETALL
+     * @return The object
+     */
+    public T fromHash(Map<String, String> hash) {
+        T object = newInstance();
+        for (FieldMapping field : mapping.fields) {
+            if (hash.containsKey(field.name)) {
+                field.set(object, hash.get(field.name));
+            }
+        }
+        return object;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T newInstance() {
+        try {
+            return (T) mapping.constructor.invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create " + mapping.type.getName(), e);
+        }
+    }
+
+    /**
+     * Accessors and defaults of one mapped class, built once.
+     */
+    private static final class ClassMapping {
+        private final Class<?> type;
+        private final MethodHandle constructor;
+        private final List<FieldMapping> fields = new ArrayList<>();
+        private final Map<String, FieldMapping> byName = new HashMap<>();
+        private final List<String> names;
+
+        private ClassMapping(Class<?> type) {
+            this.type = type;
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                Constructor<?> noArgs = type.getDeclaredConstructor();
+                noArgs.setAccessible(true);
+                this.constructor = lookup.unreflectConstructor(noArgs);
+                Object defaults = noArgs.newInstance();
+
+                for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())
+                                || field.isSynthetic() || byName.containsKey(field.getName())) {
+                            continue;
+                        }
+                        field.setAccessible(true);
+                        FieldMapping mapping = new FieldMapping(field, lookup.unreflectGetter(field),
+                                lookup.unreflectSetter(field));
+                        mapping.defaultValue = mapping.get(defaults);
+                        fields.add(mapping);
+                        byName.put(mapping.name, mapping);
+                    }
+                }
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Cannot map " + type.getName()
+                        + ": it needs an accessible no-argument constructor", e);
+            }
+            List<String> fieldNames = new ArrayList<>();
+            for (FieldMapping field : fields) {
+                fieldNames.add(field.name);
+            }
+            this.names = Collections.unmodifiableList(fieldNames);
+        }
+
+        private FieldMapping field(String name) {
+            FieldMapping field = byName.get(name);
+            if (field == null) {
+                throw new IllegalArgumentException("Unknown field " + name + " of " + type.getName()
+                        + ", expected one of " + Arrays.toString(names.toArray()));
+            }
+            return field;
+        }
+    }
+
+    /**
+     * Reads and writes one field as a string.
+     */
+    private static final class FieldMapping {
+        private final String name;
+        private final Class<?> type;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private String defaultValue;
+
+        private FieldMapping(Field field, MethodHandle getter, MethodHandle setter) {
+            this.name = field.getName();
+            this.type = field.getType();
+            this.getter = getter;
+            this.setter = setter;
+            if (!(type == String.class || type == int.class || type == Integer.class || type == long.class
+                    || type == Long.class || type == double.class || type == Double.class || type == boolean.class
+                    || type == Boolean.class || type.isEnum())) {
+                throw new IllegalArgumentException("Unsupported type " + type.getName() + " of field " + name);
+            }
+        }
+
+        private String get(Object object) {
+            try {
+                Object value = getter.invoke(object);
+                if (value == null) {
+                    return null;
+                }
+                return value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot read field " + name, e);
+            }
+        }
+
+        private void set(Object object, String value) {
+            if (value == null && type.isPrimitive()) {
+                return;
+            }
+            try {
+                setter.invoke(object, value == null ? null : parse(value));
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot write field " + name, e);
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object parse(String value) {
+            if (type == String.class) {
+                return value;
+            } else if (type == int.class || type == Integer.class) {
+                return Integer.valueOf(value);
+            } else if (type == long.class || type == Long.class) {
+                return Long.valueOf(value);
+            } else if (type == double.class || type == Double.class) {
+                return Double.valueOf(value);
+            } else if (type == boolean.class || type == Boolean.class) {
+                return Boolean.valueOf(value);
+            }
+            return Enum.valueOf((Class<? extends Enum>) type, value);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.redis.base;
+
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over the fields of a hash with HSCAN, one page at a time.
+ * <p>
+ * Unlike HGETALL, which builds the whole hash in one reply and keeps the server busy
+ * while doing it, each HSCAN call does a bounded amount of work (about {@code count}
+ * fields) and only one page is held in memory. The next page is requested only when the
+ * caller has consumed the current one, so a slow consumer never buffers more than a page.
+ * <p>
+ * HSCAN guarantees that fields present for the whole iteration are returned, but a field
+ * may be returned more than once if the hash is resized meanwhile, and fields added or
+ * removed during the iteration may or may not be returned.
+ * <p>
+ * Example:
+ * <pre>
+ *     HashScanIterator.stream(executor, key, 1000)
+ *             .filter(field -> field.getValue().startsWith("active"))
+ *             .forEach(field -> process(field.getKey()));
+ * </pre>
+ */
+public class HashScanIterator implements Iterator<Map.Entry<String, String>> {
+    private final RedisExecutor executor;
+    private final String key;
+    private final ScanParams params;
+
+    private Iterator<Map.Entry<String, String>> page = Collections.emptyIterator();
+    private String cursor = ScanParams.SCAN_POINTER_START;
+    private boolean finished;
+    private int pagesFetched;
+
+    /**
+     * @param executor Executor to send HSCAN with
+     * @param key      Key of the hash
+     * @param count    HSCAN COUNT hint: fields examined per call
+     */
+    public HashScanIterator(RedisExecutor executor, String key, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be positive: " + count);
+        }
+        this.executor = executor;
+        this.key = key;
+        this.params = new ScanParams().count(count);
+    }
+
+    /**
+     * Streams the fields of a hash lazily; pages are fetched as the stream is consumed.
+     *
+     * @param executor Executor to send HSCAN with
+     * @param key      Key of the hash
+     * @param count    HSCAN COUNT hint: fields examined per call
+     * @return Sequential stream of field/value entries
+     */
+    public static Stream<Map.Entry<String, String>> stream(RedisExecutor executor, String key, int count) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new HashScanIterator(executor, key, count),
+                Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public boolean hasNext() {
+        // A page can be empty while the cursor is not finished yet
+        while (!page.hasNext() && !finished) {
+            ScanResult<Map.Entry<String, String>> result = executor.execute(executor.commands().hscan(key, cursor, params));
+            page = result.getResult().iterator();
+            cursor = result.getCursor();
+            finished = ScanParams.SCAN_POINTER_START.equals(cursor);
+            pagesFetched++;
+        }
+        return page.hasNext();
+    }
+
+    @Override
+    public Map.Entry<String, String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    /**
+     * Gets the number of HSCAN calls made so far.
+     *
+     * @return Pages fetched
+     */
+    public int getPagesFetched() {
+        return pagesFetched;
+    }
+}
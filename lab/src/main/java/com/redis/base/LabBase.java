@@ -1,14 +1,27 @@
 package com.redis.base;
 
-
+import redis.clients.jedis.CommandObjects;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Base class for all Redis training lab exercises.
  * Provides common functionality and connection management.
+ * <p>
+ * Exercises can use the {@code jedisPool} directly, or the {@code executor},
+ * which works the same way over a pool, a cluster, a pipelined batcher or an async worker pool.
  */
 public abstract class LabBase {
     protected final JedisPool jedisPool;
+    protected final JedisCluster jedisCluster;
+    protected final RedisExecutor executor;
 
     /**
      * Constructor that accepts a JedisPool for Redis connections.
@@ -17,12 +30,119 @@ public abstract class LabBase {
      */
     public LabBase(JedisPool jedisPool) {
         this.jedisPool = jedisPool;
+        this.jedisCluster = null;
+        this.executor = new PooledRedisExecutor(jedisPool);
+    }
+
+    /**
+     * Constructor that accepts a JedisCluster for Redis cluster connections.
+     * Commands are routed to the master that owns the slot of each key. Exercises
+     * on the same cluster client share one executor.
+     *
+     * @param jedisCluster The JedisCluster to use for Redis operations
+     */
+    public LabBase(JedisCluster jedisCluster) {
+        this.jedisPool = null;
+        this.jedisCluster = jedisCluster;
+        this.executor = RedisConnection.getClusterExecutor(jedisCluster);
+    }
+
+    /**
+     * Constructor that accepts any RedisExecutor transport.
+     * The {@code jedisPool} and {@code jedisCluster} fields are not set in this mode.
+     *
+     * @param executor The executor to use for Redis operations
+     */
+    public LabBase(RedisExecutor executor) {
+        this.jedisPool = null;
+        this.jedisCluster = null;
+        this.executor = executor;
     }
-    
+
     /**
      * Default constructor that uses the default Redis connection.
+     * The executor follows pool swaps made by RedisConnection.reconfigure();
+     * the {@code jedisPool} field keeps the pool that was current at construction,
+     * which a swap leaves open.
      */
     public LabBase() {
-        this.jedisPool = RedisConnection.getPool();
+        this.jedisPool = RedisConnection.exposePool();
+        this.jedisCluster = null;
+        this.executor = new PooledRedisExecutor(RedisConnection::getPool);
+    }
+
+    /**
+     * Whether this exercise runs against a Redis cluster instead of a standalone server.
+     *
+     * @return true if a JedisCluster or a cluster executor was provided
+     */
+    protected boolean isCluster() {
+        return jedisCluster != null || executor instanceof ClusterRedisExecutor;
+    }
+
+    /**
+     * Gets the command factory matching the executor.
+     *
+     * @return Command factory to build commands for {@code executor}
+     */
+    protected CommandObjects commands() {
+        return executor.commands();
+    }
+
+    /**
+     * Gets a dedicated connection for commands that need connection state
+     * (WATCH, MULTI/EXEC). In cluster mode the connection goes to the master
+     * owning the slot of the given key, so every key used on it must share
+     * that slot (use a hash tag such as "{sale}" in the key prefix).
+     *
+     * @param key Key whose slot selects the cluster node
+     * @return Jedis connection to close after use
+     */
+    protected Jedis getResource(String key) {
+        return executor.getResource(key);
+    }
+
+    /**
+     * Splits keys into groups that can each be sent as one multi-key command
+     * (MGET, MSET, ...). Groups hold at most chunkSize keys and, in cluster mode,
+     * only keys of the same hash slot. Groups hold positions in the input list,
+     * so replies can be put back in input order.
+     *
+     * @param keys      Keys to split
+     * @param chunkSize Maximum number of keys per group
+     * @return Groups of positions into {@code keys}
+     */
+    protected List<List<Integer>> partitionKeys(List<String> keys, int chunkSize) {
+        Map<Integer, List<Integer>> bySlot = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            int slot = isCluster() ? JedisClusterCRC16.getSlot(keys.get(i)) : 0;
+            List<Integer> group = bySlot.get(slot);
+            if (group == null) {
+                group = new ArrayList<>();
+                bySlot.put(slot, group);
+            }
+            group.add(i);
+        }
+
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (List<Integer> group : bySlot.values()) {
+            for (int from = 0; from < group.size(); from += chunkSize) {
+                chunks.add(group.subList(from, Math.min(group.size(), from + chunkSize)));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Rethrows the first failed command of a batch, if any.
+     *
+     * @param replies Replies returned by {@link RedisExecutor#executeBatch}
+     */
+    protected static void throwFirstError(List<Object> replies) {
+        for (Object reply : replies) {
+            if (reply instanceof RuntimeException) {
+                throw (RuntimeException) reply;
+            }
+        }
     }
 }
@@ -0,0 +1,101 @@
+package com.redis.base;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Compact binary codec for records of string fields (e.g. a user profile), stored as a
+ * single value instead of JSON: the field count followed by each name and value,
+ * every one prefixed with its length as a varint. Compressed above a size threshold.
+ */
+public class MapCodec extends ValueCodec<Map<String, String>> {
+
+    /**
+     * Creates a codec that never compresses.
+     */
+    public MapCodec() {
+        this(NO_COMPRESSION);
+    }
+
+    /**
+     * @param compressionThreshold Minimum encoded size in bytes to compress, or {@link #NO_COMPRESSION}
+     */
+    public MapCodec(int compressionThreshold) {
+        super(compressionThreshold, Deflater.BEST_SPEED);
+    }
+
+    @Override
+    protected byte format() {
+        return MAP_FORMAT;
+    }
+
+    @Override
+    protected byte[] serialize(Map<String, String> value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeVarint(out, value.size());
+        for (Map.Entry<String, String> field : value.entrySet()) {
+            writeString(out, field.getKey());
+            writeString(out, field.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    protected Map<String, String> deserialize(byte[] body) {
+        int[] position = {0};
+        int count = readVarint(body, position);
+        Map<String, String> value = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String name = readString(body, position);
+            value.put(name, readString(body, position));
+        }
+        return value;
+    }
+
+    @Override
+    protected Map<String, String> decodeLegacy(byte[] bytes) {
+        throw new IllegalArgumentException("Value was not written by MapCodec");
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(byte[] body, int[] position) {
+        int length = readVarint(body, position);
+        if (position[0] + length > body.length) {
+            throw new IllegalArgumentException("Truncated value");
+        }
+        String value = new String(body, position[0], length, StandardCharsets.UTF_8);
+        position[0] += length;
+        return value;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] body, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= body.length) {
+                throw new IllegalArgumentException("Truncated value");
+            }
+            byte b = body[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed length");
+    }
+}
@@ -0,0 +1,348 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures how much memory a sample of objects takes in Redis with different key layouts.
+ * <p>
+ * Each layout writes the whole sample, reads it back and reports the bytes per object
+ * (from MEMORY USAGE, which includes the key and its overhead) together with the write
+ * and read throughput. The keys are deleted before the next layout runs.
+ * <ul>
+ *     <li>{@link Layout#STRING_PER_FIELD}: one string key per object field</li>
+ *     <li>{@link Layout#HASH_PER_OBJECT}: one hash per object</li>
+ *     <li>{@link Layout#BUCKETED_HASH}: several objects per hash, with as many objects per
+ *     bucket as fit under the server's compact hash encoding limit
+ *     ({@code hash-max-listpack-entries}, or {@code hash-max-ziplist-entries} before Redis 7)</li>
+ * </ul>
+ * Small hashes are stored in a compact encoding instead of a hash table; the reported
+ * encoding shows whether a layout stayed compact. Values longer than
+ * {@code hash-max-listpack-value} also turn a hash into a hash table.
+ * <p>
+ * Example:
+ * <pre>
+ *     MemoryFootprintAnalyzer analyzer = new MemoryFootprintAnalyzer(executor, "footprint:");
+ *     for (MemoryFootprintAnalyzer.Result result : analyzer.analyze(sample)) {
+ *         System.out.println(result);
+ *     }
+ * </pre>
+ */
+public class MemoryFootprintAnalyzer {
+    private static final int BATCH_SIZE = 100;
+
+    private final RedisExecutor executor;
+    private final String keyPrefix;
+    private int bucketSize;
+
+    /**
+     * Key layouts compared by the analyzer.
+     */
+    public enum Layout {
+        STRING_PER_FIELD,
+        HASH_PER_OBJECT,
+        BUCKETED_HASH
+    }
+
+    /**
+     * Footprint and throughput of one layout.
+     */
+    public static class Result {
+        private final Layout layout;
+        private final int objects;
+        private final int keys;
+        private final long bytes;
+        private final String encoding;
+        private final double writesPerSecond;
+        private final double readsPerSecond;
+
+        Result(Layout layout, int objects, int keys, long bytes, String encoding,
+               double writesPerSecond, double readsPerSecond) {
+            this.layout = layout;
+            this.objects = objects;
+            this.keys = keys;
+            this.bytes = bytes;
+            this.encoding = encoding;
+            this.writesPerSecond = writesPerSecond;
+            this.readsPerSecond = readsPerSecond;
+        }
+
+        public Layout getLayout() {
+            return layout;
+        }
+
+        public int getObjects() {
+            return objects;
+        }
+
+        public int getKeys() {
+            return keys;
+        }
+
+        /**
+         * @return Total MEMORY USAGE of the keys written
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getBytesPerObject() {
+            return objects == 0 ? 0 : (double) bytes / objects;
+        }
+
+        /**
+         * @return Encoding of the first key written, e.g. "embstr", "ziplist", "listpack" or "hashtable"
+         */
+        public String getEncoding() {
+            return encoding;
+        }
+
+        /**
+         * @return Objects written per second, pipelined
+         */
+        public double getWritesPerSecond() {
+            return writesPerSecond;
+        }
+
+        /**
+         * @return Objects read back per second, pipelined
+         */
+        public double getReadsPerSecond() {
+            return readsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-16s %8d objects %8d keys %10.1f bytes/object  %-9s %10.0f writes/s %10.0f reads/s",
+                    layout, objects, keys, getBytesPerObject(), encoding, writesPerSecond, readsPerSecond);
+        }
+    }
+
+    /**
+     * @param executor  Executor of the server to measure
+     * @param keyPrefix Prefix of the keys written; keep it away from real data
+     */
+    public MemoryFootprintAnalyzer(RedisExecutor executor, String keyPrefix) {
+        this.executor = executor;
+        this.keyPrefix = keyPrefix;
+    }
+
+    /**
+     * @param bucketSize Objects per bucket hash, or 0 to fit buckets under the compact encoding limit (default 0)
+     */
+    public void setBucketSize(int bucketSize) {
+        if (bucketSize < 0) {
+            throw new IllegalArgumentException("Bucket size must not be negative: " + bucketSize);
+        }
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * Runs every layout on the sample.
+     *
+     * @param sample Objects as field/value maps; all objects should have the same fields
+     * @return One result per layout
+     */
+    public List<Result> analyze(List<Map<String, String>> sample) {
+        List<Result> results = new ArrayList<>();
+        for (Layout layout : Layout.values()) {
+            results.add(analyze(layout, sample));
+        }
+        return results;
+    }
+
+    /**
+     * Writes the sample with one layout, measures it and deletes it again.
+     *
+     * @param layout Layout to measure
+     * @param sample Objects as field/value maps
+     * @return Footprint and throughput of the layout
+     */
+    public Result analyze(Layout layout, List<Map<String, String>> sample) {
+        int perBucket = layout == Layout.BUCKETED_HASH ? getObjectsPerBucket(sample) : 1;
+        List<String> keys = new ArrayList<>();
+        try {
+            long start = System.nanoTime();
+            List<CommandObject<?>> commands = new ArrayList<>();
+            for (int id = 0; id < sample.size(); id++) {
+                addWrites(layout, id, perBucket, sample.get(id), commands, keys);
+                if (commands.size() >= BATCH_SIZE) {
+                    send(commands);
+                }
+            }
+            send(commands);
+            double writesPerSecond = perSecond(sample.size(), System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int id = 0; id < sample.size(); id++) {
+                addReads(layout, id, perBucket, sample.get(id), commands);
+                if (commands.size() >= BATCH_SIZE) {
+                    send(commands);
+                }
+            }
+            send(commands);
+            double readsPerSecond = perSecond(sample.size(), System.nanoTime() - start);
+
+            long bytes = 0;
+            for (int from = 0; from < keys.size(); from += BATCH_SIZE) {
+                for (String key : keys.subList(from, Math.min(keys.size(), from + BATCH_SIZE))) {
+                    // SAMPLES 0 measures every element of the key instead of estimating
+                    commands.add(executor.commands().memoryUsage(key, 0));
+                }
+                for (Object reply : send(commands)) {
+                    bytes += reply == null ? 0 : (Long) reply;
+                }
+            }
+            String encoding = keys.isEmpty() ? null : executor.execute(executor.commands().objectEncoding(keys.get(0)));
+            return new Result(layout, sample.size(), keys.size(), bytes, encoding, writesPerSecond, readsPerSecond);
+        } finally {
+            List<CommandObject<?>> deletes = new ArrayList<>();
+            for (String key : keys) {
+                deletes.add(executor.commands().del(key));
+                if (deletes.size() >= BATCH_SIZE) {
+                    send(deletes);
+                }
+            }
+            send(deletes);
+        }
+    }
+
+    private void addWrites(Layout layout, int id, int perBucket, Map<String, String> object,
+                           List<CommandObject<?>> commands, List<String> keys) {
+        switch (layout) {
+            case STRING_PER_FIELD:
+                for (Map.Entry<String, String> field : object.entrySet()) {
+                    String key = keyPrefix + "string:" + id + ":" + field.getKey();
+                    commands.add(executor.commands().set(key, field.getValue()));
+                    keys.add(key);
+                }
+                break;
+            case HASH_PER_OBJECT:
+                String key = keyPrefix + "hash:" + id;
+                commands.add(executor.commands().hset(key, object));
+                keys.add(key);
+                break;
+            default:
+                String bucket = bucketKey(id, perBucket);
+                Map<String, String> fields = new LinkedHashMap<>();
+                for (Map.Entry<String, String> field : object.entrySet()) {
+                    fields.put(bucketField(id, perBucket, field.getKey()), field.getValue());
+                }
+                commands.add(executor.commands().hset(bucket, fields));
+                if (id % perBucket == 0) {
+                    keys.add(bucket);
+                }
+        }
+    }
+
+    private void addReads(Layout layout, int id, int perBucket, Map<String, String> object,
+                          List<CommandObject<?>> commands) {
+        switch (layout) {
+            case STRING_PER_FIELD:
+                for (String field : object.keySet()) {
+                    commands.add(executor.commands().get(keyPrefix + "string:" + id + ":" + field));
+                }
+                break;
+            case HASH_PER_OBJECT:
+                commands.add(executor.commands().hgetAll(keyPrefix + "hash:" + id));
+                break;
+            default:
+                String[] fields = new String[object.size()];
+                int i = 0;
+                for (String field : object.keySet()) {
+                    fields[i++] = bucketField(id, perBucket, field);
+                }
+                commands.add(executor.commands().hmget(bucketKey(id, perBucket), fields));
+        }
+    }
+
+    private String bucketKey(int id, int perBucket) {
+        return keyPrefix + "bucket:" + id / perBucket;
+    }
+
+    private static String bucketField(int id, int perBucket, String field) {
+        return id % perBucket + ":" + field;
+    }
+
+    private List<Object> send(List<CommandObject<?>> commands) {
+        if (commands.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Object> replies = executor.executeBatch(commands);
+        commands.clear();
+        for (Object reply : replies) {
+            if (reply instanceof RuntimeException) {
+                throw (RuntimeException) reply;
+            }
+        }
+        return replies;
+    }
+
+    private int getObjectsPerBucket(List<Map<String, String>> sample) {
+        if (bucketSize > 0) {
+            return bucketSize;
+        }
+        int fields = 1;
+        for (Map<String, String> object : sample) {
+            fields = Math.max(fields, object.size());
+        }
+        return Math.max(1, getHashMaxEntries() / fields);
+    }
+
+    /**
+     * Reads the number of fields up to which a hash keeps its compact encoding.
+     *
+     * @return hash-max-listpack-entries, or hash-max-ziplist-entries on servers before Redis 7
+     */
+    public int getHashMaxEntries() {
+        try (Jedis jedis = executor.getResource(keyPrefix)) {
+            List<String> setting = jedis.configGet("hash-max-listpack-entries");
+            if (setting.size() < 2) {
+                setting = jedis.configGet("hash-max-ziplist-entries");
+            }
+            return Integer.parseInt(setting.get(1));
+        }
+    }
+
+    private static double perSecond(int count, long nanos) {
+        return nanos == 0 ? 0 : count * 1_000_000_000d / nanos;
+    }
+
+    /**
+     * Prints the footprint of a sample of user profiles (the hashes of exercise 2.1)
+     * on the configured Redis server.
+     *
+     * @param args Optional number of profiles (default 10000)
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        List<Map<String, String>> sample = new ArrayList<>(count);
+        String[] departments = {"Engineering", "Sales", "Marketing", "Support"};
+        for (int i = 0; i < count; i++) {
+            Map<String, String> profile = new LinkedHashMap<>();
+            profile.put("firstname", "User" + i);
+            profile.put("lastname", "Lastname" + (i % 997));
+            profile.put("email", "user" + i + "@example.com");
+            profile.put("department", departments[i % departments.length]);
+            profile.put("yearjoined", String.valueOf(2000 + i % 25));
+            sample.add(profile);
+        }
+
+        JedisPool pool = RedisConnection.getPool();
+        try (RedisExecutor executor = new PooledRedisExecutor(pool)) {
+            MemoryFootprintAnalyzer analyzer = new MemoryFootprintAnalyzer(executor, "footprint:");
+            System.out.println("hash max entries: " + analyzer.getHashMaxEntries());
+            for (Result result : analyzer.analyze(sample)) {
+                System.out.println(result);
+            }
+        } finally {
+            RedisConnection.closeAll();
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandArguments;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-process cache placed in front of Redis lookups.
+ * <p>
+ * Lookups do not lock: entries live in a ConcurrentHashMap and a hit only records
+ * its access time on the entry. Once {@code maxEntries} is exceeded, the writer that
+ * crossed the limit sorts the entries by access time and drops the least recently
+ * used tenth, so eviction is approximately LRU and its cost is spread over many
+ * writes. Entries expire {@code ttlMillis} after they were stored, so a value is
+ * never served for longer than that even if an invalidation is lost.
+ * <p>
+ * To stay coherent with Redis, call {@link #startTracking} with the key prefixes to
+ * watch. The cache then uses Redis 6 client tracking in broadcasting mode: the server
+ * sends the name of every modified key under those prefixes to a dedicated subscriber
+ * connection, and the entry is dropped. Tracking belongs to a second, control
+ * connection, which is pinged whenever the subscriber has been idle for a second. If
+ * either connection fails, the whole cache is cleared, since invalidations may have
+ * been missed, and tracking is set up again.
+ * <p>
+ * Values read from Redis must be stored with {@link #beginLoad}/{@link #completeLoad}
+ * rather than {@link #put}, so a value invalidated while it was being read is not cached.
+ * <p>
+ * Example:
+ * <pre>
+ *     String value = nearCache.get(key);
+ *     if (value == null) {
+ *         Object token = nearCache.beginLoad(key);
+ *         value = executor.execute(executor.commands().get(key));
+ *         nearCache.completeLoad(key, token, value);
+ *     }
+ * </pre>
+ */
+public class NearCache implements AutoCloseable {
+    private static final String INVALIDATE_CHANNEL = "__redis__:invalidate";
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+    private static final int PING_INTERVAL_MILLIS = 1000;
+    /** Name of the connection that owns the tracking, as shown by CLIENT LIST. */
+    static final String CONTROL_CLIENT_NAME = "near-cache-control";
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Object> loading = new HashMap<>();
+    private final List<InvalidationListener> listeners = new ArrayList<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty near cache.
+     *
+     * @param maxEntries Maximum number of entries kept
+     * @param ttlMillis  Time an entry is served after being stored; keep it at or below the Redis TTL
+     */
+    public NearCache(int maxEntries, long ttlMillis) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        if (ttlMillis < 1) {
+            throw new IllegalArgumentException("TTL must be positive: " + ttlMillis);
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Gets a cached value.
+     *
+     * @param key Redis key
+     * @return Cached value, or null if absent or expired
+     */
+    public String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            long now = System.nanoTime();
+            if (entry.expiresAt - now > 0) {
+                entry.lastAccess = now;
+                hits.increment();
+                return entry.value;
+            }
+            if (entries.remove(key, entry)) {
+                evictions.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores a value written by this process (for example after a write-through update).
+     *
+     * @param key   Redis key
+     * @param value Value to cache
+     */
+    public synchronized void put(String key, String value) {
+        loading.remove(key);
+        store(key, value);
+    }
+
+    /**
+     * Marks the start of a Redis read for a key that missed.
+     *
+     * @param key Redis key about to be read
+     * @return Token to hand to {@link #completeLoad}
+     */
+    public synchronized Object beginLoad(String key) {
+        Object token = new Object();
+        loading.put(key, token);
+        return token;
+    }
+
+    /**
+     * Caches a value read from Redis, unless the key was invalidated (or loaded again)
+     * since the matching {@link #beginLoad}.
+     *
+     * @param key   Redis key
+     * @param token Token returned by {@link #beginLoad}
+     * @param value Value read, null values are not cached
+     * @return true if the value was cached
+     */
+    public synchronized boolean completeLoad(String key, Object token, String value) {
+        if (!loading.remove(key, token) || value == null) {
+            return false;
+        }
+        store(key, value);
+        return true;
+    }
+
+    // Callers hold the monitor, so writes and evictions do not interleave with invalidations
+    private void store(String key, String value) {
+        long now = System.nanoTime();
+        entries.put(key, new Entry(value, now + TimeUnit.MILLISECONDS.toNanos(ttlMillis), now));
+        if (entries.size() > maxEntries) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    private void evictLeastRecentlyUsed() {
+        // Evicting a tenth at once leaves room for the next writes without scanning again
+        int size = entries.size();
+        int evict = size - maxEntries + Math.max(1, maxEntries / 10) - 1;
+        long[] accesses = new long[size];
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            if (count == accesses.length) {
+                break;
+            }
+            accesses[count++] = entry.lastAccess;
+        }
+        if (count == 0 || evict < 1) {
+            return;
+        }
+        Arrays.sort(accesses, 0, count);
+        // Hits racing the scan move their entries past the cutoff and so are kept
+        long cutoff = accesses[Math.min(evict, count) - 1];
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && evict > 0; ) {
+            if (it.next().lastAccess <= cutoff) {
+                it.remove();
+                evictions.increment();
+                evict--;
+            }
+        }
+    }
+
+    /**
+     * Drops a key, e.g. when Redis reports that it was modified.
+     *
+     * @param key Redis key
+     */
+    public void invalidate(String key) {
+        synchronized (this) {
+            loading.remove(key);
+            entries.remove(key);
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public void invalidateAll() {
+        synchronized (this) {
+            loading.clear();
+            entries.clear();
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * Starts tracking the given key prefixes on each node, so writes made by any
+     * client invalidate the matching entries. For a cluster pass every master.
+     * Returns once the subscriptions are active.
+     *
+     * @param nodes    Redis nodes to track
+     * @param prefixes Key prefixes to watch
+     */
+    public void startTracking(Collection<HostAndPort> nodes, String... prefixes) {
+        if (prefixes.length == 0) {
+            throw new IllegalArgumentException("At least one prefix is required");
+        }
+        for (HostAndPort node : nodes) {
+            InvalidationListener listener = new InvalidationListener(node, prefixes);
+            synchronized (listeners) {
+                listeners.add(listener);
+            }
+            listener.start();
+            try {
+                listener.awaitSubscribed();
+            } catch (IllegalStateException e) {
+                stopTracking();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stops tracking; cached entries are kept until they expire.
+     */
+    public void stopTracking() {
+        synchronized (listeners) {
+            for (InvalidationListener listener : listeners) {
+                listener.close();
+            }
+            listeners.clear();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public void close() {
+        stopTracking();
+        invalidateAll();
+    }
+
+    @Override
+    public String toString() {
+        return "NearCache{" +
+                "size=" + size() +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", invalidations=" + getInvalidations() +
+                ", evictions=" + getEvictions() +
+                '}';
+    }
+
+    private static final class Entry {
+        private final String value;
+        private final long expiresAt;
+        // Only orders evictions, so a hit racing another hit may keep either time
+        private volatile long lastAccess;
+
+        private Entry(String value, long expiresAt, long lastAccess) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Holds two connections to one node: a subscriber on the invalidation channel, and
+     * a control connection that enabled tracking with REDIRECT to the subscriber
+     * (tracking lasts as long as the connection that enabled it). Redis does not tell
+     * the subscriber when the control connection drops, so the listener pings it
+     * every time the subscriber has waited a ping interval without a message.
+     */
+    private final class InvalidationListener extends Thread {
+        private final HostAndPort node;
+        private final String[] prefixes;
+        private final CountDownLatch subscribed = new CountDownLatch(1);
+        private volatile boolean closed;
+        private volatile Connection subscriber;
+        private volatile Connection control;
+
+        private InvalidationListener(HostAndPort node, String[] prefixes) {
+            super("near-cache-invalidation-" + node);
+            setDaemon(true);
+            this.node = node;
+            this.prefixes = prefixes;
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    subscribe();
+                    subscribed.countDown();
+                    while (!closed) {
+                        onMessage(subscriber.getObjectMultiBulkReply());
+                    }
+                } catch (JedisException | ClassCastException e) {
+                    // A ClassCastException means a reply that is not a pub/sub message
+                    if (closed) {
+                        break;
+                    }
+                    // Invalidations may have been lost while disconnected
+                    invalidateAll();
+                    closeConnections();
+                    try {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                    } catch (InterruptedException ie) {
+                        break;
+                    }
+                }
+            }
+            closeConnections();
+        }
+
+        private void subscribe() {
+            JedisClientConfig config = RedisConnection.buildClientConfig();
+            subscriber = new Connection(() -> connectSubscriber(config), config);
+            Long clientId = (Long) subscriber.executeCommand(new CommandArguments(Protocol.Command.CLIENT).add("ID"));
+            subscriber.setTimeoutInfinite();
+            subscriber.sendCommand(Protocol.Command.SUBSCRIBE, INVALIDATE_CHANNEL);
+            subscriber.getObjectMultiBulkReply();
+
+            control = new Connection(node, config);
+            control.executeCommand(new CommandArguments(Protocol.Command.CLIENT).add("SETNAME").add(CONTROL_CLIENT_NAME));
+            CommandArguments tracking = new CommandArguments(Protocol.Command.CLIENT)
+                    .add("TRACKING").add("ON").add("REDIRECT").add(clientId).add("BCAST");
+            for (String prefix : prefixes) {
+                tracking.add("PREFIX").add(prefix);
+            }
+            control.executeCommand(tracking);
+            // Anything cached before tracking started may already be stale
+            invalidateAll();
+        }
+
+        private Socket connectSubscriber(JedisClientConfig config) {
+            Socket socket = new PingingSocket();
+            try {
+                socket.setReuseAddress(true);
+                socket.setKeepAlive(true);
+                socket.setTcpNoDelay(true);
+                socket.setSoLinger(true, 0);
+                socket.connect(new InetSocketAddress(node.getHost(), node.getPort()),
+                        config.getConnectionTimeoutMillis());
+                socket.setSoTimeout(config.getSocketTimeoutMillis());
+                return socket;
+            } catch (IOException e) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // Already failing
+                }
+                throw new JedisConnectionException("Could not connect to " + node, e);
+            }
+        }
+
+        private void pingControl() {
+            Connection connection = control;
+            if (connection == null || !connection.ping()) {
+                throw new JedisConnectionException("Tracking connection to " + node + " was lost");
+            }
+        }
+
+        private void onMessage(List<Object> message) {
+            // ["message", "__redis__:invalidate", [key, ...]]; a null key list means FLUSHALL/FLUSHDB
+            if (message.size() < 3 || !"message".equals(SafeEncoder.encode((byte[]) message.get(0)))) {
+                return;
+            }
+            Object keys = message.get(2);
+            if (keys instanceof List) {
+                for (Object key : (List<?>) keys) {
+                    invalidate(SafeEncoder.encode((byte[]) key));
+                }
+            } else {
+                invalidateAll();
+            }
+        }
+
+        private void awaitSubscribed() {
+            try {
+                if (!subscribed.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Could not start client tracking on " + node);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while starting client tracking on " + node, e);
+            }
+        }
+
+        private void closeConnections() {
+            if (control != null) {
+                control.close();
+            }
+            if (subscriber != null) {
+                subscriber.close();
+            }
+        }
+
+        private void close() {
+            closed = true;
+            closeConnections();
+        }
+
+        /**
+         * Subscriber socket. Jedis waits on the subscriber with an infinite timeout; this
+         * socket waits a ping interval at a time instead and pings the control connection
+         * in between, below the reply parser, so a timeout never splits a message.
+         * Bounded timeouts (during the handshake) behave as usual.
+         */
+        private final class PingingSocket extends Socket {
+            private volatile boolean waitForever;
+            private InputStream in;
+
+            @Override
+            public synchronized void setSoTimeout(int timeout) throws SocketException {
+                waitForever = timeout == 0;
+                super.setSoTimeout(waitForever ? PING_INTERVAL_MILLIS : timeout);
+            }
+
+            @Override
+            public synchronized InputStream getInputStream() throws IOException {
+                if (in == null) {
+                    in = new FilterInputStream(super.getInputStream()) {
+                        @Override
+                        public int read() throws IOException {
+                            while (true) {
+                                try {
+                                    return super.read();
+                                } catch (SocketTimeoutException e) {
+                                    onIdle(e);
+                                }
+                            }
+                        }
+
+                        @Override
+                        public int read(byte[] buffer, int offset, int length) throws IOException {
+                            while (true) {
+                                try {
+                                    return super.read(buffer, offset, length);
+                                } catch (SocketTimeoutException e) {
+                                    onIdle(e);
+                                }
+                            }
+                        }
+                    };
+                }
+                return in;
+            }
+
+            private void onIdle(SocketTimeoutException e) throws SocketTimeoutException {
+                if (!waitForever) {
+                    throw e;
+                }
+                pingControl();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.CommandObjects;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Auto-pipelining executor.
+ * <p>
+ * Commands submitted by concurrent callers are queued and a single flusher thread
+ * sends everything that accumulated while the previous batch was in flight as one
+ * pipeline through the delegate. Under load many callers share one round trip;
+ * a lone caller pays no extra delay because the flusher never waits for a batch to fill.
+ */
+public class PipelinedRedisExecutor implements RedisExecutor {
+    private final RedisExecutor delegate;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingCommand<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    /**
+     * @param delegate     Executor used to send each batch
+     * @param maxBatchSize Maximum number of commands per pipeline
+     */
+    public PipelinedRedisExecutor(RedisExecutor delegate, int maxBatchSize) {
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.flusher = new Thread(this::flushLoop, "redis-pipeline-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public CommandObjects commands() {
+        return delegate.commands();
+    }
+
+    @Override
+    public <T> T execute(CommandObject<T> command) {
+        try {
+            return executeAsync(command).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> executeAsync(CommandObject<T> command) {
+        PendingCommand<T> pending = new PendingCommand<>(command);
+        if (!running) {
+            pending.future.completeExceptionally(new JedisException("Executor is closed"));
+            return pending.future;
+        }
+        queue.add(pending);
+        // close() may have drained the queue between the check above and the add; then
+        // nothing will send this command. Take it back and fail it, unless the drain got it.
+        if (!running && queue.remove(pending)) {
+            pending.future.completeExceptionally(new JedisException("Executor is closed"));
+        }
+        return pending.future;
+    }
+
+    @Override
+    public List<Object> executeBatch(List<CommandObject<?>> commands) {
+        return delegate.executeBatch(commands);
+    }
+
+    @Override
+    public Jedis getResource(String key) {
+        return delegate.getResource(key);
+    }
+
+    /**
+     * Stops the flusher after sending the commands already queued. Commands submitted
+     * while closing are either sent or failed, never left waiting.
+     * The delegate is left open.
+     */
+    @Override
+    public void close() {
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingCommand<?>> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        flush(remaining);
+    }
+
+    private void flushLoop() {
+        List<PendingCommand<?>> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                PendingCommand<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                flush(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                // close() interrupts to stop the loop; queued commands are flushed there
+            }
+        }
+    }
+
+    private void flush(List<PendingCommand<?>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<CommandObject<?>> commands = new ArrayList<>(batch.size());
+        for (PendingCommand<?> pending : batch) {
+            commands.add(pending.command);
+        }
+        try {
+            List<Object> results = delegate.executeBatch(commands);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).complete(results.get(i));
+            }
+        } catch (RuntimeException e) {
+            for (PendingCommand<?> pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class PendingCommand<T> {
+        private final CommandObject<T> command;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        PendingCommand(CommandObject<T> command) {
+            this.command = command;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object result) {
+            if (result instanceof RuntimeException) {
+                future.completeExceptionally((RuntimeException) result);
+            } else {
+                future.complete((T) result);
+            }
+        }
+    }
+}
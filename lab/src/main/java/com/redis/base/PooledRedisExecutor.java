@@ -0,0 +1,157 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.CommandObjects;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Executor for a standalone Redis server backed by a JedisPool.
+ * Each command borrows a connection from the pool for one round trip.
+ * <p>
+ * The pool does not validate connections on borrow; its evictor tests idle ones
+ * every 30 seconds. A connection that went stale in between (server timeout, network
+ * drop, CLIENT KILL) fails its first command with a {@link JedisConnectionException};
+ * Jedis discards the broken connection when it is closed.
+ * <p>
+ * Such a failure is retried once on another connection only when running the call
+ * twice cannot change data: when borrowing the connection failed, so nothing was
+ * sent, or when every command of the call only reads. A write whose connection broke
+ * may already have been applied (a read timeout after Redis ran an INCRBY), so its
+ * exception reaches the caller, which knows whether sending it again is safe.
+ */
+public class PooledRedisExecutor implements RedisExecutor {
+    // Commands that only read, so sending one again after a broken connection is safe
+    private static final Set<Command> READ_ONLY = Collections.unmodifiableSet(EnumSet.of(
+            Command.GET, Command.MGET, Command.STRLEN, Command.GETRANGE, Command.EXISTS, Command.TYPE,
+            Command.TTL, Command.PTTL, Command.SCAN, Command.HGET, Command.HMGET, Command.HGETALL,
+            Command.HEXISTS, Command.HLEN, Command.HKEYS, Command.HVALS, Command.HSCAN, Command.LLEN,
+            Command.LRANGE, Command.LINDEX, Command.SCARD, Command.SISMEMBER, Command.SMEMBERS,
+            Command.SSCAN, Command.ZCARD, Command.ZSCORE, Command.ZRANK, Command.ZREVRANK, Command.ZRANGE,
+            Command.ZREVRANGE, Command.ZRANGEBYSCORE, Command.ZREVRANGEBYSCORE, Command.ZSCAN,
+            Command.XLEN, Command.XRANGE, Command.XREVRANGE, Command.XINFO, Command.PFCOUNT,
+            Command.BITCOUNT, Command.GETBIT, Command.DBSIZE, Command.PING));
+
+    private final Supplier<JedisPool> poolSupplier;
+    private final CommandObjects commandObjects = new CommandObjects();
+
+    public PooledRedisExecutor(JedisPool jedisPool) {
+        this(() -> jedisPool);
+    }
+
+    /**
+     * Creates an executor that looks up the pool on every command, so it follows
+     * pool swaps such as {@code new PooledRedisExecutor(RedisConnection::getPool)}.
+     *
+     * @param poolSupplier Supplier of the current pool
+     */
+    public PooledRedisExecutor(Supplier<JedisPool> poolSupplier) {
+        this.poolSupplier = poolSupplier;
+    }
+
+    @Override
+    public CommandObjects commands() {
+        return commandObjects;
+    }
+
+    @Override
+    public <T> T execute(CommandObject<T> command) {
+        return send(command, true);
+    }
+
+    private <T> T send(CommandObject<T> command, boolean retry) {
+        Jedis jedis;
+        try {
+            jedis = poolSupplier.get().getResource();
+        } catch (JedisConnectionException e) {
+            if (!retry) {
+                throw e;
+            }
+            return send(command, false);
+        }
+        try (Jedis connection = jedis) {
+            return connection.getConnection().executeCommand(command);
+        } catch (JedisConnectionException e) {
+            if (!retry || !isReadOnly(command)) {
+                throw e;
+            }
+        }
+        return send(command, false);
+    }
+
+    @Override
+    public List<Object> executeBatch(List<CommandObject<?>> commands) {
+        return sendBatch(commands, true);
+    }
+
+    private List<Object> sendBatch(List<CommandObject<?>> commands, boolean retry) {
+        Jedis jedis;
+        try {
+            jedis = poolSupplier.get().getResource();
+        } catch (JedisConnectionException e) {
+            if (!retry) {
+                throw e;
+            }
+            return sendBatch(commands, false);
+        }
+        List<Response<?>> responses = new ArrayList<>(commands.size());
+        try (Jedis connection = jedis) {
+            Pipeline pipeline = connection.pipelined();
+            for (CommandObject<?> command : commands) {
+                responses.add(pipeline.appendCommand(command));
+            }
+            pipeline.sync();
+        } catch (JedisConnectionException e) {
+            if (!retry || !commands.stream().allMatch(PooledRedisExecutor::isReadOnly)) {
+                throw e;
+            }
+            return sendBatch(commands, false);
+        }
+        return collect(responses);
+    }
+
+    private static boolean isReadOnly(CommandObject<?> command) {
+        ProtocolCommand name = command.getArguments().getCommand();
+        return name instanceof Command && READ_ONLY.contains(name);
+    }
+
+    @Override
+    public Jedis getResource(String key) {
+        return poolSupplier.get().getResource();
+    }
+
+    /**
+     * The pool is shared, so it is left open. Use RedisConnection.closePool() on shutdown.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Reads pipelined responses in order, keeping command errors in place.
+     */
+    static List<Object> collect(List<Response<?>> responses) {
+        List<Object> results = new ArrayList<>(responses.size());
+        for (Response<?> response : responses) {
+            try {
+                results.add(response.get());
+            } catch (JedisDataException e) {
+                results.add(e);
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,270 @@
+package com.redis.base;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Redis connection settings, loaded from (later sources win):
+ * <ol>
+ *     <li>built-in defaults</li>
+ *     <li>{@code redis.properties} on the classpath</li>
+ *     <li>the file named by the {@code redis.config} system property</li>
+ *     <li>environment variables ({@code redis.pool.maxTotal} becomes {@code LAB_REDIS_POOL_MAX_TOTAL})</li>
+ *     <li>system properties ({@code -Dredis.pool.maxTotal=64})</li>
+ * </ol>
+ * Pool sizes that are not set are derived from the number of available processors
+ * and {@code redis.expectedConcurrency}, the number of threads expected to call
+ * Redis at the same time (e.g. the flash-sale purchase threads).
+ */
+public class RedisConfig {
+    public static final String HOST = "redis.host";
+    public static final String PORT = "redis.port";
+    public static final String TIMEOUT = "redis.timeout";
+    public static final String EXPECTED_CONCURRENCY = "redis.expectedConcurrency";
+    public static final String POOL_MAX_TOTAL = "redis.pool.maxTotal";
+    public static final String POOL_MAX_IDLE = "redis.pool.maxIdle";
+    public static final String POOL_MIN_IDLE = "redis.pool.minIdle";
+    public static final String CLUSTER_NODES = "redis.cluster.nodes";
+    public static final String CLUSTER_POOL_MAX_TOTAL = "redis.cluster.pool.maxTotal";
+    public static final String CLUSTER_POOL_MAX_IDLE = "redis.cluster.pool.maxIdle";
+    public static final String CLUSTER_POOL_MIN_IDLE = "redis.cluster.pool.minIdle";
+
+    /** System property naming an external properties file. */
+    public static final String CONFIG_FILE = "redis.config";
+
+    private static final String[] KEYS = {HOST, PORT, TIMEOUT, EXPECTED_CONCURRENCY,
+            POOL_MAX_TOTAL, POOL_MAX_IDLE, POOL_MIN_IDLE,
+            CLUSTER_NODES, CLUSTER_POOL_MAX_TOTAL, CLUSTER_POOL_MAX_IDLE, CLUSTER_POOL_MIN_IDLE};
+
+    // Prefix of the environment variables. Without it, redis.port would read REDIS_PORT, which
+    // Kubernetes sets to "tcp://host:port" for any service named "redis"
+    static final String ENV_PREFIX = "LAB_";
+
+    // Default Redis connection settings
+    private static final String DEFAULT_HOST = "localhost";
+    private static final int DEFAULT_PORT = 6379;
+    private static final int DEFAULT_TIMEOUT = 2000;
+    private static final int MIN_POOL_MAX_TOTAL = 10;
+    // Floors of the derived per-node cluster pool sizes, the previous fixed sizes
+    private static final int MIN_CLUSTER_POOL_MAX_TOTAL = 30;
+    private static final int MIN_CLUSTER_POOL_MAX_IDLE = 15;
+    private static final int MIN_CLUSTER_POOL_MIN_IDLE = 3;
+
+    // Default Redis cluster settings (see redis-cluster/docker-compose.yml)
+    private static final String DEFAULT_CLUSTER_NODES = "localhost:7001,localhost:7002,localhost:7003,"
+            + "localhost:7004,localhost:7005,localhost:7006";
+
+    private final String host;
+    private final int port;
+    private final int timeout;
+    private final int poolMaxTotal;
+    private final int poolMaxIdle;
+    private final int poolMinIdle;
+    private final String clusterNodes;
+    private final int clusterPoolMaxTotal;
+    private final int clusterPoolMaxIdle;
+    private final int clusterPoolMinIdle;
+
+    private RedisConfig(Properties properties, int processors) {
+        this.host = properties.getProperty(HOST, DEFAULT_HOST);
+        this.port = intValue(properties, PORT, DEFAULT_PORT);
+        this.timeout = intValue(properties, TIMEOUT, DEFAULT_TIMEOUT);
+        this.clusterNodes = properties.getProperty(CLUSTER_NODES, DEFAULT_CLUSTER_NODES);
+
+        // A blocking client holds one connection per concurrent caller, so size for the
+        // expected concurrency, and never below two connections per core or the old fixed size
+        int concurrency = intValue(properties, EXPECTED_CONCURRENCY, 2 * processors);
+        int derivedMaxTotal = Math.max(MIN_POOL_MAX_TOTAL, Math.max(concurrency, 2 * processors));
+
+        this.poolMaxTotal = intValue(properties, POOL_MAX_TOTAL, derivedMaxTotal);
+        // Keeping every connection idle avoids reconnect churn under steady load
+        this.poolMaxIdle = intValue(properties, POOL_MAX_IDLE, poolMaxTotal);
+        this.poolMinIdle = intValue(properties, POOL_MIN_IDLE, Math.min(processors, poolMaxIdle));
+
+        // Each cluster node has its own pool; any node may receive all callers at once.
+        // Derived sizes never go below the previous fixed cluster sizes
+        this.clusterPoolMaxTotal = intValue(properties, CLUSTER_POOL_MAX_TOTAL,
+                Math.max(MIN_CLUSTER_POOL_MAX_TOTAL, derivedMaxTotal));
+        this.clusterPoolMaxIdle = intValue(properties, CLUSTER_POOL_MAX_IDLE,
+                Math.min(clusterPoolMaxTotal, Math.max(MIN_CLUSTER_POOL_MAX_IDLE, clusterPoolMaxTotal / 2)));
+        this.clusterPoolMinIdle = intValue(properties, CLUSTER_POOL_MIN_IDLE,
+                Math.min(Math.max(MIN_CLUSTER_POOL_MIN_IDLE, processors / 2), clusterPoolMaxIdle));
+    }
+
+    /**
+     * Loads the configuration from all sources.
+     *
+     * @return Current configuration
+     */
+    public static RedisConfig load() {
+        Properties properties = new Properties();
+        try (InputStream in = RedisConfig.class.getClassLoader().getResourceAsStream("redis.properties")) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read redis.properties from the classpath", e);
+        }
+
+        Path file = getConfigFile();
+        if (file != null && Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read " + file, e);
+            }
+        }
+
+        return fromSources(properties, System.getenv(), System.getProperties());
+    }
+
+    /**
+     * Builds a configuration from explicit sources, mainly for tests.
+     *
+     * @param file       Properties read from files
+     * @param env        Environment variables
+     * @param overrides  System properties
+     * @return Configuration sized for this machine's processors
+     */
+    public static RedisConfig fromSources(Properties file, Map<String, String> env, Properties overrides) {
+        Properties merged = new Properties();
+        merged.putAll(file);
+        for (String key : KEYS) {
+            String value = env.get(toEnvName(key));
+            if (value != null) {
+                merged.setProperty(key, value);
+            }
+            if (overrides.getProperty(key) != null) {
+                merged.setProperty(key, overrides.getProperty(key));
+            }
+        }
+        return new RedisConfig(merged, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Gets the external configuration file, if the redis.config system property is set.
+     *
+     * @return Path of the external file, or null
+     */
+    public static Path getConfigFile() {
+        String file = System.getProperty(CONFIG_FILE);
+        return file == null ? null : Paths.get(file);
+    }
+
+    /**
+     * Converts a property key to its environment variable name.
+     * Example: "redis.pool.maxTotal" becomes "LAB_REDIS_POOL_MAX_TOTAL".
+     */
+    static String toEnvName(String key) {
+        return ENV_PREFIX + key.replaceAll("([a-z])([A-Z])", "$1_$2").replace('.', '_').toUpperCase();
+    }
+
+    private static int intValue(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for " + key + ": " + value, e);
+        }
+    }
+
+    /**
+     * Whether switching to the other configuration needs new connections,
+     * as opposed to only resizing the existing pools.
+     *
+     * @param other Configuration to compare with
+     * @return true if host, port or timeout differ
+     */
+    public boolean hasSameEndpoint(RedisConfig other) {
+        return host.equals(other.host) && port == other.port && timeout == other.timeout;
+    }
+
+    /**
+     * @param other Configuration to compare with
+     * @return true if the cluster seed nodes or timeout differ
+     */
+    public boolean hasSameClusterNodes(RedisConfig other) {
+        return clusterNodes.equals(other.clusterNodes) && timeout == other.timeout;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public int getPoolMaxTotal() {
+        return poolMaxTotal;
+    }
+
+    public int getPoolMaxIdle() {
+        return poolMaxIdle;
+    }
+
+    public int getPoolMinIdle() {
+        return poolMinIdle;
+    }
+
+    public String getClusterNodes() {
+        return clusterNodes;
+    }
+
+    public int getClusterPoolMaxTotal() {
+        return clusterPoolMaxTotal;
+    }
+
+    public int getClusterPoolMaxIdle() {
+        return clusterPoolMaxIdle;
+    }
+
+    public int getClusterPoolMinIdle() {
+        return clusterPoolMinIdle;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RedisConfig)) {
+            return false;
+        }
+        RedisConfig that = (RedisConfig) o;
+        return hasSameEndpoint(that) && hasSameClusterNodes(that)
+                && poolMaxTotal == that.poolMaxTotal
+                && poolMaxIdle == that.poolMaxIdle
+                && poolMinIdle == that.poolMinIdle
+                && clusterPoolMaxTotal == that.clusterPoolMaxTotal
+                && clusterPoolMaxIdle == that.clusterPoolMaxIdle
+                && clusterPoolMinIdle == that.clusterPoolMinIdle;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host, port, timeout, poolMaxTotal, poolMaxIdle, poolMinIdle,
+                clusterNodes, clusterPoolMaxTotal, clusterPoolMaxIdle, clusterPoolMinIdle);
+    }
+
+    @Override
+    public String toString() {
+        return "RedisConfig{host=" + host + ", port=" + port + ", timeout=" + timeout
+                + ", pool=" + poolMaxTotal + "/" + poolMaxIdle + "/" + poolMinIdle
+                + ", clusterNodes=" + clusterNodes
+                + ", clusterPool=" + clusterPoolMaxTotal + "/" + clusterPoolMaxIdle + "/" + clusterPoolMinIdle + "}";
+    }
+}
@@ -1,21 +1,49 @@
 package com.redis.base;
 
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import redis.clients.jedis.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Redis connection management utility.
  * Provides connection options for both standalone and cluster configurations.
+ * <p>
+ * Settings come from {@link RedisConfig} and can be changed at runtime with
+ * {@link #reconfigure(RedisConfig)}, {@link #reload()} or {@link #watchConfigFile(long)}.
+ * Pool size changes are applied to the live pools; endpoint changes swap in a new
+ * pool and close the old one once its borrowed connections have been returned. A
+ * pool handed to an exercise as its {@code jedisPool} field ({@link #exposePool()})
+ * is never closed by a swap, since the exercise keeps using it; it only lets its
+ * idle connections expire.
  */
 public class RedisConnection {
-    private static JedisPool jedisPool;
-    private static JedisCluster jedisCluster;
+    private static volatile JedisPool jedisPool;
+    private static volatile JedisCluster jedisCluster;
+    // One executor per cluster client, as each holds pipeline pools for every master
+    private static final Map<JedisCluster, ClusterRedisExecutor> clusterExecutors = new IdentityHashMap<>();
+    // Pools held by LabBase instances as their jedisPool field
+    private static final Set<JedisPool> exposedPools = Collections.newSetFromMap(new IdentityHashMap<>());
+    private static RedisConfig config = RedisConfig.load();
+    private static ScheduledExecutorService configWatcher;
 
-    // Default Redis connection settings
-    private static final String REDIS_HOST = "localhost";
-    private static final int REDIS_PORT = 6379;
-    private static final int REDIS_TIMEOUT = 2000;
+    private static final int CLUSTER_MAX_ATTEMPTS = 5;
+
+    // How long a replaced pool may keep serving in-flight requests before it is closed
+    private static final long RETIRE_GRACE_MILLIS = Duration.ofSeconds(1).toMillis();
+    private static final long RETIRE_TIMEOUT_MILLIS = Duration.ofSeconds(30).toMillis();
 
     /**
      * Gets the singleton JedisPool instance for standalone Redis.
@@ -23,31 +51,241 @@ public class RedisConnection {
      *
      * @return JedisPool instance for Redis connections
      */
-    public static synchronized JedisPool getPool() {
-        if (jedisPool == null) {
-            JedisPoolConfig poolConfig = buildPoolConfig();
-            jedisPool = new JedisPool(poolConfig, REDIS_HOST, REDIS_PORT, REDIS_TIMEOUT);
+    public static JedisPool getPool() {
+        JedisPool pool = jedisPool;
+        if (pool == null) {
+            synchronized (RedisConnection.class) {
+                if (jedisPool == null) {
+                    jedisPool = createPool(config);
+                }
+                pool = jedisPool;
+            }
         }
-        return jedisPool;
+        return pool;
+    }
+
+    /**
+     * Gets the current pool for a caller that keeps it, such as the {@code jedisPool}
+     * field of LabBase. A later endpoint swap leaves this pool open, so the caller can
+     * go on using it; see {@link #reconfigure(RedisConfig)}.
+     *
+     * @return Current JedisPool instance
+     */
+    static synchronized JedisPool exposePool() {
+        JedisPool pool = getPool();
+        exposedPools.add(pool);
+        return pool;
+    }
+
+    /**
+     * Gets the singleton JedisCluster instance for the Redis cluster.
+     * Creates the cluster client if it doesn't exist, discovering the slot
+     * layout from the configured seed nodes.
+     *
+     * @return JedisCluster instance routing each command to the master owning its slot
+     */
+    public static synchronized JedisCluster getCluster() {
+        if (jedisCluster == null) {
+            jedisCluster = createCluster(parseNodes(config.getClusterNodes()));
+        }
+        return jedisCluster;
+    }
+
+    /**
+     * Gets the executor shared by all exercises running on a cluster client, creating
+     * it on first use. It is closed with the client by {@link #reconfigure(RedisConfig)}
+     * and {@link #closeCluster()}; for a client from {@link #createCluster(Set)}, call
+     * {@link #closeClusterExecutor(JedisCluster)} before closing the client.
+     *
+     * @param cluster Cluster client
+     * @return Executor for the client
+     */
+    public static synchronized ClusterRedisExecutor getClusterExecutor(JedisCluster cluster) {
+        return clusterExecutors.computeIfAbsent(cluster, ClusterRedisExecutor::new);
+    }
+
+    /**
+     * Closes the shared executor of a cluster client, if one was created.
+     *
+     * @param cluster Cluster client
+     */
+    public static synchronized void closeClusterExecutor(JedisCluster cluster) {
+        ClusterRedisExecutor executor = clusterExecutors.remove(cluster);
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    /**
+     * Creates a new JedisCluster for the given seed nodes.
+     * Only one reachable seed is needed; the remaining masters are discovered
+     * through CLUSTER SLOTS. The caller owns the returned client and must close it.
+     *
+     * @param seedNodes Cluster nodes used to bootstrap slot discovery
+     * @return New JedisCluster instance using the cluster pool configuration
+     */
+    public static JedisCluster createCluster(Set<HostAndPort> seedNodes) {
+        return new JedisCluster(seedNodes, buildClientConfig(), CLUSTER_MAX_ATTEMPTS, buildClusterPoolConfig());
+    }
+
+    /**
+     * Gets the configuration currently in use.
+     *
+     * @return Current configuration
+     */
+    public static synchronized RedisConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Re-reads the configuration from all sources and applies it.
+     *
+     * @return The configuration now in use
+     */
+    public static RedisConfig reload() {
+        RedisConfig newConfig = RedisConfig.load();
+        reconfigure(newConfig);
+        return newConfig;
+    }
+
+    /**
+     * Applies a new configuration without dropping in-flight requests.
+     * <p>
+     * If only pool sizes change, the live pools are resized in place. If the endpoint
+     * changes, a new pool or cluster client replaces the current one; the old one keeps
+     * serving the requests already using it and is closed once they finish. A pool
+     * exposed to exercises is not closed; it only lets its idle connections expire.
+     *
+     * @param newConfig Configuration to apply
+     */
+    public static synchronized void reconfigure(RedisConfig newConfig) {
+        RedisConfig oldConfig = config;
+        config = newConfig;
+
+        if (jedisPool != null) {
+            if (oldConfig.hasSameEndpoint(newConfig)) {
+                resize(jedisPool, newConfig.getPoolMaxTotal(), newConfig.getPoolMaxIdle(), newConfig.getPoolMinIdle());
+            } else {
+                JedisPool oldPool = jedisPool;
+                jedisPool = createPool(newConfig);
+                retire(oldPool);
+            }
+        }
+
+        if (jedisCluster != null) {
+            if (oldConfig.hasSameClusterNodes(newConfig)) {
+                for (ConnectionPool nodePool : jedisCluster.getClusterNodes().values()) {
+                    resize(nodePool, newConfig.getClusterPoolMaxTotal(),
+                            newConfig.getClusterPoolMaxIdle(), newConfig.getClusterPoolMinIdle());
+                }
+            } else {
+                JedisCluster oldCluster = jedisCluster;
+                jedisCluster = createCluster(parseNodes(newConfig.getClusterNodes()));
+                retire(oldCluster);
+            }
+        }
+    }
+
+    /**
+     * Polls the file named by the redis.config system property and reloads
+     * the configuration whenever it changes.
+     *
+     * @param periodMillis Polling period in milliseconds
+     */
+    public static synchronized void watchConfigFile(long periodMillis) {
+        final Path file = RedisConfig.getConfigFile();
+        if (file == null) {
+            throw new IllegalStateException("Set the " + RedisConfig.CONFIG_FILE + " system property to watch a file");
+        }
+        stopWatchingConfigFile();
+        configWatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-config-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long[] lastModified = {lastModified(file)};
+        configWatcher.scheduleWithFixedDelay(() -> {
+            long modified = lastModified(file);
+            if (modified != lastModified[0]) {
+                lastModified[0] = modified;
+                try {
+                    reload();
+                } catch (RuntimeException e) {
+                    // Keep the current configuration if the new file is invalid
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the watcher started by {@link #watchConfigFile(long)}.
+     */
+    public static synchronized void stopWatchingConfigFile() {
+        if (configWatcher != null) {
+            configWatcher.shutdownNow();
+            configWatcher = null;
+        }
+    }
+
+    /**
+     * Parses a comma separated list of host:port pairs.
+     *
+     * @param nodes Nodes in the form "host1:port1,host2:port2"
+     * @return Ordered set of cluster nodes
+     */
+    static Set<HostAndPort> parseNodes(String nodes) {
+        Set<HostAndPort> result = new LinkedHashSet<>();
+        for (String node : nodes.split(",")) {
+            if (!node.trim().isEmpty()) {
+                result.add(HostAndPort.from(node.trim()));
+            }
+        }
+        return result;
+    }
+
+    private static JedisPool createPool(RedisConfig redisConfig) {
+        return new JedisPool(buildPoolConfig(redisConfig), redisConfig.getHost(), redisConfig.getPort(),
+                redisConfig.getTimeout());
+    }
+
+    /**
+     * Builds the client configuration shared by cluster connections.
+     *
+     * @return JedisClientConfig with the configured timeouts
+     */
+    static synchronized JedisClientConfig buildClientConfig() {
+        return DefaultJedisClientConfig.builder()
+                .connectionTimeoutMillis(config.getTimeout())
+                .socketTimeoutMillis(config.getTimeout())
+                .build();
+    }
+
+    /**
+     * Builds optimized pool configuration for standalone Redis connections
+     * using the current configuration.
+     *
+     * @return JedisPoolConfig with performance-tuned settings for standalone
+     */
+    static synchronized JedisPoolConfig buildPoolConfig() {
+        return buildPoolConfig(config);
     }
 
     /**
      * Builds optimized pool configuration for standalone Redis connections.
      *
+     * @param redisConfig Configuration providing the pool sizes
      * @return JedisPoolConfig with performance-tuned settings for standalone
      */
-    private static JedisPoolConfig buildPoolConfig() {
+    static JedisPoolConfig buildPoolConfig(RedisConfig redisConfig) {
         JedisPoolConfig poolConfig = new JedisPoolConfig();
 
         // Connection pool sizing for standalone
-        poolConfig.setMaxTotal(10);
-        poolConfig.setMaxIdle(5);
-        poolConfig.setMinIdle(1);
+        poolConfig.setMaxTotal(redisConfig.getPoolMaxTotal());
+        poolConfig.setMaxIdle(redisConfig.getPoolMaxIdle());
+        poolConfig.setMinIdle(redisConfig.getPoolMinIdle());
 
         // Connection validation
-        poolConfig.setTestOnBorrow(true);
-        poolConfig.setTestOnReturn(true);
-        poolConfig.setTestWhileIdle(true);
+        configureIdleValidation(poolConfig);
 
         return poolConfig;
     }
@@ -57,29 +295,135 @@ public class RedisConnection {
      *
      * @return JedisPoolConfig with cluster-specific settings
      */
-    private static ConnectionPoolConfig buildClusterPoolConfig() {
+    static synchronized ConnectionPoolConfig buildClusterPoolConfig() {
         ConnectionPoolConfig poolConfig = new ConnectionPoolConfig();
 
-        // Connection pool sizing for cluster (higher for multiple nodes)
-        poolConfig.setMaxTotal(30);  // Higher for cluster load across nodes
-        poolConfig.setMaxIdle(15);
-        poolConfig.setMinIdle(3);
+        // Connection pool sizing for cluster (one pool per node)
+        poolConfig.setMaxTotal(config.getClusterPoolMaxTotal());
+        poolConfig.setMaxIdle(config.getClusterPoolMaxIdle());
+        poolConfig.setMinIdle(config.getClusterPoolMinIdle());
 
         // Connection validation
-        poolConfig.setTestOnBorrow(true);
-        poolConfig.setTestOnReturn(true);
+        configureIdleValidation(poolConfig);
+
+        // Block when pool is exhausted
+        poolConfig.setBlockWhenExhausted(true);
+        poolConfig.setMaxWait(Duration.ofSeconds(5));
+
+        return poolConfig;
+    }
+
+    /**
+     * Validates connections in the background instead of on the hot path.
+     * <p>
+     * testOnBorrow/testOnReturn send a PING on every borrow and every return, so a
+     * single GET costs three round trips. Instead, the pool evictor PINGs idle
+     * connections every 30 seconds and destroys the ones that fail or have been idle
+     * for over a minute, so each command costs exactly one round trip. A connection
+     * that breaks while in use is still discarded by Jedis when it is closed. The
+     * schedule is fixed, not adaptive: a connection that goes stale between two runs
+     * fails its next command, which PooledRedisExecutor retries once if it only reads.
+     *
+     * @param poolConfig Pool configuration to update
+     */
+    private static void configureIdleValidation(GenericObjectPoolConfig<?> poolConfig) {
+        poolConfig.setTestOnBorrow(false);
+        poolConfig.setTestOnReturn(false);
         poolConfig.setTestWhileIdle(true);
 
         // Eviction policy for idle connections
-        poolConfig.setMinEvictableIdleTimeMillis(Duration.ofSeconds(60).toMillis());
-        poolConfig.setTimeBetweenEvictionRunsMillis(Duration.ofSeconds(30).toMillis());
+        poolConfig.setMinEvictableIdleTime(Duration.ofSeconds(60));
+        poolConfig.setTimeBetweenEvictionRuns(Duration.ofSeconds(30));
         poolConfig.setNumTestsPerEvictionRun(3);
+    }
 
-        // Block when pool is exhausted
-        poolConfig.setBlockWhenExhausted(true);
-        poolConfig.setMaxWaitMillis(Duration.ofSeconds(5).toMillis());
+    /**
+     * Resizes a live pool. Growing takes effect immediately; when shrinking, borrowed
+     * connections above the new maximum are destroyed as they are returned.
+     */
+    private static void resize(GenericObjectPool<?> pool, int maxTotal, int maxIdle, int minIdle) {
+        pool.setMaxTotal(maxTotal);
+        pool.setMaxIdle(maxIdle);
+        pool.setMinIdle(minIdle);
+    }
 
-        return poolConfig;
+    /**
+     * Closes a replaced pool once the requests still using it have returned their
+     * connections. The short grace period covers callers that fetched the pool just
+     * before the swap but have not borrowed from it yet.
+     */
+    private static void retire(final JedisPool oldPool) {
+        if (exposedPools.contains(oldPool)) {
+            // Still used by exercises; the evictor closes its connections once they idle
+            oldPool.setMinIdle(0);
+            return;
+        }
+        startRetirement(() -> {
+            long deadline = System.currentTimeMillis() + RETIRE_TIMEOUT_MILLIS;
+            while (oldPool.getNumActive() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            oldPool.close();
+        });
+    }
+
+    /**
+     * Closes a replaced cluster client after the grace period. JedisCluster does not
+     * expose per-request state, so in-flight commands get the full retirement timeout.
+     */
+    private static void retire(final JedisCluster oldCluster) {
+        startRetirement(() -> {
+            long deadline = System.currentTimeMillis() + RETIRE_TIMEOUT_MILLIS;
+            while (hasActiveConnections(oldCluster) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            closeClusterExecutor(oldCluster);
+            oldCluster.close();
+        });
+    }
+
+    private static boolean hasActiveConnections(JedisCluster cluster) {
+        for (ConnectionPool nodePool : cluster.getClusterNodes().values()) {
+            if (nodePool.getNumActive() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void startRetirement(final Retirement retirement) {
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(RETIRE_GRACE_MILLIS);
+                retirement.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "redis-pool-retirement");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private interface Retirement {
+        void run() throws InterruptedException;
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0L;
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Gets pool counters for the standalone pool, used to check validation
+     * and eviction behaviour.
+     *
+     * @return Snapshot of the pool counters
+     */
+    public static ConnectionMetrics getPoolMetrics() {
+        return ConnectionMetrics.of(getPool());
     }
 
     /**
@@ -91,6 +435,10 @@ public class RedisConnection {
             jedisPool.close();
             jedisPool = null;
         }
+        for (JedisPool pool : exposedPools) {
+            pool.close();
+        }
+        exposedPools.clear();
     }
 
     /**
@@ -99,6 +447,7 @@ public class RedisConnection {
      */
     public static synchronized void closeCluster() {
         if (jedisCluster != null) {
+            closeClusterExecutor(jedisCluster);
             try {
                 jedisCluster.close();
             } catch (Exception e) {
@@ -113,6 +462,7 @@ public class RedisConnection {
      * Call this when shutting down the application.
      */
     public static synchronized void closeAll() {
+        stopWatchingConfigFile();
         closePool();
         closeCluster();
     }
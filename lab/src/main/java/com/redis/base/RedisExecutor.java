@@ -0,0 +1,85 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.CommandObjects;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport used by the lab exercises to send commands to Redis.
+ * <p>
+ * Commands are built with {@link #commands()} and handed to the executor, so the
+ * same exercise code runs unchanged over a standalone pool, a cluster, an
+ * auto-pipelining batcher or an asynchronous worker pool.
+ * <p>
+ * Example:
+ * <pre>
+ *     String value = executor.execute(executor.commands().get(key));
+ * </pre>
+ */
+public interface RedisExecutor extends AutoCloseable {
+
+    /**
+     * Gets the command factory matching this transport.
+     * Cluster transports need slot-aware command arguments, so always build
+     * commands with the factory of the executor that runs them.
+     *
+     * @return Command factory for this executor
+     */
+    CommandObjects commands();
+
+    /**
+     * Executes a single command and waits for its reply.
+     *
+     * @param command Command built with {@link #commands()}
+     * @param <T>     Reply type
+     * @return The command reply
+     */
+    <T> T execute(CommandObject<T> command);
+
+    /**
+     * Executes a single command without blocking the caller.
+     * The default implementation runs the command synchronously.
+     *
+     * @param command Command built with {@link #commands()}
+     * @param <T>     Reply type
+     * @return Future completed with the command reply
+     */
+    default <T> CompletableFuture<T> executeAsync(CommandObject<T> command) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(execute(command));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Executes several commands in as few round trips as possible (one pipeline per node).
+     * Replies come back in the order of the commands. A command that fails does not
+     * fail the batch; its slot holds the {@link redis.clients.jedis.exceptions.JedisDataException}.
+     *
+     * @param commands Commands built with {@link #commands()}
+     * @return Replies in command order
+     */
+    List<Object> executeBatch(List<CommandObject<?>> commands);
+
+    /**
+     * Gets a dedicated connection for stateful commands (WATCH, MULTI/EXEC, blocking pops).
+     * In cluster mode the connection goes to the master owning the slot of the given key.
+     *
+     * @param key Key whose slot selects the node
+     * @return Jedis connection to close after use
+     */
+    Jedis getResource(String key);
+
+    /**
+     * Releases the resources owned by this executor.
+     * Executors wrapping a shared pool or cluster leave it open.
+     */
+    @Override
+    void close();
+}
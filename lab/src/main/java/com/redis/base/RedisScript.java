@@ -0,0 +1,86 @@
+package com.redis.base;
+
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Lua script run with EVALSHA, so only its SHA1 digest crosses the network.
+ * <p>
+ * The digest is computed locally. When the server does not know the script (it was
+ * never loaded, the server restarted or failed over, SCRIPT FLUSH ran, or in a
+ * cluster the key lives on a node that has not seen it yet) the reply is NOSCRIPT;
+ * the script is then loaded on the node owning the first key and called again.
+ * <p>
+ * Example:
+ * <pre>
+ *     RedisScript script = new RedisScript("return redis.call('incr', KEYS[1])");
+ *     Object value = script.execute(executor, Collections.singletonList(key), Collections.emptyList());
+ * </pre>
+ */
+public class RedisScript {
+    private final String script;
+    private final String sha;
+    private final LongAdder loads = new LongAdder();
+
+    public RedisScript(String script) {
+        this.script = script;
+        this.sha = sha1Hex(script);
+    }
+
+    public String getSha() {
+        return sha;
+    }
+
+    /**
+     * Runs the script, loading it first if the server replies NOSCRIPT.
+     *
+     * @param executor Executor to run the script on
+     * @param keys     Keys, at least one; in a cluster all keys must hash to the same slot
+     * @param args     Arguments
+     * @return The script reply
+     */
+    public Object execute(RedisExecutor executor, List<String> keys, List<String> args) {
+        try {
+            return executor.execute(executor.commands().evalsha(sha, keys, args));
+        } catch (JedisNoScriptException e) {
+            load(executor, keys.get(0));
+            return executor.execute(executor.commands().evalsha(sha, keys, args));
+        }
+    }
+
+    /**
+     * Loads the script on the node owning a key.
+     *
+     * @param executor  Executor to load the script on
+     * @param sampleKey Key routing the command in a cluster
+     */
+    public void load(RedisExecutor executor, String sampleKey) {
+        executor.execute(executor.commands().scriptLoad(script, sampleKey));
+        loads.increment();
+    }
+
+    /**
+     * @return Number of times the script was loaded
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    private static String sha1Hex(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
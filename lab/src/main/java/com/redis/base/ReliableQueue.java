@@ -0,0 +1,347 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.args.ListDirection;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.clients.jedis.util.JedisClusterHashTag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A list queue whose messages survive a crashed worker.
+ * <p>
+ * A plain pop removes the message from Redis before the worker has handled it. Here
+ * LMOVE (BLMOVE when waiting) moves the message atomically into a processing list of
+ * the worker ("{&lt;queue&gt;}:processing:&lt;worker&gt;"), and the worker removes it
+ * with LREM once handled. {@link #ackAndDequeue} acknowledges a message and takes the
+ * next one in a single round trip, so a busy worker pays no more round trips than with
+ * a plain pop.
+ * <p>
+ * Each dequeue or ack renews a lease key of the worker that expires after the
+ * visibility timeout, once a quarter of the timeout has passed since this instance
+ * last renewed it; in between, the round trip carries only the LREM and the LMOVE.
+ * {@link #extend} always renews it. The reaper ({@link #requeueExpired}, or {@link #start}
+ * in the background) moves the processing list of every worker whose lease expired
+ * back to the head of the queue, in its original order, with one Lua script per
+ * worker. A worker that outlives its lease may therefore see its message handled
+ * twice (its ack then returns false): processing is at least once. Workers that hold
+ * a message longer than the timeout should call {@link #extend}. A waiting dequeue
+ * renews the lease itself.
+ * <p>
+ * In a cluster, LMOVE and the reaper script need every key in one slot. The keys of
+ * the queue are therefore named after its slot: with the queue key as hash tag
+ * ("{queue:email}:processing:worker-1"), or, if the queue key has a hash tag already,
+ * with the queue key as prefix ("{queue}:email:processing:worker-1"). Producers keep
+ * the queue key they use.
+ * <p>
+ * Example:
+ * <pre>
+ *     ReliableQueue queue = new ReliableQueue(executor, "queue:email", ListDirection.RIGHT);
+ *     queue.start(1000);
+ *     String message = queue.dequeue("worker-1");
+ *     while (message != null) {
+ *         send(message);
+ *         message = queue.ackAndDequeue("worker-1", message);
+ *     }
+ * </pre>
+ */
+public class ReliableQueue implements AutoCloseable {
+    // Moves a processing list back to the head of the queue, unless the worker holds its lease
+    private static final RedisScript REQUEUE_SCRIPT = new RedisScript(
+            "if redis.call('exists', KEYS[3]) == 1 then return -1 end\n" +
+            "local moved = 0\n" +
+            "while redis.call('lmove', KEYS[2], KEYS[1], 'LEFT', ARGV[2]) do\n" +
+            "    moved = moved + 1\n" +
+            "end\n" +
+            "redis.call('srem', KEYS[4], ARGV[1])\n" +
+            "return moved");
+
+    private static final double MIN_WAIT_SECONDS = 0.001;
+
+    private final RedisExecutor executor;
+    private final String queueKey;
+    private final String keyPrefix;
+    private final ListDirection head;
+    private final ListDirection tail;
+
+    private long visibilityTimeoutMillis = 30_000;
+    // When this instance last renewed the lease of each worker, in System.nanoTime()
+    private final ConcurrentMap<String, Long> leaseRenewals = new ConcurrentHashMap<>();
+    private ScheduledExecutorService reaper;
+    private final LongAdder requeued = new LongAdder();
+
+    /**
+     * @param executor Executor holding the queue
+     * @param queueKey Queue list, filled by producers at the other end
+     * @param head     End of the list messages are taken from (RIGHT for LPUSH producers, LEFT for RPUSH)
+     * @throws IllegalArgumentException if no key in the slot of the queue key can be derived from it,
+     *                                  e.g. for a key with a stray "}"
+     */
+    public ReliableQueue(RedisExecutor executor, String queueKey, ListDirection head) {
+        this.executor = executor;
+        this.queueKey = queueKey;
+        this.keyPrefix = slotPrefix(queueKey);
+        this.head = head;
+        this.tail = head == ListDirection.LEFT ? ListDirection.RIGHT : ListDirection.LEFT;
+    }
+
+    /**
+     * @param visibilityTimeoutMillis Time without activity after which the messages of a worker are requeued (default 30000)
+     */
+    public void setVisibilityTimeoutMillis(long visibilityTimeoutMillis) {
+        if (visibilityTimeoutMillis < 1) {
+            throw new IllegalArgumentException("Visibility timeout must be positive: " + visibilityTimeoutMillis);
+        }
+        this.visibilityTimeoutMillis = visibilityTimeoutMillis;
+        // Leases taken with the old timeout may expire before the next renewal is due
+        leaseRenewals.clear();
+    }
+
+    public String getQueueKey() {
+        return queueKey;
+    }
+
+    public String getProcessingKey(String worker) {
+        return keyPrefix + ":processing:" + worker;
+    }
+
+    private String leaseKey(String worker) {
+        return keyPrefix + ":lease:" + worker;
+    }
+
+    private String workersKey() {
+        return keyPrefix + ":workers";
+    }
+
+    /**
+     * Gets a prefix whose keys hash to the slot of the queue key.
+     */
+    private static String slotPrefix(String queueKey) {
+        String prefix = JedisClusterHashTag.getHashTag(queueKey).equals(queueKey) ? "{" + queueKey + "}" : queueKey;
+        if (JedisClusterCRC16.getSlot(prefix + ":") != JedisClusterCRC16.getSlot(queueKey)) {
+            throw new IllegalArgumentException("Cannot derive keys in the slot of queue key " + queueKey);
+        }
+        return prefix;
+    }
+
+    /**
+     * Moves the next message into the processing list of the worker, without waiting.
+     *
+     * @param worker Worker name, stable across restarts of the worker
+     * @return The message, or null if the queue is empty
+     */
+    public String dequeue(String worker) {
+        List<CommandObject<?>> commands = new ArrayList<>();
+        addLease(worker, commands);
+        commands.add(executor.commands().lmove(queueKey, getProcessingKey(worker), head, ListDirection.LEFT));
+        List<Object> replies = send(worker, commands);
+        return (String) replies.get(replies.size() - 1);
+    }
+
+    /**
+     * Moves the next message into the processing list of the worker, waiting for one
+     * with BLMOVE on a dedicated connection if the queue is empty.
+     * <p>
+     * The wait is split into BLMOVEs of at most half the visibility timeout, and the
+     * lease is renewed between them. A message that arrives late in a long wait thus
+     * never lands in a processing list whose lease has expired, where the reaper would
+     * requeue it while the worker handles it.
+     *
+     * @param worker         Worker name
+     * @param timeoutSeconds Maximum wait, 0 to wait forever
+     * @return The message, or null if none arrived in time
+     */
+    public String dequeue(String worker, double timeoutSeconds) {
+        String message = dequeue(worker);
+        if (message != null) {
+            return message;
+        }
+        long deadline = System.nanoTime() + (long) (timeoutSeconds * 1e9);
+        try (Jedis jedis = executor.getResource(queueKey)) {
+            while (true) {
+                double wait = visibilityTimeoutMillis / 2000.0;
+                if (timeoutSeconds > 0) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        return null;
+                    }
+                    wait = Math.min(wait, left / 1e9);
+                }
+                // BLMOVE reads a timeout below 1ms as 0, which waits forever
+                message = jedis.blmove(queueKey, getProcessingKey(worker), head, ListDirection.LEFT,
+                        Math.max(MIN_WAIT_SECONDS, wait));
+                // Renewed after a message too, so its handler gets a full lease as with dequeue
+                extend(worker);
+                if (message != null) {
+                    return message;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a handled message from the processing list of the worker.
+     *
+     * @param worker  Worker name
+     * @param message Message returned by a dequeue
+     * @return False if the message was no longer there, e.g. requeued after the lease expired
+     */
+    public boolean ack(String worker, String message) {
+        List<CommandObject<?>> commands = new ArrayList<>();
+        commands.add(executor.commands().lrem(getProcessingKey(worker), 1, message));
+        addLease(worker, commands);
+        List<Object> replies = send(worker, commands);
+        return (Long) replies.get(0) > 0;
+    }
+
+    /**
+     * Acknowledges a handled message and moves the next one into the processing list,
+     * in one round trip.
+     *
+     * @param worker  Worker name
+     * @param message Message returned by a dequeue, or null to only dequeue
+     * @return The next message, or null if the queue is empty
+     */
+    public String ackAndDequeue(String worker, String message) {
+        List<CommandObject<?>> commands = new ArrayList<>();
+        if (message != null) {
+            commands.add(executor.commands().lrem(getProcessingKey(worker), 1, message));
+        }
+        addLease(worker, commands);
+        commands.add(executor.commands().lmove(queueKey, getProcessingKey(worker), head, ListDirection.LEFT));
+        List<Object> replies = send(worker, commands);
+        return (String) replies.get(replies.size() - 1);
+    }
+
+    /**
+     * Gives a message the worker could not handle back to the queue, behind the
+     * messages already waiting. It is pushed before it leaves the processing list,
+     * so a crash in between duplicates it instead of losing it.
+     *
+     * @param worker  Worker name
+     * @param message Message returned by a dequeue
+     */
+    public void release(String worker, String message) {
+        CommandObject<Long> push = tail == ListDirection.LEFT
+                ? executor.commands().lpush(queueKey, message)
+                : executor.commands().rpush(queueKey, message);
+        LabBase.throwFirstError(executor.executeBatch(Arrays.asList(
+                push,
+                executor.commands().lrem(getProcessingKey(worker), 1, message))));
+    }
+
+    /**
+     * Renews the lease of the worker, e.g. while handling a message takes long.
+     *
+     * @param worker Worker name
+     */
+    public void extend(String worker) {
+        leaseRenewals.remove(worker);
+        List<CommandObject<?>> commands = new ArrayList<>();
+        addLease(worker, commands);
+        send(worker, commands);
+    }
+
+    private void addLease(String worker, List<CommandObject<?>> commands) {
+        long now = System.nanoTime();
+        Long renewed = leaseRenewals.get(worker);
+        if (renewed != null && now - renewed < TimeUnit.MILLISECONDS.toNanos(visibilityTimeoutMillis) / 4) {
+            return;
+        }
+        leaseRenewals.put(worker, now);
+        commands.add(executor.commands().set(leaseKey(worker), "1", SetParams.setParams().px(visibilityTimeoutMillis)));
+        commands.add(executor.commands().sadd(workersKey(), worker));
+    }
+
+    /**
+     * Sends the commands of a worker in one round trip. On failure the lease may not
+     * have been renewed, so the next call renews it.
+     */
+    private List<Object> send(String worker, List<CommandObject<?>> commands) {
+        try {
+            List<Object> replies = executor.executeBatch(commands);
+            LabBase.throwFirstError(replies);
+            return replies;
+        } catch (RuntimeException e) {
+            leaseRenewals.remove(worker);
+            throw e;
+        }
+    }
+
+    /**
+     * Moves the messages of every worker whose lease expired back to the head of the queue.
+     *
+     * @return Number of messages requeued
+     */
+    public long requeueExpired() {
+        long moved = 0;
+        for (String worker : executor.execute(executor.commands().smembers(workersKey()))) {
+            Object reply = REQUEUE_SCRIPT.execute(executor,
+                    Arrays.asList(queueKey, getProcessingKey(worker), leaseKey(worker), workersKey()),
+                    Arrays.asList(worker, head.name()));
+            moved += Math.max(0, (Long) reply);
+        }
+        requeued.add(moved);
+        return moved;
+    }
+
+    /**
+     * Starts requeueing expired messages in the background.
+     *
+     * @param intervalMillis Time between runs, e.g. a fraction of the visibility timeout
+     */
+    public synchronized void start(long intervalMillis) {
+        if (reaper != null) {
+            return;
+        }
+        reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reliable-queue-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleWithFixedDelay(() -> {
+            try {
+                requeueExpired();
+            } catch (RuntimeException e) {
+                // Tried again on the next run
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Messages requeued by the reaper
+     */
+    public long getRequeued() {
+        return requeued.sum();
+    }
+
+    /**
+     * @return Messages in the processing list of a worker
+     */
+    public List<String> getProcessing(String worker) {
+        List<String> messages = executor.execute(executor.commands().lrange(getProcessingKey(worker), 0, -1));
+        return messages == null ? Collections.emptyList() : messages;
+    }
+
+    /**
+     * Stops the background reaper.
+     */
+    @Override
+    public synchronized void close() {
+        if (reaper != null) {
+            reaper.shutdownNow();
+            reaper = null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.redis.base;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent loads of the same key within one JVM.
+ * <p>
+ * The first caller for a key runs the loader; callers arriving while it runs wait
+ * for its result (or its exception) instead of running their own. Once the load
+ * completes the key is released, so the next caller loads again.
+ * <p>
+ * Example:
+ * <pre>
+ *     String value = loads.execute(key, () -> backend.fetch(key));
+ * </pre>
+ *
+ * @param <T> Type of the loaded values
+ */
+public class SingleFlight<T> {
+    private final ConcurrentMap<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Runs the loader for a key, or joins the load already running for it.
+     *
+     * @param key    Key identifying the load
+     * @param loader Loader to run if no load is in flight
+     * @return Value returned by the loader that ran
+     */
+    public T execute(String key, Supplier<T> loader) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+
+        loads.increment();
+        try {
+            T value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // Errors too, or the callers waiting on this load would wait forever
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private T await(CompletableFuture<T> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of loads currently running.
+     *
+     * @return Keys with a load in flight
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Gets the number of loaders that ran.
+     *
+     * @return Loader invocations
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /**
+     * Gets the number of callers that waited for another caller's load.
+     *
+     * @return Calls served by a load already in flight
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+}
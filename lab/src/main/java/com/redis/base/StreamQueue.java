@@ -0,0 +1,347 @@
+package com.redis.base;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.XAddParams;
+import redis.clients.jedis.params.XAutoClaimParams;
+import redis.clients.jedis.params.XReadGroupParams;
+import redis.clients.jedis.resps.StreamEntry;
+import redis.clients.jedis.resps.StreamGroupInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A work queue on a Redis stream read by a consumer group.
+ * <p>
+ * Unlike a list popped with RPOP, reading an entry does not remove it: XREADGROUP
+ * hands each entry to one consumer of the group and records it as pending for that
+ * consumer until it is acknowledged with XACK. An entry whose consumer crashed before
+ * the XACK stays pending, and once it has been idle for the min idle time any consumer
+ * takes it over with XAUTOCLAIM (Redis 6.2+) and processes it again. Processing is
+ * therefore at least once; handlers should be idempotent.
+ * <p>
+ * Acknowledged entries stay in the stream: XADD trims it to about the max length
+ * (MAXLEN ~, which only drops whole internal nodes and is much cheaper than an exact
+ * trim). Keep the max length well above the backlog you expect, as trimming also drops
+ * entries that were never read.
+ * <p>
+ * {@link #start} runs a group of consumer threads that read, handle and acknowledge
+ * entries, and reclaim the entries of dead consumers.
+ * <p>
+ * Example:
+ * <pre>
+ *     StreamQueue queue = new StreamQueue(executor, "stream:email", "senders");
+ *     queue.enqueue(Collections.singletonMap("to", "user@example.com"));
+ *     queue.start("sender", 4, entry -&gt; send(entry.getFields()));
+ * </pre>
+ */
+public class StreamQueue implements AutoCloseable {
+    private final RedisExecutor executor;
+    private final String streamKey;
+    private final String group;
+
+    private long maxLength = 100_000;
+    private long minIdleMillis = 30_000;
+    private int batchSize = 10;
+    private int blockMillis = 500;
+
+    private volatile boolean groupCreated;
+    private final List<Thread> consumers = new ArrayList<>();
+    private volatile boolean running;
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder reclaimed = new LongAdder();
+
+    /**
+     * Handles one entry. An entry is acknowledged when the handler returns; when it
+     * throws, the entry stays pending and is handled again after the min idle time.
+     */
+    public interface Handler {
+        void handle(StreamEntry entry) throws Exception;
+    }
+
+    /**
+     * @param executor  Executor holding the stream
+     * @param streamKey Stream key
+     * @param group     Consumer group, created with the stream if missing
+     */
+    public StreamQueue(RedisExecutor executor, String streamKey, String group) {
+        this.executor = executor;
+        this.streamKey = streamKey;
+        this.group = group;
+    }
+
+    /**
+     * @param maxLength Approximate number of entries the stream is trimmed to (default 100000)
+     */
+    public void setMaxLength(long maxLength) {
+        if (maxLength < 1) {
+            throw new IllegalArgumentException("Max length must be positive: " + maxLength);
+        }
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @param minIdleMillis Time a pending entry stays with its consumer before others may claim it (default 30000)
+     */
+    public void setMinIdleMillis(long minIdleMillis) {
+        if (minIdleMillis < 0) {
+            throw new IllegalArgumentException("Min idle time must not be negative: " + minIdleMillis);
+        }
+        this.minIdleMillis = minIdleMillis;
+    }
+
+    /**
+     * @param batchSize  Entries a consumer thread reads per call (default 10)
+     * @param blockMillis Time a consumer thread waits for new entries (default 500)
+     */
+    public void setConsumerBatch(int batchSize, int blockMillis) {
+        if (batchSize < 1 || blockMillis < 1) {
+            throw new IllegalArgumentException("Batch size and block time must be positive");
+        }
+        this.batchSize = batchSize;
+        this.blockMillis = blockMillis;
+    }
+
+    public String getStreamKey() {
+        return streamKey;
+    }
+
+    /**
+     * Creates the consumer group, and the stream if it does not exist yet. The group
+     * starts at the beginning of the stream, so entries added before it are delivered.
+     */
+    public void createGroup() {
+        if (groupCreated) {
+            return;
+        }
+        try {
+            executor.execute(executor.commands().xgroupCreate(streamKey, group, new StreamEntryID(), true));
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith("BUSYGROUP")) {
+                throw e;
+            }
+        }
+        groupCreated = true;
+    }
+
+    /**
+     * Adds an entry, trimming the stream to about the max length.
+     *
+     * @param fields Entry fields
+     * @return ID of the entry
+     */
+    public StreamEntryID enqueue(Map<String, String> fields) {
+        return executor.execute(executor.commands().xadd(streamKey,
+                XAddParams.xAddParams().maxLen(maxLength).approximateTrimming(), fields));
+    }
+
+    /**
+     * Reads entries never delivered to the group, without waiting.
+     *
+     * @param consumer Consumer name within the group
+     * @param count    Maximum entries
+     * @return Entries, now pending for the consumer
+     */
+    public List<StreamEntry> read(String consumer, int count) {
+        createGroup();
+        return entries(executor.execute(executor.commands().xreadGroup(group, consumer,
+                XReadGroupParams.xReadGroupParams().count(count),
+                Collections.singletonMap(streamKey, StreamEntryID.UNRECEIVED_ENTRY))));
+    }
+
+    /**
+     * Reads entries never delivered to the group, waiting for some to arrive.
+     * The wait holds a dedicated connection.
+     *
+     * @param consumer    Consumer name within the group
+     * @param count       Maximum entries
+     * @param blockMillis Maximum wait, positive
+     * @return Entries, now pending for the consumer; empty if none arrived in time
+     */
+    public List<StreamEntry> read(String consumer, int count, int blockMillis) {
+        createGroup();
+        try (Jedis jedis = executor.getResource(streamKey)) {
+            return entries(jedis.xreadGroup(group, consumer,
+                    XReadGroupParams.xReadGroupParams().count(count).block(blockMillis),
+                    Collections.singletonMap(streamKey, StreamEntryID.UNRECEIVED_ENTRY)));
+        }
+    }
+
+    private static List<StreamEntry> entries(List<Map.Entry<String, List<StreamEntry>>> reply) {
+        if (reply == null || reply.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(reply.get(0).getValue());
+    }
+
+    /**
+     * Takes over entries that have been pending with any consumer for at least the
+     * min idle time, e.g. because that consumer died.
+     *
+     * @param consumer Consumer taking the entries
+     * @param count    Maximum entries
+     * @return Entries, now pending for the consumer
+     */
+    public List<StreamEntry> reclaim(String consumer, int count) {
+        createGroup();
+        List<StreamEntry> claimed = new ArrayList<>();
+        StreamEntryID cursor = new StreamEntryID();
+        do {
+            Map.Entry<StreamEntryID, List<StreamEntry>> reply = executor.execute(executor.commands().xautoclaim(
+                    streamKey, group, consumer, minIdleMillis, cursor,
+                    XAutoClaimParams.xAutoClaimParams().count(count - claimed.size())));
+            for (StreamEntry entry : reply.getValue()) {
+                // Entries trimmed away while pending come back as null
+                if (entry != null) {
+                    claimed.add(entry);
+                }
+            }
+            cursor = reply.getKey();
+        } while (claimed.size() < count && !new StreamEntryID().equals(cursor));
+        reclaimed.add(claimed.size());
+        return claimed;
+    }
+
+    /**
+     * Acknowledges handled entries, removing them from the pending entries of the group.
+     *
+     * @param ids Entry IDs
+     * @return Number of entries acknowledged
+     */
+    public long ack(List<StreamEntryID> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return executor.execute(executor.commands().xack(streamKey, group, ids.toArray(new StreamEntryID[0])));
+    }
+
+    /**
+     * Starts consumer threads named consumerPrefix-0 .. consumerPrefix-(n-1). Each
+     * thread first takes over idle pending entries, then reads new ones, handles
+     * them and acknowledges the batch with one XACK.
+     *
+     * @param consumerPrefix Consumer name prefix; reuse it after a restart so the
+     *                       consumers find their own pending entries again
+     * @param count          Number of consumers
+     * @param handler        Entry handler
+     */
+    public synchronized void start(String consumerPrefix, int count, Handler handler) {
+        if (running) {
+            throw new IllegalStateException("Consumers are already running");
+        }
+        createGroup();
+        running = true;
+        for (int i = 0; i < count; i++) {
+            String consumer = consumerPrefix + "-" + i;
+            Thread thread = new Thread(() -> consume(consumer, handler), "stream-queue-" + consumer);
+            thread.setDaemon(true);
+            consumers.add(thread);
+            thread.start();
+        }
+    }
+
+    private void consume(String consumer, Handler handler) {
+        long nextReclaim = 0;
+        while (running) {
+            try {
+                List<StreamEntry> entries = new ArrayList<>();
+                if (System.currentTimeMillis() >= nextReclaim) {
+                    entries.addAll(reclaim(consumer, batchSize));
+                    nextReclaim = System.currentTimeMillis() + Math.max(minIdleMillis / 2, blockMillis);
+                }
+                if (entries.isEmpty()) {
+                    entries = read(consumer, batchSize, blockMillis);
+                }
+                ack(handle(entries, handler));
+            } catch (RuntimeException e) {
+                // Unacknowledged entries stay pending and are reclaimed later
+                failed.increment();
+                sleepQuietly(blockMillis);
+            }
+        }
+    }
+
+    /**
+     * Runs the handler on each entry.
+     *
+     * @return IDs of the entries handled without an exception
+     */
+    private List<StreamEntryID> handle(List<StreamEntry> entries, Handler handler) {
+        List<StreamEntryID> done = new ArrayList<>(entries.size());
+        for (StreamEntry entry : entries) {
+            try {
+                handler.handle(entry);
+                done.add(entry.getID());
+                processed.increment();
+            } catch (Exception e) {
+                failed.increment();
+            }
+        }
+        return done;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Entries handled and acknowledged by the consumer threads
+     */
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * @return Handler failures and failed reads of the consumer threads
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return Entries taken over from idle consumers
+     */
+    public long getReclaimed() {
+        return reclaimed.sum();
+    }
+
+    /**
+     * @return Entries delivered to the group and not acknowledged yet
+     */
+    public long getPendingCount() {
+        createGroup();
+        // XINFO GROUPS rather than the XPENDING summary, whose reply Jedis cannot parse when nothing is pending
+        for (StreamGroupInfo info : executor.execute(executor.commands().xinfoGroups(streamKey))) {
+            if (group.equals(info.getName())) {
+                return info.getPending();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stops the consumer threads; each finishes the batch it is handling.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        for (Thread thread : consumers) {
+            try {
+                thread.join(blockMillis * 4L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        consumers.clear();
+    }
+}
@@ -0,0 +1,51 @@
+package com.redis.base;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+/**
+ * Codec for text values: UTF-8, compressed above a size threshold.
+ * Values stored as plain strings before the codec was used decode as UTF-8 text.
+ * <p>
+ * Example:
+ * <pre>
+ *     StringCodec codec = new StringCodec(512);
+ *     executor.execute(executor.commands().set(SafeEncoder.encode(key), codec.encode(profile)));
+ * </pre>
+ */
+public class StringCodec extends ValueCodec<String> {
+
+    /**
+     * Creates a codec that never compresses.
+     */
+    public StringCodec() {
+        this(NO_COMPRESSION);
+    }
+
+    /**
+     * @param compressionThreshold Minimum UTF-8 size in bytes to compress, or {@link #NO_COMPRESSION}
+     */
+    public StringCodec(int compressionThreshold) {
+        super(compressionThreshold, Deflater.BEST_SPEED);
+    }
+
+    @Override
+    protected byte format() {
+        return STRING_FORMAT;
+    }
+
+    @Override
+    protected byte[] serialize(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected String deserialize(byte[] body) {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected String decodeLegacy(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
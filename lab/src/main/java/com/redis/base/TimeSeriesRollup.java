@@ -0,0 +1,411 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandObject;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters kept per minute, hour and day (UTC), for time series over long ranges.
+ * <p>
+ * Each resolution is stored as small hashes, one field per bucket:
+ * <pre>
+ *   &lt;keyPrefix&gt;rollup:&lt;series&gt;:m:&lt;yyyy-MM-ddTHH&gt;   minute of hour -&gt; count (2 days)
+ *   &lt;keyPrefix&gt;rollup:&lt;series&gt;:h:&lt;yyyy-MM-dd&gt;      hour of day    -&gt; count (35 days)
+ *   &lt;keyPrefix&gt;rollup:&lt;series&gt;:d:&lt;yyyy-MM&gt;         day of month   -&gt; count (2 years)
+ * </pre>
+ * Events only increment their minute bucket. A compactor folds completed hours into
+ * hour buckets and completed days into day buckets, writing each bucket as the sum of
+ * the finer ones (HSET, so compacting twice gives the same result). Queries read the
+ * coarse buckets and compute the latest periods (the current and previous hour or
+ * day), which may not be compacted yet, from the finer ones. A range of weeks at day
+ * resolution costs a handful of hashes, all read in one pipeline.
+ * <p>
+ * Series recorded in the last days are listed in a sorted set, so the compactor
+ * knows what to fold. A compactor stopped for more than a few hours catches up when
+ * it starts, as far back as the minute buckets go.
+ * <p>
+ * Example:
+ * <pre>
+ *     TimeSeriesRollup rollup = new TimeSeriesRollup(executor, "analytics:");
+ *     rollup.start(60_000);
+ *     rollup.record("pageviews:home", System.currentTimeMillis(), 1);
+ *     Map&lt;Long, Long&gt; daily = rollup.query("pageviews:home", TimeSeriesRollup.Resolution.DAY, from, to);
+ * </pre>
+ */
+public class TimeSeriesRollup implements AutoCloseable {
+    private static final long MINUTE = 60_000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final long MINUTE_RETENTION_SECONDS = 2 * 24 * 60 * 60;
+    private static final long HOUR_RETENTION_SECONDS = 35 * 24 * 60 * 60;
+    private static final long DAY_RETENTION_SECONDS = 2 * 366 * 24 * 60 * 60;
+    // Completed periods folded again on every run, to pick up late events
+    private static final int RECOMPACTED_HOURS = 3;
+    private static final int RECOMPACTED_DAYS = 3;
+    private static final int MAX_POINTS = 100_000;
+
+    private static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM").withZone(ZoneOffset.UTC);
+
+    private final RedisExecutor executor;
+    private final String keyPrefix;
+    private final String seriesKey;
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder failedCompactions = new LongAdder();
+    private boolean caughtUp;
+    private ScheduledExecutorService compactor;
+
+    /**
+     * Bucket sizes of a query.
+     */
+    public enum Resolution {
+        MINUTE(TimeSeriesRollup.MINUTE),
+        HOUR(TimeSeriesRollup.HOUR),
+        DAY(TimeSeriesRollup.DAY);
+
+        private final long millis;
+
+        Resolution(long millis) {
+            this.millis = millis;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    /**
+     * @param executor  Executor holding the buckets
+     * @param keyPrefix Prefix of the bucket keys and the series list
+     */
+    public TimeSeriesRollup(RedisExecutor executor, String keyPrefix) {
+        this.executor = executor;
+        this.keyPrefix = keyPrefix;
+        this.seriesKey = keyPrefix + "rollup:series";
+    }
+
+    /**
+     * @param clock Current time in epoch milliseconds (default System.currentTimeMillis)
+     */
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Builds the commands recording an event, to send with other commands of the same event.
+     *
+     * @param series          Series name, e.g. "pageviews:home"
+     * @param timestampMillis Time of the event
+     * @param delta           Increment
+     * @return HINCRBY and EXPIRE of the minute bucket, and ZADD listing the series
+     */
+    public List<CommandObject<?>> recordCommands(String series, long timestampMillis, long delta) {
+        String minuteKey = minuteKey(series, floor(timestampMillis, HOUR));
+        return Arrays.asList(
+                executor.commands().hincrBy(minuteKey, String.valueOf(timestampMillis % HOUR / MINUTE), delta),
+                executor.commands().expire(minuteKey, MINUTE_RETENTION_SECONDS),
+                executor.commands().zadd(seriesKey, clock.getAsLong(), series));
+    }
+
+    /**
+     * Records an event in one round trip.
+     *
+     * @param series          Series name
+     * @param timestampMillis Time of the event
+     * @param delta           Increment
+     */
+    public void record(String series, long timestampMillis, long delta) {
+        LabBase.throwFirstError(executor.executeBatch(recordCommands(series, timestampMillis, delta)));
+    }
+
+    /**
+     * Reads a time series in one pipeline.
+     *
+     * @param series     Series name
+     * @param resolution Bucket size
+     * @param fromMillis Start of the range, rounded down to a bucket
+     * @param toMillis   End of the range (inclusive), rounded down to a bucket
+     * @return Count per bucket start (epoch milliseconds), in time order, 0 for empty buckets
+     */
+    public Map<Long, Long> query(String series, Resolution resolution, long fromMillis, long toMillis) {
+        long from = floor(fromMillis, resolution.millis);
+        long to = floor(toMillis, resolution.millis);
+        if (to < from) {
+            throw new IllegalArgumentException("Range ends before it starts");
+        }
+        if ((to - from) / resolution.millis >= MAX_POINTS) {
+            throw new IllegalArgumentException("Range has more than " + MAX_POINTS + " buckets, use a coarser resolution");
+        }
+        long now = clock.getAsLong();
+        Reads reads = new Reads(series, now);
+        for (long bucket = from; bucket <= to; bucket += resolution.millis) {
+            reads.plan(resolution, bucket);
+        }
+        reads.fetch();
+
+        Map<Long, Long> points = new LinkedHashMap<>();
+        for (long bucket = from; bucket <= to; bucket += resolution.millis) {
+            points.put(bucket, reads.value(resolution, bucket));
+        }
+        return points;
+    }
+
+    /**
+     * Folds the completed hours and days of every series recorded recently.
+     *
+     * @return Number of series compacted
+     */
+    public synchronized int compact() {
+        long now = clock.getAsLong();
+        // Series silent for longer than the minute retention have nothing left to fold
+        executor.execute(executor.commands().zremrangeByScore(seriesKey, Double.NEGATIVE_INFINITY,
+                now - MINUTE_RETENTION_SECONDS * 1000 - DAY));
+        List<String> series = executor.execute(executor.commands().zrange(seriesKey, 0, -1));
+        int hours = caughtUp ? RECOMPACTED_HOURS : (int) (MINUTE_RETENTION_SECONDS * 1000 / HOUR);
+        int days = caughtUp ? RECOMPACTED_DAYS : (int) (HOUR_RETENTION_SECONDS * 1000 / DAY);
+        for (String name : series) {
+            compact(name, now, hours, days);
+        }
+        caughtUp = true;
+        compactions.increment();
+        return series.size();
+    }
+
+    /**
+     * Folds the last completed hours of a series into hour buckets, then the last
+     * completed days into day buckets. Buckets whose finer buckets have expired are
+     * left as they are.
+     */
+    private void compact(String series, long now, int hours, int days) {
+        long currentHour = floor(now, HOUR);
+        Reads minuteReads = new Reads(series, now);
+        for (long hour = currentHour - hours * HOUR; hour < currentHour; hour += HOUR) {
+            minuteReads.plan(Resolution.HOUR, hour, true);
+        }
+        minuteReads.fetch();
+        List<CommandObject<?>> writes = new ArrayList<>();
+        for (long hour = currentHour - hours * HOUR; hour < currentHour; hour += HOUR) {
+            Map<String, String> minutes = minuteReads.hash(minuteKey(series, hour));
+            if (!minutes.isEmpty()) {
+                addWrite(writes, hourKey(series, floor(hour, DAY)), hour % DAY / HOUR, sum(minutes), HOUR_RETENTION_SECONDS);
+            }
+        }
+        LabBase.throwFirstError(writes.isEmpty() ? new ArrayList<>() : executor.executeBatch(writes));
+
+        long today = floor(now, DAY);
+        Reads hourReads = new Reads(series, now);
+        for (long day = today - days * DAY; day < today; day += DAY) {
+            hourReads.plan(Resolution.DAY, day, true);
+        }
+        hourReads.fetch();
+        writes.clear();
+        for (long day = today - days * DAY; day < today; day += DAY) {
+            Map<String, String> hourBuckets = hourReads.hash(hourKey(series, day));
+            if (!hourBuckets.isEmpty()) {
+                addWrite(writes, dayKey(series, day), dayOfMonth(day), sum(hourBuckets), DAY_RETENTION_SECONDS);
+            }
+        }
+        LabBase.throwFirstError(writes.isEmpty() ? new ArrayList<>() : executor.executeBatch(writes));
+    }
+
+    private void addWrite(List<CommandObject<?>> writes, String key, long field, long value, long ttlSeconds) {
+        writes.add(executor.commands().hset(key, String.valueOf(field), String.valueOf(value)));
+        writes.add(executor.commands().expire(key, ttlSeconds));
+    }
+
+    /**
+     * Starts compacting every interval. The first run catches up on periods folded
+     * by nobody while no compactor was running.
+     *
+     * @param intervalMillis Delay between runs, at most an hour
+     */
+    public synchronized void start(long intervalMillis) {
+        if (intervalMillis < 1 || intervalMillis > HOUR) {
+            throw new IllegalArgumentException("Interval must be between 1 ms and an hour: " + intervalMillis);
+        }
+        if (compactor != null) {
+            return;
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rollup-compactor-" + keyPrefix);
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            // Folding is repeated on the next run
+            failedCompactions.increment();
+        }
+    }
+
+    public long getCompactions() {
+        return compactions.sum();
+    }
+
+    public long getFailedCompactions() {
+        return failedCompactions.sum();
+    }
+
+    /**
+     * Stops the compactor.
+     */
+    @Override
+    public synchronized void close() {
+        if (compactor != null) {
+            compactor.shutdown();
+            compactor = null;
+        }
+    }
+
+    /**
+     * Hashes needed to answer a query, fetched together with HGETALL.
+     */
+    private final class Reads {
+        private final String series;
+        private final long currentHour;
+        private final long today;
+        private final Set<String> keys = new LinkedHashSet<>();
+        private final Map<String, Map<String, String>> hashes = new HashMap<>();
+
+        private Reads(String series, long now) {
+            this.series = series;
+            this.currentHour = floor(now, HOUR);
+            this.today = floor(now, DAY);
+        }
+
+        private void plan(Resolution resolution, long bucket) {
+            plan(resolution, bucket, false);
+        }
+
+        /**
+         * @param fromFiner Read the bucket from the finer resolution, as compaction does
+         */
+        private void plan(Resolution resolution, long bucket, boolean fromFiner) {
+            if (resolution == Resolution.MINUTE) {
+                keys.add(minuteKey(series, floor(bucket, HOUR)));
+            } else if (resolution == Resolution.HOUR) {
+                if (fromFiner || isRecentHour(bucket)) {
+                    keys.add(minuteKey(series, bucket));
+                } else {
+                    keys.add(hourKey(series, floor(bucket, DAY)));
+                }
+            } else if (fromFiner || isRecentDay(bucket)) {
+                keys.add(hourKey(series, bucket));
+                for (long hour = bucket; hour < bucket + DAY; hour += HOUR) {
+                    if (isRecentHour(hour)) {
+                        keys.add(minuteKey(series, hour));
+                    }
+                }
+            } else {
+                keys.add(dayKey(series, bucket));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void fetch() {
+            List<String> pending = new ArrayList<>(keys);
+            keys.clear();
+            List<CommandObject<?>> commands = new ArrayList<>(pending.size());
+            for (String key : pending) {
+                commands.add(executor.commands().hgetAll(key));
+            }
+            if (commands.isEmpty()) {
+                return;
+            }
+            List<Object> replies = executor.executeBatch(commands);
+            LabBase.throwFirstError(replies);
+            for (int i = 0; i < pending.size(); i++) {
+                hashes.put(pending.get(i), (Map<String, String>) replies.get(i));
+            }
+        }
+
+        private Map<String, String> hash(String key) {
+            Map<String, String> hash = hashes.get(key);
+            return hash == null ? new HashMap<>() : hash;
+        }
+
+        private long value(Resolution resolution, long bucket) {
+            if (resolution == Resolution.MINUTE) {
+                return count(hash(minuteKey(series, floor(bucket, HOUR))), bucket % HOUR / MINUTE);
+            }
+            if (resolution == Resolution.HOUR) {
+                return isRecentHour(bucket)
+                        ? sum(hash(minuteKey(series, bucket)))
+                        : count(hash(hourKey(series, floor(bucket, DAY))), bucket % DAY / HOUR);
+            }
+            if (!isRecentDay(bucket)) {
+                return count(hash(dayKey(series, bucket)), dayOfMonth(bucket));
+            }
+            long total = 0;
+            for (long hour = bucket; hour < bucket + DAY; hour += HOUR) {
+                total += value(Resolution.HOUR, hour);
+            }
+            return total;
+        }
+
+        private boolean isRecentHour(long hour) {
+            return hour >= currentHour - HOUR;
+        }
+
+        private boolean isRecentDay(long day) {
+            return day >= today - DAY;
+        }
+    }
+
+    private static long count(Map<String, String> hash, long field) {
+        String value = hash.get(String.valueOf(field));
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    private static long sum(Map<String, String> hash) {
+        long total = 0;
+        for (String value : hash.values()) {
+            total += Long.parseLong(value);
+        }
+        return total;
+    }
+
+    private static long floor(long millis, long unit) {
+        return Math.floorDiv(millis, unit) * unit;
+    }
+
+    private static int dayOfMonth(long day) {
+        return LocalDate.ofEpochDay(day / DAY).getDayOfMonth();
+    }
+
+    private String minuteKey(String series, long hour) {
+        return keyPrefix + "rollup:" + series + ":m:" + HOUR_FORMAT.format(Instant.ofEpochMilli(hour));
+    }
+
+    private String hourKey(String series, long day) {
+        return keyPrefix + "rollup:" + series + ":h:" + DAY_FORMAT.format(Instant.ofEpochMilli(day));
+    }
+
+    private String dayKey(String series, long day) {
+        return keyPrefix + "rollup:" + series + ":d:" + MONTH_FORMAT.format(Instant.ofEpochMilli(day));
+    }
+}
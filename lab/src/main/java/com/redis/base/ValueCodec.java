@@ -0,0 +1,145 @@
+package com.redis.base;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Converts values to the bytes stored in Redis (used with the {@code byte[]} Jedis API).
+ * <p>
+ * Every encoded value starts with a header byte naming its format and whether the
+ * body is Deflate-compressed. Bodies of at least {@code compressionThreshold} bytes are
+ * compressed when that makes them smaller. Decoding follows the header, not the
+ * codec settings, so the threshold or compression can change without flushing the
+ * values already stored.
+ * <p>
+ * Header values stay below 0x20, so values written before the codec was introduced
+ * (plain text with no header) are recognised and handed to {@link #decodeLegacy}.
+ *
+ * @param <T> Type of the values
+ */
+public abstract class ValueCodec<T> {
+    /** Compression threshold that disables compression. */
+    public static final int NO_COMPRESSION = Integer.MAX_VALUE;
+
+    static final byte STRING_FORMAT = 0x01;
+    static final byte MAP_FORMAT = 0x02;
+    static final byte DEFLATED = 0x10;
+
+    private final int compressionThreshold;
+    private final int compressionLevel;
+
+    /**
+     * @param compressionThreshold Minimum body size in bytes to compress, or {@link #NO_COMPRESSION}
+     * @param compressionLevel     Deflate level, e.g. {@link Deflater#BEST_SPEED}
+     */
+    protected ValueCodec(int compressionThreshold, int compressionLevel) {
+        if (compressionThreshold < 0) {
+            throw new IllegalArgumentException("Compression threshold must not be negative: " + compressionThreshold);
+        }
+        this.compressionThreshold = compressionThreshold;
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Gets the format id written in the header byte.
+     *
+     * @return Format id, below 0x10
+     */
+    protected abstract byte format();
+
+    protected abstract byte[] serialize(T value);
+
+    protected abstract T deserialize(byte[] body);
+
+    /**
+     * Decodes a value stored without a header, before this codec was used.
+     *
+     * @param bytes Stored bytes
+     * @return The value
+     */
+    protected abstract T decodeLegacy(byte[] bytes);
+
+    /**
+     * Encodes a value, with its header byte.
+     *
+     * @param value Value to encode
+     * @return Bytes to store
+     */
+    public byte[] encode(T value) {
+        byte[] body = serialize(value);
+        byte header = format();
+        if (body.length >= compressionThreshold) {
+            byte[] compressed = deflate(body, compressionLevel);
+            if (compressed.length < body.length) {
+                body = compressed;
+                header |= DEFLATED;
+            }
+        }
+
+        byte[] bytes = new byte[body.length + 1];
+        bytes[0] = header;
+        System.arraycopy(body, 0, bytes, 1, body.length);
+        return bytes;
+    }
+
+    /**
+     * Decodes stored bytes, whichever compression setting wrote them.
+     *
+     * @param bytes Stored bytes, or null
+     * @return The value, or null for null bytes
+     */
+    public T decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length == 0 || (bytes[0] & ~DEFLATED) != format()) {
+            return decodeLegacy(bytes);
+        }
+
+        byte[] body = Arrays.copyOfRange(bytes, 1, bytes.length);
+        if ((bytes[0] & DEFLATED) != 0) {
+            body = inflate(body);
+        }
+        return deserialize(body);
+    }
+
+    private static byte[] deflate(byte[] data, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed value");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
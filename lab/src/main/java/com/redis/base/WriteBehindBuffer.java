@@ -0,0 +1,220 @@
+package com.redis.base;
+
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind buffer for backend writes, kept in Redis.
+ * <p>
+ * Writers acknowledge once Redis holds the new value and mark the entry dirty in
+ * a Redis hash (field = entry id, value = latest data). Repeated writes to the same
+ * entry overwrite the same field, so the backend only sees the latest value. A
+ * background flusher scans the hash in batches and hands each batch to the backend
+ * writer in one call, so the backend can store it with one bulk write. It then
+ * removes the fields that were not overwritten in the meantime.
+ * <p>
+ * The dirty hash lives in Redis, so entries survive a restart of the process: the
+ * flusher drains what is left as soon as it starts. A crash between a backend write
+ * and the removal means the entry is written again (at least once delivery).
+ * <p>
+ * Example:
+ * <pre>
+ *     WriteBehindBuffer buffer = new WriteBehindBuffer(executor, "user:dirty", backend::writeAll);
+ *     buffer.start();
+ *     executor.executeBatch(Arrays.asList(cacheWrite, buffer.markDirty(userId, data)));
+ * </pre>
+ */
+public class WriteBehindBuffer implements AutoCloseable {
+    // Removes each field only if it still holds the flushed value
+    private static final String REMOVE_FLUSHED_SCRIPT =
+            "local removed = 0\n" +
+            "for i = 1, #ARGV, 2 do\n" +
+            "  if redis.call('hget', KEYS[1], ARGV[i]) == ARGV[i + 1] then\n" +
+            "    removed = removed + redis.call('hdel', KEYS[1], ARGV[i])\n" +
+            "  end\n" +
+            "end\n" +
+            "return removed";
+
+    private final RedisExecutor executor;
+    private final String dirtyKey;
+    private final Consumer<Map<String, String>> backendWriter;
+
+    private long flushIntervalMillis = 1000;
+    private int batchSize = 100;
+    private long maxLagMillis = 30_000;
+
+    private final LongAdder flushedEntries = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private volatile long lastFlushMillis;
+    private ScheduledExecutorService flusher;
+
+    /**
+     * @param executor      Executor holding the dirty hash
+     * @param dirtyKey      Key of the dirty hash
+     * @param backendWriter Writes one batch of entries (id to data) to the backend
+     */
+    public WriteBehindBuffer(RedisExecutor executor, String dirtyKey, Consumer<Map<String, String>> backendWriter) {
+        this.executor = executor;
+        this.dirtyKey = dirtyKey;
+        this.backendWriter = backendWriter;
+    }
+
+    /**
+     * @param flushIntervalMillis Delay between flushes (default 1000)
+     */
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        if (flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("Flush interval must be positive: " + flushIntervalMillis);
+        }
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * @param batchSize Dirty entries read, written to the backend and removed per batch (default 100)
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Keep the max lag well above the flush interval, or every write will be seen as lagging.
+     *
+     * @param maxLagMillis Time without a complete flush after which {@link #isLagging()} reports true (default 30000)
+     */
+    public void setMaxLagMillis(long maxLagMillis) {
+        if (maxLagMillis < 1) {
+            throw new IllegalArgumentException("Max lag must be positive: " + maxLagMillis);
+        }
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    /**
+     * Starts the background flusher. The first flush runs right away, draining
+     * entries left by a previous run.
+     */
+    public synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        lastFlushMillis = System.currentTimeMillis();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flusher-" + dirtyKey);
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, 0, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Builds the command marking an entry dirty. Send it in the same batch as the
+     * cache write so both cost one round trip.
+     *
+     * @param id   Entry id
+     * @param data Latest data of the entry
+     * @return HSET command for the dirty hash
+     */
+    public CommandObject<Long> markDirty(String id, String data) {
+        return executor.commands().hset(dirtyKey, id, data);
+    }
+
+    /**
+     * Writes every dirty entry to the backend, one batch at a time.
+     * Stops at the first backend failure; the failed batch and the remaining entries stay dirty.
+     *
+     * @return Number of entries written to the backend
+     */
+    public synchronized int flush() {
+        int flushed = 0;
+        ScanParams params = new ScanParams().count(batchSize);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<Map.Entry<String, String>> page = executor.execute(executor.commands().hscan(dirtyKey, cursor, params));
+            Map<String, String> batch = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : page.getResult()) {
+                batch.put(entry.getKey(), entry.getValue());
+            }
+            if (!batch.isEmpty()) {
+                backendWriter.accept(Collections.unmodifiableMap(batch));
+                List<String> written = new ArrayList<>(batch.size() * 2);
+                for (Map.Entry<String, String> entry : batch.entrySet()) {
+                    written.add(entry.getKey());
+                    written.add(entry.getValue());
+                }
+                executor.execute(executor.commands().eval(REMOVE_FLUSHED_SCRIPT,
+                        Collections.singletonList(dirtyKey), written));
+                flushed += written.size() / 2;
+                flushedEntries.add(written.size() / 2);
+            }
+            cursor = page.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        lastFlushMillis = System.currentTimeMillis();
+        return flushed;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Entries stay dirty and are retried on the next run
+            failedFlushes.increment();
+        }
+    }
+
+    /**
+     * Whether the last complete flush is older than the max lag, e.g. because the
+     * backend is down. Writers can fall back to writing through while lagging.
+     *
+     * @return true if the buffer is lagging behind
+     */
+    public boolean isLagging() {
+        return System.currentTimeMillis() - lastFlushMillis > maxLagMillis;
+    }
+
+    /**
+     * Gets the number of entries waiting to be flushed.
+     *
+     * @return Dirty entries in Redis
+     */
+    public long getPending() {
+        return executor.execute(executor.commands().hlen(dirtyKey));
+    }
+
+    public long getFlushedEntries() {
+        return flushedEntries.sum();
+    }
+
+    public long getFailedFlushes() {
+        return failedFlushes.sum();
+    }
+
+    /**
+     * Stops the flusher and drains the remaining entries.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (flusher == null) {
+                return;
+            }
+            // Cancels the next run; a flush in progress finishes before ours starts
+            flusher.shutdown();
+            flusher = null;
+        }
+        flush();
+    }
+}
@@ -1,9 +1,17 @@
 package com.redis.training;
 
 import com.redis.base.LabBase;
+import com.redis.base.RedisExecutor;
+import redis.clients.jedis.CommandObject;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Exercise 1: Redis String Operations
  *
@@ -19,11 +27,22 @@ import redis.clients.jedis.JedisPool;
  * - Handle numeric operations on strings
  */
 public class L01_StringExercise extends LabBase {
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
 
     public L01_StringExercise(JedisPool jedisPool) {
         super(jedisPool);
     }
 
+    public L01_StringExercise(JedisCluster jedisCluster) {
+        super(jedisCluster);
+    }
+
+    public L01_StringExercise(RedisExecutor executor) {
+        super(executor);
+    }
+
     public L01_StringExercise() {
         super();
     }
@@ -41,6 +60,7 @@ public class L01_StringExercise extends LabBase {
         // >>> START CODING CHALLENGE <<<
         // TODO: Implement using jedis.set()
         // Hint: Use try-with-resources to get a Jedis connection from jedisPool
+        // (or, transport independent: executor.execute(commands().set(key, value)))
         // >>> END CODING CHALLENGE <<<
     }
 
@@ -149,4 +169,119 @@ public class L01_StringExercise extends LabBase {
         // TODO: Implement using jedis.setex()
         // >>> END CODING CHALLENGE <<<
     }
+
+    /*
+     * Batch Operations (reference implementation)
+     *
+     * The methods below load or read many keys with one round trip per chunk
+     * instead of one per key, using MSET/MGET where a multi-key command exists
+     * and a pipeline otherwise. In cluster mode keys are grouped by hash slot,
+     * since multi-key commands only accept keys of one slot.
+     */
+
+    /**
+     * Sets the number of keys sent per MSET/MGET or pipelined chunk.
+     *
+     * @param batchSize Keys per chunk (default 100)
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets many keys using MSET, one command per chunk.
+     *
+     * @param values Key/value pairs to store
+     */
+    public void setStrings(Map<String, String> values) {
+        List<String> keys = new ArrayList<>(values.keySet());
+        List<CommandObject<?>> commands = new ArrayList<>();
+        for (List<Integer> chunk : partitionKeys(keys, batchSize)) {
+            String[] keysValues = new String[chunk.size() * 2];
+            for (int i = 0; i < chunk.size(); i++) {
+                String key = keys.get(chunk.get(i));
+                keysValues[2 * i] = key;
+                keysValues[2 * i + 1] = values.get(key);
+            }
+            commands.add(commands().mset(keysValues));
+        }
+        throwFirstError(executor.executeBatch(commands));
+    }
+
+    /**
+     * Gets many keys using MGET, one command per chunk.
+     *
+     * @param keys Keys to read
+     * @return Values in the order of {@code keys}, null for missing keys
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getStrings(List<String> keys) {
+        List<List<Integer>> chunks = partitionKeys(keys, batchSize);
+        List<CommandObject<?>> commands = new ArrayList<>(chunks.size());
+        for (List<Integer> chunk : chunks) {
+            String[] chunkKeys = new String[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                chunkKeys[i] = keys.get(chunk.get(i));
+            }
+            commands.add(commands().mget(chunkKeys));
+        }
+
+        List<Object> replies = executor.executeBatch(commands);
+        throwFirstError(replies);
+        String[] values = new String[keys.size()];
+        for (int c = 0; c < chunks.size(); c++) {
+            List<String> chunkValues = (List<String>) replies.get(c);
+            List<Integer> chunk = chunks.get(c);
+            for (int i = 0; i < chunk.size(); i++) {
+                values[chunk.get(i)] = chunkValues.get(i);
+            }
+        }
+        return Arrays.asList(values);
+    }
+
+    /**
+     * Increments many counters. INCR takes a single key, so the commands are
+     * pipelined in chunks instead.
+     *
+     * @param keys Counters to increment
+     * @return Values after the increment, in the order of {@code keys}
+     */
+    public List<Long> incrementCounters(List<String> keys) {
+        List<Long> values = new ArrayList<>(keys.size());
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            List<CommandObject<?>> commands = new ArrayList<>();
+            for (String key : keys.subList(from, Math.min(keys.size(), from + batchSize))) {
+                commands.add(commands().incr(key));
+            }
+            List<Object> replies = executor.executeBatch(commands);
+            throwFirstError(replies);
+            for (Object reply : replies) {
+                values.add((Long) reply);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Sets many keys with the same expiration, pipelining one SETEX per key.
+     *
+     * @param values  Key/value pairs to store
+     * @param seconds Expiration time in seconds
+     */
+    public void setStringsWithExpiration(Map<String, String> values, int seconds) {
+        List<CommandObject<?>> commands = new ArrayList<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            commands.add(commands().setex(entry.getKey(), seconds, entry.getValue()));
+            if (commands.size() == batchSize) {
+                throwFirstError(executor.executeBatch(commands));
+                commands.clear();
+            }
+        }
+        if (!commands.isEmpty()) {
+            throwFirstError(executor.executeBatch(commands));
+        }
+    }
 }
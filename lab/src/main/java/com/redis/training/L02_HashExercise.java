@@ -1,10 +1,20 @@
 package com.redis.training;
 
 
+import com.redis.base.HashMapper;
+import com.redis.base.HashScanIterator;
 import com.redis.base.LabBase;
+import com.redis.base.RedisExecutor;
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.stream.Stream;
 
 /**
  * Exercise 2: Redis Hash Operations
@@ -22,11 +32,23 @@ import java.util.HashMap;
  * - Perform atomic operations on hash fields
  */
 public class L02_HashExercise extends LabBase {
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private final HashMapper<UserProfile> userProfileMapper = new HashMapper<>(UserProfile.class, executor);
 
     public L02_HashExercise(JedisPool jedisPool) {
         super(jedisPool);
     }
 
+    public L02_HashExercise(JedisCluster jedisCluster) {
+        super(jedisCluster);
+    }
+
+    public L02_HashExercise(RedisExecutor executor) {
+        super(executor);
+    }
+
     public L02_HashExercise() {
         super();
     }
@@ -167,4 +189,165 @@ public class L02_HashExercise extends LabBase {
         return new java.util.ArrayList<>();
         // >>> END CODING CHALLENGE <<<
     }
+
+    /*
+     * Object Mapping (reference implementation)
+     *
+     * The user profile of exercise 2.1 as a typed object. Loading reads only the
+     * fields asked for (HMGET) and saving writes only the fields that changed (HSET),
+     * instead of moving the whole hash with HGETALL and a full HSET.
+     */
+
+    /**
+     * User profile stored as a hash with the fields of exercise 2.1.
+     */
+    public static class UserProfile {
+        public String firstname;
+        public String lastname;
+        public String email;
+        public String department;
+        public int yearjoined;
+    }
+
+    /**
+     * Loads a user profile, reading only the given fields.
+     * Use {@code getUserProfileMapper().loadMore(...)} to read more fields later.
+     *
+     * @param key    Redis key name for the user profile
+     * @param fields Fields to load, or none for all of them
+     * @return The profile, or null if none of the fields exist
+     */
+    public HashMapper.Tracked<UserProfile> loadUserProfile(String key, String... fields) {
+        return userProfileMapper.load(key, fields);
+    }
+
+    /**
+     * Saves the fields of a profile that changed since it was loaded or last saved.
+     *
+     * @param profile Profile returned by {@link #loadUserProfile} or {@code getUserProfileMapper().track(...)}
+     * @return Number of fields written
+     */
+    public int saveUserProfile(HashMapper.Tracked<UserProfile> profile) {
+        return userProfileMapper.save(profile);
+    }
+
+    public HashMapper<UserProfile> getUserProfileMapper() {
+        return userProfileMapper;
+    }
+
+    /*
+     * Streaming Reads (reference implementation)
+     *
+     * getUserProfile loads the whole hash with HGETALL. For hashes with millions of
+     * fields that means one huge reply and a long pause for every other client, so
+     * these methods walk the hash with HSCAN instead, one page per call.
+     */
+
+    /**
+     * Iterates over the fields of a hash, fetching a page with HSCAN whenever the
+     * previous one has been consumed.
+     *
+     * @param key   Redis key name
+     * @param count Fields examined per HSCAN call
+     * @return Lazy iterator over field/value entries
+     */
+    public Iterator<Map.Entry<String, String>> scanUserProfile(String key, int count) {
+        return new HashScanIterator(executor, key, count);
+    }
+
+    /**
+     * Streams the fields of a hash lazily with HSCAN.
+     *
+     * @param key   Redis key name
+     * @param count Fields examined per HSCAN call
+     * @return Lazy stream of field/value entries
+     */
+    public Stream<Map.Entry<String, String>> streamUserProfile(String key, int count) {
+        return HashScanIterator.stream(executor, key, count);
+    }
+
+    /*
+     * Bulk Reads (reference implementation)
+     *
+     * getUserProfile and getUserFields read one hash per round trip. The methods
+     * below read many profiles at once, pipelining one HGETALL or HMGET per key in
+     * chunks. In cluster mode each chunk is split per node and the nodes are
+     * queried in parallel.
+     */
+
+    /**
+     * @param batchSize Keys per pipeline (default 100)
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Gets many user profiles using pipelined HGETALL.
+     *
+     * @param keys Redis key names of the profiles
+     * @return Profiles by key, in the order of {@code keys}; missing profiles are left out
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Map<String, String>> getUserProfiles(List<String> keys) {
+        Map<String, Map<String, String>> profiles = new LinkedHashMap<>();
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            List<String> chunk = keys.subList(from, Math.min(keys.size(), from + batchSize));
+            List<CommandObject<?>> commands = new ArrayList<>(chunk.size());
+            for (String key : chunk) {
+                commands.add(commands().hgetAll(key));
+            }
+            List<Object> replies = executor.executeBatch(commands);
+            throwFirstError(replies);
+            for (int i = 0; i < chunk.size(); i++) {
+                Map<String, String> profile = (Map<String, String>) replies.get(i);
+                if (!profile.isEmpty()) {
+                    profiles.put(chunk.get(i), profile);
+                }
+            }
+        }
+        return profiles;
+    }
+
+    /**
+     * Gets the same fields of many user profiles using pipelined HMGET, so only the
+     * projected fields cross the network.
+     *
+     * @param keys   Redis key names of the profiles
+     * @param fields Fields to read
+     * @return Field values by key, in the order of {@code keys}; missing fields are left
+     *         out, and so are profiles with none of the fields
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Map<String, String>> getUserFields(List<String> keys, String... fields) {
+        if (fields.length == 0) {
+            throw new IllegalArgumentException("At least one field is required");
+        }
+        Map<String, Map<String, String>> profiles = new LinkedHashMap<>();
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            List<String> chunk = keys.subList(from, Math.min(keys.size(), from + batchSize));
+            List<CommandObject<?>> commands = new ArrayList<>(chunk.size());
+            for (String key : chunk) {
+                commands.add(commands().hmget(key, fields));
+            }
+            List<Object> replies = executor.executeBatch(commands);
+            throwFirstError(replies);
+            for (int i = 0; i < chunk.size(); i++) {
+                List<String> values = (List<String>) replies.get(i);
+                Map<String, String> profile = new LinkedHashMap<>();
+                for (int f = 0; f < fields.length; f++) {
+                    if (values.get(f) != null) {
+                        profile.put(fields[f], values.get(f));
+                    }
+                }
+                if (!profile.isEmpty()) {
+                    profiles.put(chunk.get(i), profile);
+                }
+            }
+        }
+        return profiles;
+    }
 }
@@ -1,7 +1,11 @@
 package com.redis.training;
 
 import com.redis.base.LabBase;
+import com.redis.base.RedisExecutor;
+import com.redis.base.ReliableQueue;
+import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.args.ListDirection;
 import java.util.List;
 
 /**
@@ -20,11 +24,20 @@ import java.util.List;
  * - Work with list trimming and length operations
  */
 public class L03_ListExercise extends LabBase {
+    private long visibilityTimeoutMillis = 30_000;
 
     public L03_ListExercise(JedisPool jedisPool) {
         super(jedisPool);
     }
 
+    public L03_ListExercise(JedisCluster jedisCluster) {
+        super(jedisCluster);
+    }
+
+    public L03_ListExercise(RedisExecutor executor) {
+        super(executor);
+    }
+
     public L03_ListExercise() {
         super();
     }
@@ -183,4 +196,63 @@ public class L03_ListExercise extends LabBase {
 
         // >>> END CODING CHALLENGE <<<
     }
+
+    /*
+     * Reliable Dequeue (reference implementation)
+     *
+     * dequeue and blockingDequeue remove the item before the caller has used it, so an
+     * item is lost if the caller crashes. These methods move it into a processing list
+     * of the worker instead (LMOVE, or BLMOVE when waiting) and remove it on
+     * acknowledge; see ReliableQueue for the lease, the reaper and the key names
+     * that keep a queue in one cluster slot.
+     */
+
+    /**
+     * @param visibilityTimeoutMillis Time without activity after which a worker's items are requeued (default 30000)
+     */
+    public void setVisibilityTimeoutMillis(long visibilityTimeoutMillis) {
+        this.visibilityTimeoutMillis = visibilityTimeoutMillis;
+    }
+
+    /**
+     * Moves the item at the head of the queue into the processing list of a worker.
+     *
+     * @param queueKey Redis key for the queue
+     * @param worker   Worker name, stable across restarts of the worker
+     * @param timeout  Maximum time to wait in seconds if the queue is empty (0 = do not wait)
+     * @return The item, or null if the queue stayed empty
+     */
+    public String reliableDequeue(String queueKey, String worker, int timeout) {
+        ReliableQueue queue = reliableQueue(queueKey);
+        return timeout > 0 ? queue.dequeue(worker, timeout) : queue.dequeue(worker);
+    }
+
+    /**
+     * Removes a handled item from the processing list of a worker.
+     *
+     * @param queueKey Redis key for the queue
+     * @param worker   Worker name
+     * @param item     Item returned by reliableDequeue
+     * @return False if the item was no longer there, e.g. requeued by the reaper
+     */
+    public boolean acknowledge(String queueKey, String worker, String item) {
+        return reliableQueue(queueKey).ack(worker, item);
+    }
+
+    /**
+     * Puts the items of workers that stopped renewing their lease back at the head of the queue.
+     *
+     * @param queueKey Redis key for the queue
+     * @return Number of items requeued
+     */
+    public long requeueExpired(String queueKey) {
+        return reliableQueue(queueKey).requeueExpired();
+    }
+
+    private ReliableQueue reliableQueue(String queueKey) {
+        // enqueue pushes on the right, so the oldest item is on the left
+        ReliableQueue queue = new ReliableQueue(executor, queueKey, ListDirection.LEFT);
+        queue.setVisibilityTimeoutMillis(visibilityTimeoutMillis);
+        return queue;
+    }
 }
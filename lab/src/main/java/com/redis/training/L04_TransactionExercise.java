@@ -1,7 +1,9 @@
 package com.redis.training;
 
 import com.redis.base.LabBase;
+import com.redis.base.RedisExecutor;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.Transaction;
@@ -30,6 +32,14 @@ public class L04_TransactionExercise extends LabBase {
         super(jedisPool);
     }
 
+    public L04_TransactionExercise(JedisCluster jedisCluster) {
+        super(jedisCluster);
+    }
+
+    public L04_TransactionExercise(RedisExecutor executor) {
+        super(executor);
+    }
+
     public L04_TransactionExercise() {
         super();
     }
@@ -1,10 +1,38 @@
 package com.redis.training;
 
+import com.redis.base.CacheWarmer;
 import com.redis.base.FakeService;
 import com.redis.base.LabBase;
+import com.redis.base.NearCache;
+import com.redis.base.RedisConnection;
+import com.redis.base.RedisExecutor;
+import com.redis.base.SingleFlight;
+import com.redis.base.StringCodec;
+import com.redis.base.ValueCodec;
+import com.redis.base.WriteBehindBuffer;
 
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Exercise 5: Redis Cache Operations
@@ -22,13 +50,43 @@ import redis.clients.jedis.JedisPool;
  * - Use appropriate TTL strategies for different data types
  */
 public class L05_CacheExercise extends LabBase {
+    private static final int USER_DATA_TTL_SECONDS = 300;
+    private static final int WARM_UP_TTL_SECONDS = 600;
+    private static final int COMPRESSION_THRESHOLD_BYTES = 512;
+    private static final long LOCK_POLL_MILLIS = 20;
+    private static final int REFRESH_THREADS = 2;
+    // Deletes the lock only if it still holds our token, so an expired lock taken over by another loader is kept
+    private static final String RELEASE_LOCK_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
     private final FakeService fakeService;
+    private final SingleFlight<String> userDataLoads = new SingleFlight<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private volatile NearCache nearCache;
+    private volatile long loadLockMillis;
+    private volatile RefreshMode refreshMode = RefreshMode.XFETCH;
+    private volatile double xFetchBeta = 1.0;
+    private volatile int staleSeconds = 60;
+    private volatile ExecutorService refreshPool;
+    private CacheWarmer cacheWarmer;
+    private volatile WriteBehindBuffer writeBehind;
+    private volatile ValueCodec<String> userDataCodec = new StringCodec(COMPRESSION_THRESHOLD_BYTES);
 
     public L05_CacheExercise(JedisPool jedisPool, FakeService fakeService) {
         super(jedisPool);
         this.fakeService = fakeService;
     }
 
+    public L05_CacheExercise(JedisCluster jedisCluster, FakeService fakeService) {
+        super(jedisCluster);
+        this.fakeService = fakeService;
+    }
+
+    public L05_CacheExercise(RedisExecutor executor, FakeService fakeService) {
+        super(executor);
+        this.fakeService = fakeService;
+    }
+
     public L05_CacheExercise(FakeService fakeService) {
         super();
         this.fakeService = fakeService;
@@ -94,4 +152,494 @@ public class L05_CacheExercise extends LabBase {
          return 0;
         // >>> END CODING CHALLENGE <<<
     }
+
+    /*
+     * Near Cache (reference implementation)
+     *
+     * Hot user profiles are served from an in-process cache in front of Redis.
+     * Redis client tracking reports every change to the cached keys, so entries
+     * are dropped as soon as another client updates them; the near cache TTL is
+     * capped at the Redis TTL as a bound on staleness if a report is lost.
+     */
+
+    /**
+     * Enables the near cache for {@link #getUserDataNearCached} and starts tracking
+     * keys under the given prefix. In cluster mode every cluster node is tracked;
+     * otherwise the server from RedisConnection's configuration.
+     *
+     * @param prefixKey  Prefix of the user keys to cache
+     * @param maxEntries Maximum number of profiles kept in memory
+     * @param ttlMillis  Near cache TTL, capped at the 300 second Redis TTL
+     */
+    public void enableNearCache(String prefixKey, int maxEntries, long ttlMillis) {
+        List<HostAndPort> nodes = new ArrayList<>();
+        if (jedisCluster != null) {
+            for (String node : jedisCluster.getClusterNodes().keySet()) {
+                nodes.add(HostAndPort.from(node));
+            }
+        } else {
+            nodes.add(new HostAndPort(RedisConnection.getConfig().getHost(), RedisConnection.getConfig().getPort()));
+        }
+        enableNearCache(prefixKey, maxEntries, ttlMillis, nodes);
+    }
+
+    /**
+     * Enables the near cache, tracking keys under the given prefix on the given nodes.
+     *
+     * @param prefixKey  Prefix of the user keys to cache
+     * @param maxEntries Maximum number of profiles kept in memory
+     * @param ttlMillis  Near cache TTL, capped at the 300 second Redis TTL
+     * @param nodes      Redis nodes holding the user keys
+     */
+    public void enableNearCache(String prefixKey, int maxEntries, long ttlMillis, Collection<HostAndPort> nodes) {
+        disableNearCache();
+        NearCache cache = new NearCache(maxEntries, Math.min(ttlMillis, USER_DATA_TTL_SECONDS * 1000L));
+        cache.startTracking(nodes, prefixKey + "user:");
+        this.nearCache = cache;
+    }
+
+    /**
+     * Stops tracking and drops the near cache.
+     */
+    public void disableNearCache() {
+        if (nearCache != null) {
+            nearCache.close();
+            nearCache = null;
+        }
+    }
+
+    /**
+     * Gets the near cache, to read its hit/miss/invalidation counters.
+     *
+     * @return The near cache, or null if not enabled
+     */
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    /**
+     * Read-through lookup of "<prefixKey>user:<userId>:profile" that checks the near cache
+     * before Redis. Falls back to a plain Redis read-through if the near cache is disabled.
+     *
+     * @param prefixKey Key prefix
+     * @param userId    User ID to fetch data for
+     * @return User data
+     */
+    public String getUserDataNearCached(String prefixKey, String userId) {
+        String key = prefixKey + "user:" + userId + ":profile";
+        NearCache cache = nearCache;
+        String data = cache == null ? null : cache.get(key);
+        if (data != null) {
+            return data;
+        }
+
+        Object token = cache == null ? null : cache.beginLoad(key);
+        data = executor.execute(commands().get(key));
+        if (data == null) {
+            // Not near-cached: our own SETEX triggers an invalidation for this key anyway
+            return loadUserData(key, userId);
+        }
+        if (cache != null) {
+            cache.completeLoad(key, token, data);
+        }
+        return data;
+    }
+
+    /*
+     * Request Coalescing (reference implementation)
+     *
+     * When a hot key expires, every concurrent caller misses at once. Misses are
+     * loaded through a single flight per key, so only one caller per JVM calls the
+     * fakeService and the others wait for its result. With a load lock enabled,
+     * the loader also takes a short Redis lock (SET NX PX) so that only one JVM
+     * loads the key; the others poll Redis until the value appears.
+     */
+
+    /**
+     * Enables or disables the cross-JVM load lock.
+     *
+     * @param lockMillis Lock expiry in milliseconds, bounding how long other JVMs wait; 0 disables the lock
+     */
+    public void setLoadLockMillis(long lockMillis) {
+        if (lockMillis < 0) {
+            throw new IllegalArgumentException("Lock expiry must not be negative: " + lockMillis);
+        }
+        this.loadLockMillis = lockMillis;
+    }
+
+    /**
+     * Gets the single flight used for misses, to read its load/coalesced counters.
+     *
+     * @return The single flight
+     */
+    public SingleFlight<String> getUserDataLoads() {
+        return userDataLoads;
+    }
+
+    /**
+     * Read-through lookup of "<prefixKey>user:<userId>:profile" where concurrent
+     * misses for the same user trigger a single fakeService call.
+     *
+     * @param prefixKey Key prefix
+     * @param userId    User ID to fetch data for
+     * @return User data
+     */
+    public String getUserDataCoalesced(String prefixKey, String userId) {
+        String key = prefixKey + "user:" + userId + ":profile";
+        String data = executor.execute(commands().get(key));
+        return data != null ? data : loadUserData(key, userId);
+    }
+
+    private String loadUserData(final String key, final String userId) {
+        return userDataLoads.execute(key, () -> {
+            // A load that finished just before this one started may have stored the value
+            String data = executor.execute(commands().get(key));
+            if (data != null) {
+                return data;
+            }
+            return loadLockMillis > 0 ? loadUserDataLocked(key, userId) : fetchAndStore(key, userId);
+        });
+    }
+
+    private String loadUserDataLocked(String key, String userId) {
+        String lockKey = key + ":lock";
+        String token = UUID.randomUUID().toString();
+        long lockMillis = loadLockMillis;
+        if ("OK".equals(executor.execute(commands().set(lockKey, token, SetParams.setParams().nx().px(lockMillis))))) {
+            try {
+                return fetchAndStore(key, userId);
+            } finally {
+                executor.execute(commands().eval(RELEASE_LOCK_SCRIPT,
+                        Collections.singletonList(lockKey), Collections.singletonList(token)));
+            }
+        }
+
+        // Another JVM is loading: wait for its value, and load ourselves if its lock expires first
+        long deadline = System.currentTimeMillis() + lockMillis;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(LOCK_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            String data = executor.execute(commands().get(key));
+            if (data != null) {
+                return data;
+            }
+        }
+        return fetchAndStore(key, userId);
+    }
+
+    private String fetchAndStore(String key, String userId) {
+        String data = fakeService.doSomething(userId);
+        executor.execute(commands().setex(key, USER_DATA_TTL_SECONDS, data));
+        return data;
+    }
+
+    /*
+     * Early Refresh (reference implementation)
+     *
+     * Entries read by getUserDataWithRefresh are hashes holding the value, the time
+     * it took to compute (delta, ms) and its logical expiry (epoch ms), so readers can
+     * refresh it before it falls off. They live under "<prefixKey>user:<userId>:profile:entry",
+     * apart from the plain string profile the other lookups read and write:
+     * - XFETCH: each reader refreshes early with a probability that rises as the
+     *   expiry approaches and with the compute time (probabilistic early expiration).
+     * - STALE_WHILE_REVALIDATE: past its logical expiry the entry stays in Redis for
+     *   a grace period; readers get the stale value while one background refresh runs.
+     */
+
+    /**
+     * How getUserDataWithRefresh refreshes entries before they expire.
+     */
+    public enum RefreshMode {
+        XFETCH,
+        STALE_WHILE_REVALIDATE
+    }
+
+    /**
+     * Sets the refresh mode for getUserDataWithRefresh (default XFETCH).
+     *
+     * @param refreshMode Refresh mode
+     */
+    public void setRefreshMode(RefreshMode refreshMode) {
+        this.refreshMode = refreshMode;
+    }
+
+    /**
+     * Sets the XFetch beta: above 1 favours earlier refreshes, below 1 later ones.
+     *
+     * @param beta XFetch beta (default 1.0)
+     */
+    public void setXFetchBeta(double beta) {
+        if (beta <= 0) {
+            throw new IllegalArgumentException("Beta must be positive: " + beta);
+        }
+        this.xFetchBeta = beta;
+    }
+
+    /**
+     * Sets how long a stale entry may be served while it is refreshed in the background.
+     *
+     * @param staleSeconds Grace period after the logical expiry (default 60)
+     */
+    public void setStaleSeconds(int staleSeconds) {
+        if (staleSeconds < 1) {
+            throw new IllegalArgumentException("Stale period must be positive: " + staleSeconds);
+        }
+        this.staleSeconds = staleSeconds;
+    }
+
+    /**
+     * Read-through lookup of the hash "<prefixKey>user:<userId>:profile:entry" (fields
+     * value, delta and expiry) that refreshes the entry ahead of its 300 second expiry.
+     *
+     * @param prefixKey Key prefix
+     * @param userId    User ID to fetch data for
+     * @return User data
+     */
+    public String getUserDataWithRefresh(String prefixKey, String userId) {
+        final String key = prefixKey + "user:" + userId + ":profile:entry";
+        List<String> entry = executor.execute(commands().hmget(key, "value", "delta", "expiry"));
+        String data = entry.get(0);
+        if (data == null || entry.get(1) == null || entry.get(2) == null) {
+            return userDataLoads.execute(key, () -> {
+                String stored = executor.execute(commands().hget(key, "value"));
+                return stored != null ? stored : computeEntry(key, userId);
+            });
+        }
+
+        long delta = Long.parseLong(entry.get(1));
+        long expiry = Long.parseLong(entry.get(2));
+        long now = System.currentTimeMillis();
+        if (refreshMode == RefreshMode.XFETCH) {
+            // XFetch: refresh when now - delta * beta * ln(rand) >= expiry, rand in (0, 1]
+            double gap = -delta * xFetchBeta * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+            if (now + gap >= expiry) {
+                return userDataLoads.execute(key, () -> computeEntry(key, userId));
+            }
+        } else if (now >= expiry && refreshing.add(key)) {
+            refreshPool().execute(() -> {
+                try {
+                    computeEntry(key, userId);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        }
+        return data;
+    }
+
+    private String computeEntry(String key, String userId) {
+        long start = System.nanoTime();
+        String data = fakeService.doSomething(userId);
+        long delta = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        long expiry = System.currentTimeMillis() + USER_DATA_TTL_SECONDS * 1000L;
+        int ttlSeconds = refreshMode == RefreshMode.STALE_WHILE_REVALIDATE
+                ? USER_DATA_TTL_SECONDS + staleSeconds : USER_DATA_TTL_SECONDS;
+
+        Map<String, String> fields = new HashMap<>();
+        fields.put("value", data);
+        fields.put("delta", String.valueOf(delta));
+        fields.put("expiry", String.valueOf(expiry));
+        List<CommandObject<?>> batch = new ArrayList<>();
+        batch.add(commands().hset(key, fields));
+        batch.add(commands().expire(key, ttlSeconds));
+        throwFirstError(executor.executeBatch(batch));
+        return data;
+    }
+
+    private ExecutorService refreshPool() {
+        ExecutorService pool = refreshPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = refreshPool;
+                if (pool == null) {
+                    pool = Executors.newFixedThreadPool(REFRESH_THREADS, runnable -> {
+                        Thread thread = new Thread(runnable, "l05-cache-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    refreshPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /*
+     * Parallel Cache Warming (reference implementation)
+     *
+     * warmUpUserCache fetches and stores one user at a time. The warmer below
+     * fetches chunks of users in parallel and writes each chunk with one pipeline,
+     * with rate limiting, progress reporting and a resumable checkpoint.
+     */
+
+    /**
+     * Gets the warmer used by {@link #warmUpUserCacheInParallel}, to configure its
+     * threads, chunk size, rate limit, checkpoint key and progress listener.
+     *
+     * @return The cache warmer
+     */
+    public synchronized CacheWarmer getCacheWarmer() {
+        if (cacheWarmer == null) {
+            cacheWarmer = new CacheWarmer(executor);
+        }
+        return cacheWarmer;
+    }
+
+    /**
+     * Pre-loads "<prefixKey>user:<userId>:profile" for every user with a 600 second TTL.
+     *
+     * @param prefixKey Key prefix
+     * @param userIds   User IDs to warm up
+     * @return Number of users cached and the chunks that failed
+     */
+    public CacheWarmer.Result warmUpUserCacheInParallel(final String prefixKey, String[] userIds) {
+        return getCacheWarmer().warmUp(Arrays.asList(userIds),
+                userId -> prefixKey + "user:" + userId + ":profile",
+                fakeService::doSomething,
+                WARM_UP_TTL_SECONDS);
+    }
+
+    /*
+     * Write-Behind (reference implementation)
+     *
+     * updateUserData writes to Redis and the fakeService on every call. In write-behind
+     * mode the call returns once Redis holds the new profile and the user is marked
+     * dirty in a Redis hash; a background flusher writes the latest profile of each
+     * dirty user to the fakeService in batches, so a profile overwritten many times
+     * between flushes is written to the backend once.
+     */
+
+    /**
+     * Enables write-behind for {@link #updateUserDataWriteBehind}, keeping dirty users
+     * in the hash "<prefixKey>user:dirty". Dirty users left by a previous run are
+     * flushed right away.
+     *
+     * @param prefixKey           Key prefix of the dirty hash
+     * @param flushIntervalMillis Delay between flushes
+     * @param batchSize           Dirty users read per round trip
+     * @param maxLagMillis        Time without a complete flush after which updates write through again
+     */
+    public synchronized void enableWriteBehind(String prefixKey, long flushIntervalMillis, int batchSize,
+                                               long maxLagMillis) {
+        disableWriteBehind();
+        WriteBehindBuffer buffer = new WriteBehindBuffer(executor, prefixKey + "user:dirty",
+                users -> users.values().forEach(fakeService::doSomething));
+        buffer.setFlushIntervalMillis(flushIntervalMillis);
+        buffer.setBatchSize(batchSize);
+        buffer.setMaxLagMillis(maxLagMillis);
+        buffer.start();
+        this.writeBehind = buffer;
+    }
+
+    /**
+     * Stops the flusher after writing the remaining dirty users to the fakeService.
+     */
+    public synchronized void disableWriteBehind() {
+        if (writeBehind != null) {
+            writeBehind.close();
+            writeBehind = null;
+        }
+    }
+
+    /**
+     * Gets the write-behind buffer, to flush it or read its counters.
+     *
+     * @return The buffer, or null if write-behind is disabled
+     */
+    public WriteBehindBuffer getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Stores "<prefixKey>user:<userId>:profile" with a 300 second TTL. In write-behind
+     * mode the fakeService write is deferred to the flusher, unless the flusher lags
+     * behind; otherwise it is written through.
+     *
+     * @param prefixKey Key prefix
+     * @param userId    User ID
+     * @param userData  User data to store
+     * @return true once the update is stored
+     */
+    public boolean updateUserDataWriteBehind(String prefixKey, String userId, String userData) {
+        String key = prefixKey + "user:" + userId + ":profile";
+        WriteBehindBuffer buffer = writeBehind;
+        List<CommandObject<?>> batch = new ArrayList<>(2);
+        batch.add(commands().setex(key, USER_DATA_TTL_SECONDS, userData));
+        if (buffer != null) {
+            batch.add(buffer.markDirty(userId, userData));
+        }
+        throwFirstError(executor.executeBatch(batch));
+
+        if (buffer == null || buffer.isLagging()) {
+            // Still marked dirty while lagging, so a later flush cannot overwrite this write with older data
+            fakeService.doSomething(userData);
+        }
+        return true;
+    }
+
+    /*
+     * Encoded Values (reference implementation)
+     *
+     * Large profiles cost Redis memory and network bandwidth. These methods store the
+     * profile through a ValueCodec with the byte[] API, so profiles above the codec's
+     * threshold are compressed. Encoded profiles live under
+     * "<prefixKey>user:<userId>:profile:encoded", so the methods above never read codec
+     * bytes. On a miss, a plain profile cached by the methods above is copied over
+     * before asking the fakeService, and the codec can change without flushing the
+     * cache. Updates through the plain methods do not touch the encoded copy, which
+     * catches up when it expires.
+     */
+
+    /**
+     * Sets the codec used by the encoded methods (default: StringCodec compressing from 512 bytes).
+     *
+     * @param userDataCodec Codec for profiles
+     */
+    public void setUserDataCodec(ValueCodec<String> userDataCodec) {
+        this.userDataCodec = userDataCodec;
+    }
+
+    /**
+     * Read-through lookup of "<prefixKey>user:<userId>:profile:encoded" storing encoded profiles.
+     *
+     * @param prefixKey Key prefix
+     * @param userId    User ID to fetch data for
+     * @return User data
+     */
+    public String getUserDataEncoded(String prefixKey, String userId) {
+        byte[] key = SafeEncoder.encode(prefixKey + "user:" + userId + ":profile:encoded");
+        ValueCodec<String> codec = userDataCodec;
+        String data = codec.decode(executor.execute(commands().get(key)));
+        if (data == null) {
+            data = executor.execute(commands().get(prefixKey + "user:" + userId + ":profile"));
+            if (data == null) {
+                data = fakeService.doSomething(userId);
+            }
+            executor.execute(commands().setex(key, USER_DATA_TTL_SECONDS, codec.encode(data)));
+        }
+        return data;
+    }
+
+    /**
+     * Write-through update of "<prefixKey>user:<userId>:profile:encoded" storing the
+     * encoded profile. The plain profile is deleted, so a later miss does not copy it back.
+     *
+     * @param prefixKey Key prefix
+     * @param userId    User ID
+     * @param userData  User data to store
+     * @return true once both writes succeeded
+     */
+    public boolean updateUserDataEncoded(String prefixKey, String userId, String userData) {
+        byte[] key = SafeEncoder.encode(prefixKey + "user:" + userId + ":profile:encoded");
+        List<CommandObject<?>> batch = new ArrayList<>();
+        batch.add(commands().setex(key, USER_DATA_TTL_SECONDS, userDataCodec.encode(userData)));
+        batch.add(commands().del(prefixKey + "user:" + userId + ":profile"));
+        throwFirstError(executor.executeBatch(batch));
+        fakeService.doSomething(userData);
+        return true;
+    }
 }
@@ -1,8 +1,35 @@
 package com.redis.training;
 
+import com.redis.base.BucketedCounters;
+import com.redis.base.CounterAggregator;
 import com.redis.base.LabBase;
+import com.redis.base.RedisExecutor;
+import com.redis.base.RedisScript;
+import com.redis.base.TimeSeriesRollup;
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.ConnectionPool;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.clients.jedis.util.JedisClusterHashTag;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.YearMonth;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Exercise 6: Redis Analytics Operations
@@ -20,11 +47,50 @@ import redis.clients.jedis.JedisPool;
  * - Build analytics aggregation patterns
  */
 public class L06_AnalyticsExercise extends LabBase {
+    private static final long DAILY_TTL_SECONDS = 24 * 60 * 60;
+    private static final long USER_TIME_TTL_SECONDS = 7 * 24 * 60 * 60;
+    // Bucketed per-user time is counted per day and read as the sum of the last week;
+    // a day bucket stays readable through the last day it is counted on
+    private static final int USER_TIME_DAYS = 7;
+    private static final long USER_TIME_BUCKET_TTL_SECONDS = (USER_TIME_DAYS + 1) * 24 * 60 * 60;
+    // Daily visitor sets are kept long enough to roll up the month they belong to
+    private static final long DAILY_UNIQUES_TTL_SECONDS = 35 * 24 * 60 * 60;
+    private static final long WEEKLY_UNIQUES_TTL_SECONDS = 90 * 24 * 60 * 60;
+    private static final long MONTHLY_UNIQUES_TTL_SECONDS = 400 * 24 * 60 * 60;
+
+    // KEYS[1] counter with a TTL, KEYS[2] second counter, KEYS[3] optional string read as is,
+    // KEYS[4..] optional hashes whose ARGV[3] field is added to the string
+    // ARGV[1] delta, ARGV[2] TTL of KEYS[1], ARGV[3]/ARGV[4] hash fields of KEYS[1]/KEYS[2] or '' for strings
+    private static final RedisScript COUNT_SCRIPT = new RedisScript(
+            "local function add(key, field, delta)\n" +
+            "  if field == '' then return redis.call('incrby', key, delta) end\n" +
+            "  return redis.call('hincrby', key, field, delta)\n" +
+            "end\n" +
+            "local first = add(KEYS[1], ARGV[3], ARGV[1])\n" +
+            "redis.call('expire', KEYS[1], ARGV[2])\n" +
+            "local second = add(KEYS[2], ARGV[4], ARGV[1])\n" +
+            "local other = 0\n" +
+            "if KEYS[3] then other = tonumber(redis.call('get', KEYS[3]) or '0') end\n" +
+            "for i = 4, #KEYS do other = other + tonumber(redis.call('hget', KEYS[i], ARGV[3]) or '0') end\n" +
+            "return {first, second, other}");
+
+    private volatile BucketedCounters bucketedCounters;
+    private volatile CounterAggregator<PageView> pageViewBuffer;
+    private final ConcurrentMap<String, TimeSeriesRollup> pageViewRollups = new ConcurrentHashMap<>();
+    private volatile TrendingSettings trending;
 
     public L06_AnalyticsExercise(JedisPool jedisPool) {
         super(jedisPool);
     }
 
+    public L06_AnalyticsExercise(JedisCluster jedisCluster) {
+        super(jedisCluster);
+    }
+
+    public L06_AnalyticsExercise(RedisExecutor executor) {
+        super(executor);
+    }
+
     public L06_AnalyticsExercise() {
         super();
     }
@@ -95,4 +161,765 @@ public class L06_AnalyticsExercise extends LabBase {
         return new Long[]{0L, 0L, 0L};
         // >>> END CODING CHALLENGE <<<
     }
-}
\ No newline at end of file
+
+    /*
+     * Bucketed Counters (reference implementation)
+     *
+     * Exercises 6.1-6.3 store every counter as its own key. With bucketed counters
+     * enabled the same counters become fields of small bucket hashes (HINCRBY), which
+     * stay in the compact hash encoding and avoid the per-key overhead:
+     *
+     *   <keyPrefix>counters:pageviews:<date>:<n>   pageId -> daily views (24h TTL)
+     *   <keyPrefix>counters:pageviews:total:<n>    pageId -> total views
+     *   <keyPrefix>counters:time:user:<date>:<n>   userId:pageId -> seconds that day (8 day TTL)
+     *   <keyPrefix>counters:time:page:<n>          pageId -> total seconds
+     *
+     * The TTL of a bucket is refreshed by any counter in it. Per-user time is therefore
+     * bucketed per day (UTC): a day bucket is only written on its own day, so it
+     * expires on schedule, and the user's time is the sum of the last 7 day buckets.
+     * With one bucket for all days, writes by other users would keep pushing its TTL
+     * forward and the counters would never expire. While bucketed, reads add up the
+     * bucket fields and the plain key, so counters not migrated yet are still counted.
+     */
+
+    /**
+     * Stores new counts in bucket hashes.
+     *
+     * @param buckets Buckets per counter group, see {@link BucketedCounters#bucketsFor}
+     */
+    public void enableBucketedCounters(int buckets) {
+        bucketedCounters = new BucketedCounters(executor, buckets);
+    }
+
+    /**
+     * Goes back to one key per counter. Counts stored in buckets are not moved back.
+     */
+    public void disableBucketedCounters() {
+        bucketedCounters = null;
+    }
+
+    public BucketedCounters getBucketedCounters() {
+        return bucketedCounters;
+    }
+
+    /**
+     * Exercise 6.1 with one round trip, in the storage mode that is enabled.
+     *
+     * @param keyPrefix Key prefix
+     * @param pageId    Page identifier
+     * @param date      Date in YYYY-MM-DD format
+     * @return Current total page views for this page
+     */
+    public Long recordPageView(String keyPrefix, String pageId, String date) {
+        BucketedCounters counters = bucketedCounters;
+        List<CommandObject<?>> commands = new ArrayList<>(4);
+        addPageViewCommands(counters, keyPrefix, pageId, date, 1, commands);
+        if (counters != null) {
+            commands.add(commands().get(keyPrefix + "pageviews:" + pageId + ":total"));
+        }
+        List<Object> replies = executor.executeBatch(commands);
+        throwFirstError(replies);
+        return (Long) replies.get(2) + (counters == null ? 0 : toLong(replies.get(replies.size() - 1)));
+    }
+
+    /**
+     * Adds the commands counting page views: daily counter, its TTL and total counter.
+     */
+    private void addPageViewCommands(BucketedCounters counters, String keyPrefix, String pageId, String date,
+                                     long views, List<CommandObject<?>> commands) {
+        if (counters == null) {
+            String dailyKey = keyPrefix + "pageviews:" + pageId + ":" + date;
+            commands.add(commands().incrBy(dailyKey, views));
+            commands.add(commands().expire(dailyKey, DAILY_TTL_SECONDS));
+            commands.add(commands().incrBy(keyPrefix + "pageviews:" + pageId + ":total", views));
+        } else {
+            String dailyGroup = keyPrefix + "counters:pageviews:" + date;
+            commands.add(counters.incrBy(dailyGroup, pageId, views));
+            commands.add(counters.expire(dailyGroup, pageId, DAILY_TTL_SECONDS));
+            commands.add(counters.incrBy(keyPrefix + "counters:pageviews:total", pageId, views));
+        }
+        TrendingSettings settings = trending;
+        if (settings != null) {
+            addTrendingCommands(settings, keyPrefix, pageId, views, commands);
+        }
+    }
+
+    /**
+     * Exercise 6.2 with one round trip, in the storage mode that is enabled.
+     *
+     * @param keyPrefix        Key prefix
+     * @param userId           User identifier
+     * @param pageId           Page identifier
+     * @param timeSpentSeconds Time spent in seconds
+     * @return Total time spent by this user on this page
+     */
+    public Long recordTimeSpent(String keyPrefix, String userId, String pageId, long timeSpentSeconds) {
+        BucketedCounters counters = bucketedCounters;
+        String userKey = keyPrefix + "time:" + userId + ":" + pageId;
+        List<CommandObject<?>> commands;
+        if (counters == null) {
+            commands = Arrays.asList(
+                    commands().incrBy(userKey, timeSpentSeconds),
+                    commands().expire(userKey, USER_TIME_TTL_SECONDS),
+                    commands().incrBy(keyPrefix + "time:page:" + pageId + ":total", timeSpentSeconds));
+        } else {
+            List<String> userGroups = userTimeGroups(keyPrefix);
+            String userCounter = userId + ":" + pageId;
+            commands = new ArrayList<>(Arrays.asList(
+                    counters.incrBy(userGroups.get(0), userCounter, timeSpentSeconds),
+                    counters.expire(userGroups.get(0), userCounter, USER_TIME_BUCKET_TTL_SECONDS),
+                    counters.incrBy(keyPrefix + "counters:time:page", pageId, timeSpentSeconds),
+                    commands().get(userKey)));
+            for (String group : userGroups.subList(1, userGroups.size())) {
+                commands.add(counters.get(group, userCounter));
+            }
+        }
+        List<Object> replies = executor.executeBatch(commands);
+        throwFirstError(replies);
+        long total = (Long) replies.get(0);
+        for (int i = 3; i < replies.size(); i++) {
+            total += toLong(replies.get(i));
+        }
+        return total;
+    }
+
+    /**
+     * Gets the groups of the per-user time day buckets counted as the last week, today first.
+     */
+    private static List<String> userTimeGroups(String keyPrefix) {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        List<String> groups = new ArrayList<>(USER_TIME_DAYS);
+        for (int day = 0; day < USER_TIME_DAYS; day++) {
+            groups.add(keyPrefix + "counters:time:user:" + today.minusDays(day));
+        }
+        return groups;
+    }
+
+    /**
+     * Exercise 6.3 with one round trip, reading whichever storage holds the counters.
+     *
+     * @param keyPrefix Key prefix
+     * @param pageId    Page identifier
+     * @param date      Date in YYYY-MM-DD format
+     * @return Array containing [dailyViews, totalViews, totalTimeSpent, dailyUniqueVisitors]
+     */
+    public Long[] readPageAnalytics(String keyPrefix, String pageId, String date) {
+        BucketedCounters counters = bucketedCounters;
+        List<CommandObject<?>> commands = new ArrayList<>(Arrays.asList(
+                commands().get(keyPrefix + "pageviews:" + pageId + ":" + date),
+                commands().get(keyPrefix + "pageviews:" + pageId + ":total"),
+                commands().get(keyPrefix + "time:page:" + pageId + ":total")));
+        if (counters != null) {
+            commands.add(counters.get(keyPrefix + "counters:pageviews:" + date, pageId));
+            commands.add(counters.get(keyPrefix + "counters:pageviews:total", pageId));
+            commands.add(counters.get(keyPrefix + "counters:time:page", pageId));
+        }
+        commands.add(commands().pfcount(uniquesKey(keyPrefix, pageId, date)));
+        List<Object> replies = executor.executeBatch(commands);
+        throwFirstError(replies);
+        Long[] analytics = new Long[4];
+        for (int i = 0; i < 3; i++) {
+            analytics[i] = toLong(replies.get(i)) + (counters == null ? 0 : toLong(replies.get(i + 3)));
+        }
+        analytics[3] = (Long) replies.get(replies.size() - 1);
+        return analytics;
+    }
+
+    /**
+     * Moves the counters of exercises 6.1 and 6.2 stored as plain keys into their
+     * buckets. Enable bucketed counters first, so no new plain keys are written while
+     * the keys are scanned. On a single server, or in a cluster with a hash tag in the
+     * key prefix, each counter moves in one script and reads stay correct throughout;
+     * otherwise a read may count a counter twice while it moves (see
+     * {@link BucketedCounters#migrate}).
+     *
+     * @param keyPrefix Key prefix
+     * @return Number of counters moved
+     */
+    public long migrateCountersToBuckets(String keyPrefix) {
+        BucketedCounters counters = bucketedCounters;
+        if (counters == null) {
+            throw new IllegalStateException("Bucketed counters are not enabled");
+        }
+        long moved = 0;
+        for (String pattern : new String[]{keyPrefix + "pageviews:*", keyPrefix + "time:*"}) {
+            if (jedisCluster != null) {
+                // Replicas list the keys of their master too; keys already moved read as null and are skipped
+                for (ConnectionPool node : jedisCluster.getClusterNodes().values()) {
+                    try (Jedis jedis = new Jedis(node.getResource())) {
+                        moved += migrateMatching(jedis, pattern, keyPrefix, counters);
+                    }
+                }
+            } else {
+                try (Jedis jedis = getResource(keyPrefix)) {
+                    moved += migrateMatching(jedis, pattern, keyPrefix, counters);
+                }
+            }
+        }
+        return moved;
+    }
+
+    private static long migrateMatching(Jedis jedis, String pattern, String keyPrefix, BucketedCounters counters) {
+        long moved = 0;
+        ScanParams params = new ScanParams().match(pattern).count(1000);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> page = jedis.scan(cursor, params);
+            moved += counters.migrate(page.getResult(), key -> bucketTarget(keyPrefix, key));
+            cursor = page.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return moved;
+    }
+
+    /**
+     * Maps a plain counter key to its bucket group and field.
+     */
+    private static BucketedCounters.Target bucketTarget(String keyPrefix, String key) {
+        String name = key.substring(keyPrefix.length());
+        int last = name.lastIndexOf(':');
+        if (last < 0) {
+            return null;
+        }
+        String head = name.substring(0, last);
+        String tail = name.substring(last + 1);
+        if (name.startsWith("pageviews:")) {
+            String pageId = head.substring("pageviews:".length());
+            return tail.equals("total")
+                    ? new BucketedCounters.Target(keyPrefix + "counters:pageviews:total", pageId, 0)
+                    : new BucketedCounters.Target(keyPrefix + "counters:pageviews:" + tail, pageId, DAILY_TTL_SECONDS);
+        }
+        if (name.startsWith("time:page:") && tail.equals("total")) {
+            return new BucketedCounters.Target(keyPrefix + "counters:time:page",
+                    head.substring("time:page:".length()), 0);
+        }
+        if (name.startsWith("time:")) {
+            // Counted from today, as its last write is at most a week old anyway
+            return new BucketedCounters.Target(userTimeGroups(keyPrefix).get(0),
+                    name.substring("time:".length()), USER_TIME_BUCKET_TTL_SECONDS);
+        }
+        return null;
+    }
+
+    private static long toLong(Object reply) {
+        return reply == null ? 0 : Long.parseLong((String) reply);
+    }
+
+    /*
+     * Buffered Page Views (reference implementation)
+     *
+     * Exercise 6.1 sends three commands for every view. With the page view buffer
+     * enabled, views are added up in memory per page and date, and a background
+     * flush sends one set of commands per page with the merged count, every few
+     * milliseconds or as soon as enough views are pending. Counts reach Redis within
+     * about one flush interval; disabling the buffer drains what is pending.
+     */
+
+    /**
+     * Enables the page view buffer for {@link #bufferPageView}.
+     *
+     * @param flushIntervalMillis Maximum time a view waits before it is sent
+     * @param maxPendingEvents    Pending views that trigger a flush right away
+     */
+    public synchronized void enablePageViewBuffer(long flushIntervalMillis, long maxPendingEvents) {
+        disablePageViewBuffer();
+        CounterAggregator<PageView> buffer = new CounterAggregator<>(executor, (view, views, commands) ->
+                addPageViewCommands(bucketedCounters, view.keyPrefix, view.pageId, view.date, views, commands));
+        buffer.setFlushIntervalMillis(flushIntervalMillis);
+        buffer.setMaxPendingEvents(maxPendingEvents);
+        buffer.start();
+        this.pageViewBuffer = buffer;
+    }
+
+    /**
+     * Stops the page view buffer after sending the pending views.
+     */
+    public synchronized void disablePageViewBuffer() {
+        if (pageViewBuffer != null) {
+            pageViewBuffer.close();
+            pageViewBuffer = null;
+        }
+    }
+
+    /**
+     * Gets the page view buffer, to flush it or read its counters.
+     *
+     * @return The buffer, or null if it is disabled
+     */
+    public CounterAggregator<?> getPageViewBuffer() {
+        return pageViewBuffer;
+    }
+
+    /**
+     * Counts a page view like exercise 6.1, through the page view buffer when it is
+     * enabled. Use {@link #readPageAnalytics} to read the counts.
+     *
+     * @param keyPrefix Key prefix
+     * @param pageId    Page identifier
+     * @param date      Date in YYYY-MM-DD format
+     */
+    public void bufferPageView(String keyPrefix, String pageId, String date) {
+        CounterAggregator<PageView> buffer = pageViewBuffer;
+        if (buffer == null) {
+            recordPageView(keyPrefix, pageId, date);
+        } else {
+            buffer.add(new PageView(keyPrefix, pageId, date), 1);
+        }
+    }
+
+    /**
+     * Counter of the page view buffer: the views of one page on one date.
+     */
+    private static final class PageView {
+        private final String keyPrefix;
+        private final String pageId;
+        private final String date;
+
+        private PageView(String keyPrefix, String pageId, String date) {
+            this.keyPrefix = keyPrefix;
+            this.pageId = pageId;
+            this.date = date;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PageView)) {
+                return false;
+            }
+            PageView other = (PageView) o;
+            return keyPrefix.equals(other.keyPrefix) && pageId.equals(other.pageId) && date.equals(other.date);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(keyPrefix, pageId, date);
+        }
+    }
+
+    /*
+     * Scripted Tracking (reference implementation)
+     *
+     * recordPageView and recordTimeSpent pipeline their commands, but other clients
+     * can still see the daily counter updated before the total. These methods run
+     * the same updates in a Lua script called with EVALSHA: one round trip, applied
+     * atomically, with only the script digest sent. The script is loaded on first
+     * use and again whenever a server replies NOSCRIPT.
+     *
+     * A script may only touch keys of one hash slot in a cluster. When the keys of an
+     * event hash to different slots (use a hash tag in the key prefix, such as
+     * "{analytics}:", to keep them together) the pipelined version runs instead.
+     */
+
+    /**
+     * Exercise 6.1 as one atomic script call, in the storage mode that is enabled.
+     *
+     * @param keyPrefix Key prefix
+     * @param pageId    Page identifier
+     * @param date      Date in YYYY-MM-DD format
+     * @return Current total page views for this page
+     */
+    public Long recordPageViewScripted(String keyPrefix, String pageId, String date) {
+        BucketedCounters counters = bucketedCounters;
+        String totalKey = keyPrefix + "pageviews:" + pageId + ":total";
+        List<Long> counts;
+        if (counters == null) {
+            counts = runCountScript(1, DAILY_TTL_SECONDS,
+                    keyPrefix + "pageviews:" + pageId + ":" + date, "", totalKey, "", null);
+        } else {
+            String dailyGroup = keyPrefix + "counters:pageviews:" + date;
+            counts = runCountScript(1, DAILY_TTL_SECONDS,
+                    counters.bucketKey(dailyGroup, pageId), pageId,
+                    counters.bucketKey(keyPrefix + "counters:pageviews:total", pageId), pageId, totalKey);
+        }
+        return counts == null ? recordPageView(keyPrefix, pageId, date) : counts.get(1) + counts.get(2);
+    }
+
+    /**
+     * Exercise 6.2 as one atomic script call, in the storage mode that is enabled.
+     *
+     * @param keyPrefix        Key prefix
+     * @param userId           User identifier
+     * @param pageId           Page identifier
+     * @param timeSpentSeconds Time spent in seconds
+     * @return Total time spent by this user on this page
+     */
+    public Long recordTimeSpentScripted(String keyPrefix, String userId, String pageId, long timeSpentSeconds) {
+        BucketedCounters counters = bucketedCounters;
+        String userKey = keyPrefix + "time:" + userId + ":" + pageId;
+        List<Long> counts;
+        if (counters == null) {
+            counts = runCountScript(timeSpentSeconds, USER_TIME_TTL_SECONDS,
+                    userKey, "", keyPrefix + "time:page:" + pageId + ":total", "", null);
+        } else {
+            String userCounter = userId + ":" + pageId;
+            List<String> earlierDays = new ArrayList<>();
+            List<String> userGroups = userTimeGroups(keyPrefix);
+            for (String group : userGroups.subList(1, userGroups.size())) {
+                earlierDays.add(counters.bucketKey(group, userCounter));
+            }
+            counts = runCountScript(timeSpentSeconds, USER_TIME_BUCKET_TTL_SECONDS,
+                    counters.bucketKey(userGroups.get(0), userCounter), userCounter,
+                    counters.bucketKey(keyPrefix + "counters:time:page", pageId), pageId, userKey,
+                    earlierDays.toArray(new String[0]));
+        }
+        return counts == null
+                ? recordTimeSpent(keyPrefix, userId, pageId, timeSpentSeconds)
+                : counts.get(0) + counts.get(2);
+    }
+
+    /**
+     * Runs the count script, or returns null if its keys cannot run in one script.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Long> runCountScript(long delta, long ttlSeconds, String firstKey, String firstField,
+                                      String secondKey, String secondField, String otherKey, String... otherHashes) {
+        List<String> keys = new ArrayList<>(Arrays.asList(firstKey, secondKey));
+        if (otherKey != null) {
+            keys.add(otherKey);
+            keys.addAll(Arrays.asList(otherHashes));
+        }
+        if (isCluster()) {
+            int slot = JedisClusterCRC16.getSlot(firstKey);
+            for (String key : keys) {
+                if (JedisClusterCRC16.getSlot(key) != slot) {
+                    return null;
+                }
+            }
+        }
+        return (List<Long>) COUNT_SCRIPT.execute(executor, keys, Arrays.asList(
+                String.valueOf(delta), String.valueOf(ttlSeconds), firstField, secondField));
+    }
+
+    /*
+     * Unique Visitors (reference implementation)
+     *
+     * Counting distinct visitors exactly takes a set of visitor ids per page and day,
+     * growing with the traffic. A HyperLogLog estimates the count (standard error
+     * 0.81%) in at most 12KB per key, however many visitors it sees:
+     *
+     *   <keyPrefix>uniques:{<pageId>}:<date>       PFADD per view (35 day TTL)
+     *   <keyPrefix>uniques:{<pageId>}:<yyyy-Www>   PFMERGE of the days of an ISO week
+     *   <keyPrefix>uniques:{<pageId>}:<yyyy-MM>    PFMERGE of the days of a month
+     *
+     * The hash tag keeps every period of a page in one cluster slot, which PFMERGE
+     * requires. Merging is lossless: the union of daily HyperLogLogs estimates the
+     * visitors of the whole window, not the sum of the daily counts.
+     */
+
+    /**
+     * Counts a page view like exercise 6.1 and records the visitor, in one round trip.
+     *
+     * @param keyPrefix Key prefix
+     * @param pageId    Page identifier
+     * @param date      Date in YYYY-MM-DD format
+     * @param visitorId Visitor (user or session) identifier
+     * @return Current total page views for this page
+     */
+    public Long recordPageView(String keyPrefix, String pageId, String date, String visitorId) {
+        BucketedCounters counters = bucketedCounters;
+        String uniquesKey = uniquesKey(keyPrefix, pageId, date);
+        List<CommandObject<?>> commands = new ArrayList<>(6);
+        addPageViewCommands(counters, keyPrefix, pageId, date, 1, commands);
+        commands.add(commands().pfadd(uniquesKey, visitorId));
+        commands.add(commands().expire(uniquesKey, DAILY_UNIQUES_TTL_SECONDS));
+        if (counters != null) {
+            commands.add(commands().get(keyPrefix + "pageviews:" + pageId + ":total"));
+        }
+        List<Object> replies = executor.executeBatch(commands);
+        throwFirstError(replies);
+        return (Long) replies.get(2) + (counters == null ? 0 : toLong(replies.get(replies.size() - 1)));
+    }
+
+    /**
+     * Estimates the unique visitors of a page over a day, or over a week or month
+     * rolled up before.
+     *
+     * @param keyPrefix Key prefix
+     * @param pageId    Page identifier
+     * @param period    Date (YYYY-MM-DD), ISO week (YYYY-Www) or month (YYYY-MM)
+     * @return Estimated unique visitors, 0 if none were recorded
+     */
+    public long getUniqueVisitors(String keyPrefix, String pageId, String period) {
+        return executor.execute(commands().pfcount(uniquesKey(keyPrefix, pageId, period)));
+    }
+
+    /**
+     * Merges the daily visitors of the ISO week (Monday to Sunday) containing a date.
+     *
+     * @param keyPrefix Key prefix
+     * @param pageId    Page identifier
+     * @param date      Any date of the week, in YYYY-MM-DD format
+     * @return Estimated unique visitors of the week
+     */
+    public long rollUpWeeklyUniqueVisitors(String keyPrefix, String pageId, String date) {
+        LocalDate monday = LocalDate.parse(date).with(DayOfWeek.MONDAY);
+        String week = String.format("%d-W%02d",
+                monday.get(IsoFields.WEEK_BASED_YEAR), monday.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+        List<String> days = new ArrayList<>(7);
+        for (int i = 0; i < 7; i++) {
+            days.add(monday.plusDays(i).toString());
+        }
+        return rollUpUniqueVisitors(keyPrefix, pageId, week, days, WEEKLY_UNIQUES_TTL_SECONDS);
+    }
+
+    /**
+     * Merges the daily visitors of a month.
+     *
+     * @param keyPrefix Key prefix
+     * @param pageId    Page identifier
+     * @param month     Month in YYYY-MM format
+     * @return Estimated unique visitors of the month
+     */
+    public long rollUpMonthlyUniqueVisitors(String keyPrefix, String pageId, String month) {
+        YearMonth yearMonth = YearMonth.parse(month);
+        List<String> days = new ArrayList<>(31);
+        for (int day = 1; day <= yearMonth.lengthOfMonth(); day++) {
+            days.add(yearMonth.atDay(day).toString());
+        }
+        return rollUpUniqueVisitors(keyPrefix, pageId, month, days, MONTHLY_UNIQUES_TTL_SECONDS);
+    }
+
+    private long rollUpUniqueVisitors(String keyPrefix, String pageId, String period, List<String> days,
+                                      long ttlSeconds) {
+        String rollUpKey = uniquesKey(keyPrefix, pageId, period);
+        String[] dailyKeys = new String[days.size()];
+        for (int i = 0; i < days.size(); i++) {
+            dailyKeys[i] = uniquesKey(keyPrefix, pageId, days.get(i));
+        }
+        // PFMERGE includes the existing roll-up, so rerunning it keeps days that have expired since
+        List<Object> replies = executor.executeBatch(Arrays.asList(
+                commands().pfmerge(rollUpKey, dailyKeys),
+                commands().expire(rollUpKey, ttlSeconds),
+                commands().pfcount(rollUpKey)));
+        throwFirstError(replies);
+        return (Long) replies.get(2);
+    }
+
+    private static String uniquesKey(String keyPrefix, String pageId, String period) {
+        return keyPrefix + "uniques:{" + pageId + "}:" + period;
+    }
+
+    /*
+     * Page View Time Series (reference implementation)
+     *
+     * The daily counters of exercise 6.1 expire after a day and the total has no time
+     * axis. These methods also count every view in per-minute buckets
+     * ("<keyPrefix>rollup:pageviews:<pageId>:..."), which a background compactor
+     * folds into hour and day buckets, so a dashboard can read minutes of the last two
+     * days, hours of the last month or days of the last two years in one round trip.
+     */
+
+    /**
+     * Counts a page view like exercise 6.1 (the date is the UTC date of the view) and
+     * adds it to the page view time series, in one round trip.
+     *
+     * @param keyPrefix       Key prefix
+     * @param pageId          Page identifier
+     * @param timestampMillis Time of the view
+     * @return Current total page views for this page
+     */
+    public Long recordPageViewAt(String keyPrefix, String pageId, long timestampMillis) {
+        BucketedCounters counters = bucketedCounters;
+        String date = Instant.ofEpochMilli(timestampMillis).atZone(ZoneOffset.UTC).toLocalDate().toString();
+        List<CommandObject<?>> commands = new ArrayList<>(7);
+        addPageViewCommands(counters, keyPrefix, pageId, date, 1, commands);
+        commands.addAll(getPageViewRollup(keyPrefix).recordCommands("pageviews:" + pageId, timestampMillis, 1));
+        if (counters != null) {
+            commands.add(commands().get(keyPrefix + "pageviews:" + pageId + ":total"));
+        }
+        List<Object> replies = executor.executeBatch(commands);
+        throwFirstError(replies);
+        return (Long) replies.get(2) + (counters == null ? 0 : toLong(replies.get(replies.size() - 1)));
+    }
+
+    /**
+     * Reads the page views of a page over a time range.
+     *
+     * @param keyPrefix  Key prefix
+     * @param pageId     Page identifier
+     * @param resolution Minute, hour or day buckets
+     * @param fromMillis Start of the range
+     * @param toMillis   End of the range (inclusive)
+     * @return Views per bucket start (epoch milliseconds, UTC), in time order
+     */
+    public Map<Long, Long> getPageViewSeries(String keyPrefix, String pageId, TimeSeriesRollup.Resolution resolution,
+                                             long fromMillis, long toMillis) {
+        return getPageViewRollup(keyPrefix).query("pageviews:" + pageId, resolution, fromMillis, toMillis);
+    }
+
+    /**
+     * Starts folding the page view time series under a key prefix into hour and day buckets.
+     *
+     * @param keyPrefix      Key prefix
+     * @param intervalMillis Delay between compactions, at most an hour
+     */
+    public void enableRollupCompactor(String keyPrefix, long intervalMillis) {
+        getPageViewRollup(keyPrefix).start(intervalMillis);
+    }
+
+    /**
+     * Stops every compactor started by {@link #enableRollupCompactor}.
+     */
+    public void disableRollupCompactors() {
+        for (TimeSeriesRollup rollup : pageViewRollups.values()) {
+            rollup.close();
+        }
+    }
+
+    /**
+     * Gets the time series store of a key prefix, to compact it or read its counters.
+     *
+     * @param keyPrefix Key prefix
+     * @return The time series store
+     */
+    public TimeSeriesRollup getPageViewRollup(String keyPrefix) {
+        return pageViewRollups.computeIfAbsent(keyPrefix, prefix -> new TimeSeriesRollup(executor, prefix));
+    }
+
+    /*
+     * Trending Pages (reference implementation)
+     *
+     * With trending enabled, every page view counted by the methods above (recorded,
+     * buffered, with visitors or timestamps) also scores the page in a sorted set of the
+     * current time window ("<keyPrefix>trending:<window number>", ZINCRBY). Each window
+     * keeps at most its capacity of pages: the same script cuts the lowest ranks with
+     * ZREMRANGEBYRANK on every view, so a window never grows with the number of pages.
+     * Keep the capacity well above the k asked for, since a page that starts getting
+     * views in a full window has to outscore the cut before it sticks.
+     *
+     * The trending list merges the last windows, weighting a window by decay^age so
+     * recent views count most. The first read of a window tick stores that merge with
+     * ZUNIONSTORE WEIGHTS ("<keyPrefix>trending:decayed:<window number>", cut to the
+     * capacity as well); from then on each view is also added to the stored merge, and
+     * every read is a ZREVRANGE 0 k-1 of it, O(log n + k). The merge lives in Redis, so
+     * every process reads the same list, and a tick costs one ZUNIONSTORE whichever
+     * process reads first.
+     *
+     * ZUNIONSTORE and the scripts need all windows on one slot, so in a cluster the
+     * trending keys of a key prefix share a hash tag ("{<keyPrefix>trending}:..." or,
+     * if the key prefix has a hash tag already, the key prefix's). That slot takes
+     * every view of the key prefix.
+     */
+
+    // KEYS[1] current window, KEYS[2] its decayed merge if built
+    // ARGV[1] views, ARGV[2] page, ARGV[3] window TTL in ms, ARGV[4] last rank to cut (-(capacity + 1))
+    private static final String TRENDING_VIEW_SCRIPT =
+            "redis.call('zincrby', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "redis.call('pexpire', KEYS[1], ARGV[3])\n" +
+            "redis.call('zremrangebyrank', KEYS[1], 0, ARGV[4])\n" +
+            "if redis.call('exists', KEYS[2]) == 1 then\n" +
+            "  redis.call('zincrby', KEYS[2], ARGV[1], ARGV[2])\n" +
+            "  redis.call('zremrangebyrank', KEYS[2], 0, ARGV[4])\n" +
+            "end\n" +
+            "return 1";
+
+    // KEYS[1] decayed merge of the current window, KEYS[2..] windows from the current one back
+    // ARGV[1] last rank to read (k - 1), ARGV[2] last rank to cut (-(capacity + 1)),
+    // ARGV[3] merge TTL in ms, ARGV[4..] weight per window
+    private static final RedisScript TRENDING_READ_SCRIPT = new RedisScript(
+            "if redis.call('exists', KEYS[1]) == 0 then\n" +
+            "  local union = {'zunionstore', KEYS[1], #KEYS - 1}\n" +
+            "  for i = 2, #KEYS do union[#union + 1] = KEYS[i] end\n" +
+            "  union[#union + 1] = 'weights'\n" +
+            "  for i = 4, #ARGV do union[#union + 1] = ARGV[i] end\n" +
+            "  redis.call(unpack(union))\n" +
+            "  redis.call('zremrangebyrank', KEYS[1], 0, ARGV[2])\n" +
+            "  redis.call('pexpire', KEYS[1], ARGV[3])\n" +
+            "end\n" +
+            "return redis.call('zrevrange', KEYS[1], 0, ARGV[1], 'withscores')");
+
+    /**
+     * Settings of the trending windows.
+     */
+    private static final class TrendingSettings {
+        private final long windowMillis;
+        private final int windows;
+        private final double decay;
+        private final int capacity;
+
+        private TrendingSettings(long windowMillis, int windows, double decay, int capacity) {
+            this.windowMillis = windowMillis;
+            this.windows = windows;
+            this.decay = decay;
+            this.capacity = capacity;
+        }
+    }
+
+    /**
+     * Starts scoring page views in trending windows.
+     *
+     * @param windowMillis Length of a window, e.g. 5 minutes
+     * @param windows      Windows merged into the trending list
+     * @param decay        Weight factor per window of age, between 0 and 1 (e.g. 0.5)
+     * @param capacity     Pages kept per window
+     */
+    public void enableTrendingPages(long windowMillis, int windows, double decay, int capacity) {
+        if (windowMillis < 1 || windows < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Window length, windows and capacity must be positive");
+        }
+        if (decay <= 0 || decay > 1) {
+            throw new IllegalArgumentException("Decay must be in (0, 1]: " + decay);
+        }
+        trending = new TrendingSettings(windowMillis, windows, decay, capacity);
+    }
+
+    public void disableTrendingPages() {
+        trending = null;
+    }
+
+    private void addTrendingCommands(TrendingSettings settings, String keyPrefix, String pageId, long views,
+                                     List<CommandObject<?>> commands) {
+        String tag = trendingTag(keyPrefix);
+        long current = System.currentTimeMillis() / settings.windowMillis;
+        // Sent as EVAL, as it runs within a batch where a NOSCRIPT reply cannot be retried
+        commands.add(commands().eval(TRENDING_VIEW_SCRIPT,
+                Arrays.asList(tag + ":" + current, tag + ":decayed:" + current),
+                Arrays.asList(String.valueOf(views), pageId,
+                        String.valueOf(settings.windowMillis * (settings.windows + 1)),
+                        String.valueOf(-(settings.capacity + 1)))));
+    }
+
+    /**
+     * Gets the hottest pages of the last windows, recent views weighing most.
+     *
+     * @param keyPrefix Key prefix
+     * @param k         Number of pages
+     * @return Page IDs with their decayed scores, hottest first
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Double> getTrendingPages(String keyPrefix, int k) {
+        TrendingSettings settings = trending;
+        if (settings == null) {
+            throw new IllegalStateException("Trending pages are not enabled");
+        }
+        Map<String, Double> pages = new LinkedHashMap<>();
+        if (k < 1) {
+            return pages;
+        }
+        String tag = trendingTag(keyPrefix);
+        long current = System.currentTimeMillis() / settings.windowMillis;
+        List<String> keys = new ArrayList<>(settings.windows + 1);
+        List<String> args = new ArrayList<>(settings.windows + 3);
+        keys.add(tag + ":decayed:" + current);
+        args.add(String.valueOf(k - 1));
+        args.add(String.valueOf(-(settings.capacity + 1)));
+        args.add(String.valueOf(2 * settings.windowMillis));
+        for (int age = 0; age < settings.windows; age++) {
+            keys.add(tag + ":" + (current - age));
+            args.add(String.valueOf(Math.pow(settings.decay, age)));
+        }
+
+        List<String> reply = (List<String>) TRENDING_READ_SCRIPT.execute(executor, keys, args);
+        for (int i = 0; i < reply.size(); i += 2) {
+            pages.put(reply.get(i), Double.parseDouble(reply.get(i + 1)));
+        }
+        return pages;
+    }
+
+    /**
+     * Gets the prefix of the trending keys, with a hash tag putting them all on one slot.
+     */
+    private static String trendingTag(String keyPrefix) {
+        String prefix = keyPrefix + "trending";
+        return JedisClusterHashTag.getHashTag(prefix).equals(prefix) ? "{" + prefix + "}" : prefix;
+    }
+}
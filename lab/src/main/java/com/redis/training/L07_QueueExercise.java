@@ -1,11 +1,31 @@
 package com.redis.training;
 
+import com.redis.base.AdaptiveBatchSize;
 import com.redis.base.LabBase;
+import com.redis.base.RedisExecutor;
+import com.redis.base.ReliableQueue;
+import com.redis.base.StreamQueue;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.args.ListDirection;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.resps.StreamEntry;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Exercise 7: Redis Queue Operations
@@ -23,11 +43,29 @@ import java.util.List;
  * - Build reliable queue processing with error handling
  */
 public class L07_QueueExercise extends LabBase {
+    private static final String NOTIFICATION_GROUP = "notifiers";
+
+    // Largest RPOP count; bigger batches hold up the server for too long
+    private static final int MAX_NOTIFICATION_BATCH = 1000;
+    private static final long NOTIFICATION_BATCH_TARGET_MILLIS = 2;
+
+    private final ConcurrentMap<String, StreamQueue> notificationStreams = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ReliableQueue> reliableQueues = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AdaptiveBatchSize> notificationBatches = new ConcurrentHashMap<>();
+    private ExecutorService notificationWorkers;
 
     public L07_QueueExercise(JedisPool jedisPool) {
         super(jedisPool);
     }
 
+    public L07_QueueExercise(JedisCluster jedisCluster) {
+        super(jedisCluster);
+    }
+
+    public L07_QueueExercise(RedisExecutor executor) {
+        super(executor);
+    }
+
     public L07_QueueExercise() {
         super();
     }
@@ -94,4 +132,339 @@ public class L07_QueueExercise extends LabBase {
         return null;
         // >>> END CODING CHALLENGE <<<
     }
-}
\ No newline at end of file
+
+    /*
+     * Stream Queues (reference implementation)
+     *
+     * A message popped from a list with RPOP is gone: if the worker crashes before
+     * sending it, the notification is lost. These methods keep the notifications in a
+     * stream ("<prefixKey>stream:<type>") read by the consumer group "notifiers"
+     * instead. A message stays pending for the worker that read it until the worker
+     * acknowledges it, and the messages of a worker that died are taken over by
+     * another one once they have been idle long enough (see StreamQueue).
+     */
+
+    /**
+     * Gets the stream queue of a notification type, creating it on first use.
+     *
+     * @param prefixKey Prefix for queue keys
+     * @param type      Notification type ("email" or "sms")
+     * @return The stream queue, shared by all callers of this exercise instance
+     */
+    public StreamQueue getNotificationStream(String prefixKey, String type) {
+        return notificationStreams.computeIfAbsent(prefixKey + "stream:" + type,
+                key -> new StreamQueue(executor, key, NOTIFICATION_GROUP));
+    }
+
+    /**
+     * Adds a notification to the stream of its type.
+     *
+     * @param prefixKey Prefix for queue keys
+     * @param type      Notification type ("email" or "sms")
+     * @param recipient Recipient identifier
+     * @param message   Message content
+     * @return ID of the stream entry
+     */
+    public String enqueueNotificationStream(String prefixKey, String type, String recipient, String message) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("recipient", recipient);
+        fields.put("message", message);
+        return getNotificationStream(prefixKey, type).enqueue(fields).toString();
+    }
+
+    /**
+     * Processes up to maxMessages notifications of a type as one worker: new
+     * notifications first, then those left idle by other workers. Each notification
+     * is passed to the handler as "<type>:<recipient>:<message>" and acknowledged
+     * when the handler returns; one the handler throws on stays pending and is
+     * handed out again later.
+     *
+     * @param prefixKey   Prefix for queue keys
+     * @param type        Notification type ("email" or "sms")
+     * @param worker      Worker name, stable across restarts of the worker
+     * @param maxMessages Maximum number of messages to process
+     * @param handler     Sends a notification
+     * @return Notifications processed successfully, in stream order
+     */
+    public String[] processNotificationStream(String prefixKey, String type, String worker, int maxMessages,
+                                              Consumer<String> handler) {
+        StreamQueue queue = getNotificationStream(prefixKey, type);
+        List<StreamEntry> entries = queue.read(worker, maxMessages);
+        if (entries.size() < maxMessages) {
+            entries.addAll(queue.reclaim(worker, maxMessages - entries.size()));
+        }
+
+        List<String> processed = new ArrayList<>();
+        List<StreamEntryID> done = new ArrayList<>();
+        for (StreamEntry entry : entries) {
+            String notification = notification(type, entry);
+            try {
+                handler.accept(notification);
+            } catch (RuntimeException e) {
+                continue;
+            }
+            processed.add(notification);
+            done.add(entry.getID());
+        }
+        queue.ack(done);
+        return processed.toArray(new String[0]);
+    }
+
+    /**
+     * Starts a group of worker threads processing the notifications of a type.
+     *
+     * @param prefixKey Prefix for queue keys
+     * @param type      Notification type ("email" or "sms")
+     * @param workers   Number of worker threads
+     * @param handler   Sends a notification, as "<type>:<recipient>:<message>"
+     */
+    public void startNotificationWorkers(String prefixKey, String type, int workers, Consumer<String> handler) {
+        getNotificationStream(prefixKey, type).start(type + "-worker", workers,
+                entry -> handler.accept(notification(type, entry)));
+    }
+
+    /**
+     * Stops the worker threads of every notification stream, the batch worker pool
+     * and the reapers of the reliable queues.
+     */
+    public void stopNotificationWorkers() {
+        for (StreamQueue queue : notificationStreams.values()) {
+            queue.close();
+        }
+        for (ReliableQueue queue : reliableQueues.values()) {
+            queue.close();
+        }
+        synchronized (this) {
+            if (notificationWorkers != null) {
+                notificationWorkers.shutdown();
+                notificationWorkers = null;
+            }
+        }
+    }
+
+    /*
+     * Reliable Processing (reference implementation)
+     *
+     * The same "<prefixKey>queue:<type>" lists as exercise 7.1, consumed without losing
+     * the message a crashed worker was handling: LMOVE puts each message in a
+     * processing list of the worker, LREM removes it once handled, and a reaper puts
+     * the messages of workers that stopped renewing their lease back in the queue
+     * (see ReliableQueue). Producers do not change, and as the keys of the reliable
+     * queue take the queue key as hash tag, it runs in a cluster too.
+     */
+
+    /**
+     * Gets the reliable view of a notification queue, creating it on first use.
+     *
+     * @param prefixKey Prefix for queue keys
+     * @param type      Queue type ("email" or "sms")
+     * @return The reliable queue, shared by all callers of this exercise instance
+     */
+    public ReliableQueue getReliableNotificationQueue(String prefixKey, String type) {
+        // Exercise 7.1 pushes on the left, so the oldest message is on the right
+        return reliableQueues.computeIfAbsent(prefixKey + "queue:" + type,
+                key -> new ReliableQueue(executor, key, ListDirection.RIGHT));
+    }
+
+    /**
+     * Processes up to maxMessages notifications as one worker, acknowledging each
+     * handled message together with the next dequeue. A message the handler throws
+     * on goes back to the end of the queue.
+     *
+     * @param prefixKey   Prefix for queue keys
+     * @param type        Queue type to process ("email" or "sms")
+     * @param worker      Worker name, stable across restarts of the worker
+     * @param maxMessages Maximum number of messages to take
+     * @param handler     Handles a message
+     * @return Messages handled successfully, in FIFO order
+     */
+    public String[] processNotificationQueueReliably(String prefixKey, String type, String worker, int maxMessages,
+                                                     Consumer<String> handler) {
+        ReliableQueue queue = getReliableNotificationQueue(prefixKey, type);
+        List<String> processed = new ArrayList<>();
+        String message = maxMessages > 0 ? queue.dequeue(worker) : null;
+        for (int taken = 1; message != null; taken++) {
+            try {
+                handler.accept(message);
+            } catch (RuntimeException e) {
+                queue.release(worker, message);
+                message = taken < maxMessages ? queue.dequeue(worker) : null;
+                continue;
+            }
+            processed.add(message);
+            if (taken < maxMessages) {
+                message = queue.ackAndDequeue(worker, message);
+            } else {
+                queue.ack(worker, message);
+                message = null;
+            }
+        }
+        return processed.toArray(new String[0]);
+    }
+
+    /**
+     * Starts the reaper of a notification queue.
+     *
+     * @param prefixKey               Prefix for queue keys
+     * @param type                    Queue type ("email" or "sms")
+     * @param visibilityTimeoutMillis Time without activity after which a worker's messages are requeued
+     */
+    public void startNotificationReaper(String prefixKey, String type, long visibilityTimeoutMillis) {
+        ReliableQueue queue = getReliableNotificationQueue(prefixKey, type);
+        queue.setVisibilityTimeoutMillis(visibilityTimeoutMillis);
+        queue.start(Math.max(1, visibilityTimeoutMillis / 4));
+    }
+
+    private static String notification(String type, StreamEntry entry) {
+        return type + ":" + entry.getFields().get("recipient") + ":" + entry.getFields().get("message");
+    }
+
+    /*
+     * Batch Processing (reference implementation)
+     *
+     * processNotificationQueue pops one message per RPOP, one round trip each. These
+     * methods pop many per round trip with RPOP and a count (Redis 6.2+). An LLEN in
+     * the same pipeline reports how many messages are left, so the next batch is never
+     * bigger than the queue. Within that, each queue's batch size adapts to how much
+     * its batches take beyond the bare round trip (see AdaptiveBatchSize). Messages
+     * still come out in FIFO order, and a message handed to a failing handler is gone,
+     * as with a plain RPOP.
+     */
+
+    /**
+     * Pops up to maxMessages notifications in as few round trips as possible.
+     *
+     * @param prefixKey   Prefix for queue keys
+     * @param type        Queue type to process ("email" or "sms")
+     * @param maxMessages Maximum number of messages to pop
+     * @return Popped messages in FIFO order, empty if there are none
+     */
+    public String[] drainNotificationQueue(String prefixKey, String type, int maxMessages) {
+        String queue = prefixKey + "queue:" + type;
+        AdaptiveBatchSize batch = notificationBatch(queue);
+        List<String> drained = new ArrayList<>();
+        long depth = -1;
+        while (drained.size() < maxMessages && depth != 0) {
+            depth = popNotifications(queue, Math.min(maxMessages - drained.size(), batch.next(depth)), drained);
+        }
+        return drained.toArray(new String[0]);
+    }
+
+    /**
+     * Processes up to maxMessages notifications on a pool of workers. Each worker pops
+     * batches of its own and handles them, so handling runs in parallel while the
+     * pops stay atomic: no message goes to two workers.
+     *
+     * @param prefixKey   Prefix for queue keys
+     * @param type        Queue type to process ("email" or "sms")
+     * @param maxMessages Maximum number of messages to process
+     * @param workers     Number of workers
+     * @param handler     Handles a message; one it throws on is dropped
+     * @return Number of messages handled without an exception
+     */
+    public int processNotificationQueueParallel(String prefixKey, String type, int maxMessages, int workers,
+                                                Consumer<String> handler) {
+        String queue = prefixKey + "queue:" + type;
+        AdaptiveBatchSize batchSize = notificationBatch(queue);
+        AtomicInteger budget = new AtomicInteger(maxMessages);
+        ExecutorService pool = getNotificationWorkers();
+        List<Future<Integer>> results = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            results.add(pool.submit(() -> {
+                int handled = 0;
+                long depth = -1;
+                while (depth != 0) {
+                    int count = reserve(budget, batchSize.next(depth));
+                    if (count == 0) {
+                        break;
+                    }
+                    List<String> batch = new ArrayList<>(count);
+                    depth = popNotifications(queue, count, batch);
+                    budget.addAndGet(count - batch.size());
+                    for (String message : batch) {
+                        try {
+                            handler.accept(message);
+                            handled++;
+                        } catch (RuntimeException e) {
+                            // Dropped, like any message popped from a list
+                        }
+                    }
+                }
+                return handled;
+            }));
+        }
+
+        int handled = 0;
+        for (Future<Integer> result : results) {
+            try {
+                handled += result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JedisException("Interrupted while waiting for the notification workers", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new JedisException(e.getCause());
+            }
+        }
+        return handled;
+    }
+
+    /**
+     * @param prefixKey Prefix for queue keys
+     * @param type      Queue type ("email" or "sms")
+     * @return Current batch size of the batch pops from the queue, before capping by queue depth
+     */
+    public int getNotificationBatchSize(String prefixKey, String type) {
+        return notificationBatch(prefixKey + "queue:" + type).getSize();
+    }
+
+    // One per queue, as each queue has its own depth and cost per message
+    private AdaptiveBatchSize notificationBatch(String queue) {
+        return notificationBatches.computeIfAbsent(queue,
+                q -> new AdaptiveBatchSize(1, MAX_NOTIFICATION_BATCH, NOTIFICATION_BATCH_TARGET_MILLIS));
+    }
+
+    /**
+     * Pops up to count messages, with the queue length after the pop in the same round trip.
+     *
+     * @return Messages left in the queue
+     */
+    @SuppressWarnings("unchecked")
+    private long popNotifications(String queue, int count, List<String> into) {
+        long start = System.nanoTime();
+        List<Object> replies = executor.executeBatch(Arrays.asList(
+                commands().rpop(queue, count),
+                commands().llen(queue)));
+        throwFirstError(replies);
+        // RPOP with a count replies nil, not an empty list, when the queue is empty
+        List<String> popped = (List<String>) replies.get(0);
+        notificationBatch(queue).record(count, popped == null ? 0 : popped.size(), System.nanoTime() - start);
+        if (popped != null) {
+            into.addAll(popped);
+        }
+        return (Long) replies.get(1);
+    }
+
+    private static int reserve(AtomicInteger budget, int wanted) {
+        while (true) {
+            int left = budget.get();
+            int count = Math.min(left, wanted);
+            if (count <= 0 || budget.compareAndSet(left, left - count)) {
+                return Math.max(0, count);
+            }
+        }
+    }
+
+    private synchronized ExecutorService getNotificationWorkers() {
+        if (notificationWorkers == null) {
+            notificationWorkers = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "notification-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return notificationWorkers;
+    }
+}
@@ -1,7 +1,9 @@
 package com.redis.training;
 
 import com.redis.base.LabBase;
+import com.redis.base.RedisExecutor;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Transaction;
 
@@ -26,6 +28,14 @@ public class L08_FlashSaleExercise extends LabBase {
         super(jedisPool);
     }
 
+    public L08_FlashSaleExercise(JedisCluster jedisCluster) {
+        super(jedisCluster);
+    }
+
+    public L08_FlashSaleExercise(RedisExecutor executor) {
+        super(executor);
+    }
+
     public L08_FlashSaleExercise() {
         super();
     }
@@ -54,7 +64,8 @@ public class L08_FlashSaleExercise extends LabBase {
     }
 
     public String purchaseProduct(String prefixKey, String productId, String userId, int quantity) {
-        try (Jedis jedis = jedisPool.getResource()) {
+        // In cluster mode, every key touched by the transaction must share the stock key's slot
+        try (Jedis jedis = getResource(prefixKey + "stock:" + productId)) {
             return purchaseProduct(jedis, prefixKey, productId, userId, quantity);
         }
     }
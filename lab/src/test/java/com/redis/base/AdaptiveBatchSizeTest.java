@@ -0,0 +1,98 @@
+package com.redis.base;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for AdaptiveBatchSize growth, back-off, baseline and depth capping.
+ */
+public class AdaptiveBatchSizeTest {
+
+    @Test
+    public void testFullFastBatchesGrowUpToMax() {
+        AdaptiveBatchSize batch = new AdaptiveBatchSize(1, 100, 5);
+
+        for (int i = 0; i < 10; i++) {
+            int size = batch.next(-1);
+            batch.record(size, size, 1_000_000);
+        }
+        assertThat(batch.getSize(), is(100));
+
+        // A short batch says the queue ran dry, not that a bigger batch would help
+        AdaptiveBatchSize drained = new AdaptiveBatchSize(1, 100, 5);
+        drained.record(1, 0, 1_000_000);
+        assertThat(drained.getSize(), is(1));
+    }
+
+    @Test
+    public void testSlowBatchHalvesAndDepthCaps() {
+        AdaptiveBatchSize batch = new AdaptiveBatchSize(4, 64, 5);
+        for (int i = 0; i < 4; i++) {
+            batch.record(batch.getSize(), batch.getSize(), 0);
+        }
+        assertThat(batch.getSize(), is(64));
+
+        batch.record(64, 64, 10_000_000);
+        assertThat(batch.getSize(), is(32));
+        assertThat("Depth caps the batch", batch.next(3), is(3));
+        assertThat("An empty queue still gets a one-item probe", batch.next(0), is(1));
+
+        for (int i = 0; i < 10; i++) {
+            batch.record(batch.getSize(), batch.getSize(), 10_000_000);
+        }
+        assertThat(batch.getSize(), is(4));
+    }
+
+    @Test
+    public void testSlowNetworkStillGetsLargeBatches() {
+        // 20ms round trip, 1us per item: the items cost far less than the 2ms target
+        AdaptiveBatchSize batch = new AdaptiveBatchSize(1, 1000, 2);
+        for (int i = 0; i < 20; i++) {
+            int size = batch.next(-1);
+            batch.record(size, size, 20_000_000 + size * 1_000L);
+        }
+        assertThat(batch.getSize(), is(1000));
+        assertThat(batch.getBaselineNanos(), is(20_001_000L));
+
+        // 10us per item: the items alone exceed the target above about 200
+        AdaptiveBatchSize costly = new AdaptiveBatchSize(1, 1000, 2);
+        for (int i = 0; i < 40; i++) {
+            int size = costly.next(-1);
+            costly.record(size, size, 20_000_000 + size * 10_000L);
+            assertThat(costly.getSize(), lessThanOrEqualTo(256));
+        }
+        assertThat(costly.getSize(), greaterThanOrEqualTo(128));
+    }
+
+    @Test
+    public void testBaselineFollowsASlowerRoute() {
+        AdaptiveBatchSize batch = new AdaptiveBatchSize(1, 64, 2);
+        for (int i = 0; i < 10; i++) {
+            int size = batch.next(-1);
+            batch.record(size, size, 1_000_000);
+        }
+        assertThat(batch.getSize(), is(64));
+
+        // The route gets 30ms slower: batches shrink until a whole window saw the slower route
+        for (int i = 10; i < 2 * AdaptiveBatchSize.BASELINE_WINDOW - 1; i++) {
+            int size = batch.next(-1);
+            batch.record(size, size, 31_000_000);
+        }
+        assertThat(batch.getSize(), is(1));
+        assertThat(batch.getBaselineNanos(), is(1_000_000L));
+
+        batch.record(1, 1, 31_000_000);
+        assertThat(batch.getBaselineNanos(), is(31_000_000L));
+        assertThat("A window starts with a smallest-size probe", batch.next(-1), is(1));
+
+        for (int i = 0; i < 10; i++) {
+            int size = batch.next(-1);
+            batch.record(size, size, 31_000_000);
+        }
+        assertThat(batch.getSize(), is(64));
+    }
+}
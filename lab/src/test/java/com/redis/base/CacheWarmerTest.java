@@ -0,0 +1,106 @@
+package com.redis.base;
+
+import com.redis.training.TestBase;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Tests for CacheWarmer rate limiting, progress reporting and checkpoints.
+ */
+public class CacheWarmerTest extends TestBase {
+
+    @Test
+    public void testRateLimitSpacesBackendFetches() {
+        CacheWarmer warmer = new CacheWarmer(new PooledRedisExecutor(jedisPool));
+        warmer.setThreads(4);
+        warmer.setChunkSize(5);
+        warmer.setMaxFetchesPerSecond(100);
+
+        long start = System.currentTimeMillis();
+        CacheWarmer.Result result = warmer.warmUp(ids(30), this::getTestKey, id -> "value", 60);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertThat(result.getWarmedKeys(), is(30L));
+        // 30 fetches at 100 per second are spread over at least 290 ms
+        assertThat(elapsed, greaterThanOrEqualTo(250L));
+    }
+
+    @Test
+    public void testReportsProgressPerChunk() {
+        CacheWarmer warmer = new CacheWarmer(new PooledRedisExecutor(jedisPool));
+        warmer.setChunkSize(10);
+        AtomicInteger reports = new AtomicInteger();
+        List<Long> lastWarmed = new ArrayList<>();
+        warmer.setProgressListener((completedChunks, totalChunks, warmedKeys) -> {
+            reports.incrementAndGet();
+            assertThat(totalChunks, is(5));
+            if (completedChunks == totalChunks) {
+                lastWarmed.add(warmedKeys);
+            }
+        });
+
+        warmer.warmUp(ids(45), this::getTestKey, id -> "value", 60);
+
+        assertThat(reports.get(), is(5));
+        assertThat(lastWarmed.get(0), is(45L));
+    }
+
+    @Test
+    public void testCheckpointOfOtherIdsIsDiscarded() {
+        CacheWarmer warmer = new CacheWarmer(new PooledRedisExecutor(jedisPool));
+        warmer.setChunkSize(10);
+        warmer.setCheckpointKey(getTestKey("checkpoint"));
+        AtomicInteger fetches = new AtomicInteger();
+        warmer.warmUp(ids(30), this::getTestKey, id -> {
+            if (id.equals("id25")) {
+                throw new IllegalStateException("backend down");
+            }
+            return "value";
+        }, 60);
+
+        CacheWarmer.Result result = warmer.warmUp(ids(40), this::getTestKey, id -> {
+            fetches.incrementAndGet();
+            return "value";
+        }, 60);
+
+        assertThat("Chunks of a different id list should not be skipped", result.getSkippedChunks(), is(0));
+        assertThat(fetches.get(), is(40));
+    }
+
+    @Test
+    public void testCheckpointExpiresWithTheWarmedKeys() {
+        String checkpointKey = getTestKey("checkpoint");
+        CacheWarmer warmer = new CacheWarmer(new PooledRedisExecutor(jedisPool));
+        warmer.setChunkSize(10);
+        warmer.setCheckpointKey(checkpointKey);
+
+        CacheWarmer.Result result = warmer.warmUp(ids(30), this::getTestKey, id -> {
+            if (id.equals("id25")) {
+                throw new IllegalStateException("backend down");
+            }
+            return "value";
+        }, 60);
+
+        assertThat(result.getFailures().size(), is(1));
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat("Checkpoint should not outlive the warmed keys", jedis.ttl(checkpointKey), lessThanOrEqualTo(60L));
+        }
+    }
+
+    private static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add("id" + i);
+        }
+        return ids;
+    }
+}
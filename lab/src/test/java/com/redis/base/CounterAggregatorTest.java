@@ -0,0 +1,107 @@
+package com.redis.base;
+
+import com.redis.training.TestBase;
+import org.junit.Test;
+import org.mockito.Mockito;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Tests for CounterAggregator merging, flushing and retrying failed flushes.
+ */
+public class CounterAggregatorTest extends TestBase {
+
+    @Test
+    public void testConcurrentIncrementsAreMergedPerCounter() throws InterruptedException {
+        RedisExecutor executor = new PooledRedisExecutor(jedisPool);
+        CounterAggregator<String> aggregator = new CounterAggregator<>(executor,
+                (key, delta, commands) -> commands.add(executor.commands().incrBy(key, delta)));
+        aggregator.setMaxPendingEvents(Long.MAX_VALUE);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    aggregator.add(getTestKey("counter:" + i % 4), 1);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(aggregator.flush(), is(4));
+        assertThat(aggregator.getSentCommands(), is(4L));
+        assertThat(aggregator.getPendingEvents(), is(0L));
+        try (Jedis jedis = jedisPool.getResource()) {
+            for (int c = 0; c < 4; c++) {
+                assertThat(jedis.get(getTestKey("counter:" + c)), is("20000"));
+            }
+        }
+    }
+
+    @Test
+    public void testFailedFlushRestoresPendingEvents() {
+        RedisExecutor executor = Mockito.spy(new PooledRedisExecutor(jedisPool));
+        CounterAggregator<String> aggregator = new CounterAggregator<>(executor,
+                (key, delta, commands) -> commands.add(executor.commands().incrBy(key, delta)));
+        aggregator.setMaxPendingEvents(Long.MAX_VALUE);
+        String key = getTestKey("counter");
+        for (int i = 0; i < 50; i++) {
+            aggregator.add(key, 1);
+        }
+        Mockito.doThrow(new JedisConnectionException("Redis is down")).doCallRealMethod()
+                .when(executor).executeBatch(Mockito.anyList());
+
+        try {
+            aggregator.flush();
+        } catch (JedisConnectionException expected) {
+            // The deltas are put back
+        }
+
+        assertThat("Every increment should still be pending", aggregator.getPendingEvents(), is(50L));
+        assertThat(aggregator.getFailedFlushes(), is(1L));
+        assertThat(aggregator.flush(), is(1));
+        assertThat(aggregator.getPendingEvents(), is(0L));
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.get(key), is("50"));
+        }
+    }
+
+    @Test
+    public void testMaxPendingEventsTriggersFlushAndCloseDrains() throws InterruptedException {
+        RedisExecutor executor = new PooledRedisExecutor(jedisPool);
+        CounterAggregator<String> aggregator = new CounterAggregator<>(executor,
+                (key, delta, commands) -> commands.add(executor.commands().incrBy(key, delta)));
+        aggregator.setFlushIntervalMillis(60_000);
+        aggregator.setMaxPendingEvents(100);
+        aggregator.start();
+        String key = getTestKey("counter");
+
+        for (int i = 0; i < 100; i++) {
+            aggregator.add(key, 1);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (aggregator.getFlushes() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat("Reaching the max pending events should flush before the interval",
+                aggregator.getFlushes(), is(1L));
+
+        aggregator.add(key, 5);
+        aggregator.close();
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.get(key), is("105"));
+        }
+        assertThat(aggregator.getFlushes(), lessThan(4L));
+    }
+}
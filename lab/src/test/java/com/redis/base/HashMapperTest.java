@@ -0,0 +1,96 @@
+package com.redis.base;
+
+import com.redis.training.TestBase;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for HashMapper type conversion and dirty tracking.
+ */
+public class HashMapperTest extends TestBase {
+    private HashMapper<Account> mapper;
+
+    enum Plan { FREE, PREMIUM }
+
+    static class Account {
+        String owner;
+        long balance;
+        Double rating;
+        boolean active = true;
+        Plan plan = Plan.FREE;
+        transient String cached;
+    }
+
+    @Before
+    @Override
+    public void setUp() {
+        super.setUp();
+        mapper = new HashMapper<>(Account.class, new PooledRedisExecutor(jedisPool));
+    }
+
+    @Test
+    public void testMapsSupportedFieldTypes() {
+        String key = getTestKey("account");
+        Account account = new Account();
+        account.owner = "jane";
+        account.balance = 42;
+        account.rating = 4.5;
+        account.plan = Plan.PREMIUM;
+
+        mapper.save(mapper.track(key, account));
+        HashMapper.Tracked<Account> loaded = mapper.load(key);
+
+        assertThat(mapper.getFieldNames(), is(Arrays.asList("owner", "balance", "rating", "active", "plan")));
+        assertThat(loaded.get().owner, is("jane"));
+        assertThat(loaded.get().balance, is(42L));
+        assertThat(loaded.get().rating, is(4.5));
+        assertThat(loaded.get().plan, is(Plan.PREMIUM));
+        assertThat(mapper.getDirtyFields(loaded).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testNewObjectWritesNonDefaultFieldsOnly() {
+        String key = getTestKey("account");
+        Account account = new Account();
+        account.owner = "jane";
+
+        assertThat(mapper.save(mapper.track(key, account)), is(1));
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.hgetAll(key), is(Collections.singletonMap("owner", "jane")));
+        }
+    }
+
+    @Test
+    public void testFieldSetToNullIsDeleted() {
+        String key = getTestKey("account");
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.hset(key, "owner", "jane");
+            jedis.hset(key, "rating", "3.0");
+        }
+
+        HashMapper.Tracked<Account> loaded = mapper.load(key, "rating");
+        loaded.get().rating = null;
+
+        assertThat(mapper.save(loaded), is(1));
+        try (Jedis jedis = jedisPool.getResource()) {
+            Map<String, String> hash = jedis.hgetAll(key);
+            assertThat(hash.get("rating"), is(nullValue()));
+            assertThat("Fields not loaded are left alone", hash.get("owner"), is("jane"));
+        }
+    }
+
+    @Test
+    public void testLoadReturnsNullForMissingHash() {
+        assertThat(mapper.load(getTestKey("missing")), is(nullValue()));
+    }
+}
@@ -0,0 +1,200 @@
+package com.redis.base;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Test helper that runs a small Redis cluster made of local redis-server processes.
+ * Slots are split evenly between the masters, so cluster routing can be tested
+ * without Docker. Set the "redis.server" system property to point at a specific binary.
+ */
+public class LocalRedisCluster implements AutoCloseable {
+    private static final String REDIS_SERVER = System.getProperty("redis.server", "redis-server");
+    private static final int SLOTS = 16384;
+    private static final long STARTUP_TIMEOUT_MILLIS = 15000;
+
+    private final List<Process> processes = new ArrayList<>();
+    private final List<Integer> ports = new ArrayList<>();
+    private final File workDir;
+
+    private LocalRedisCluster(File workDir) {
+        this.workDir = workDir;
+    }
+
+    /**
+     * Checks whether a redis-server binary can be launched on this machine.
+     *
+     * @return true if "redis-server --version" runs successfully
+     */
+    public static boolean isAvailable() {
+        try {
+            Process process = new ProcessBuilder(REDIS_SERVER, "--version").redirectErrorStream(true).start();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Starts a cluster with the given number of masters and waits until it reports cluster_state:ok.
+     *
+     * @param masters Number of master processes to start
+     * @return Running cluster, to be closed after use
+     */
+    public static LocalRedisCluster start(int masters) throws Exception {
+        LocalRedisCluster cluster = new LocalRedisCluster(Files.createTempDirectory("redis-cluster").toFile());
+        try {
+            for (int i = 0; i < masters; i++) {
+                cluster.startNode(freeClusterPort());
+            }
+            cluster.assignSlots();
+            cluster.awaitClusterOk();
+            return cluster;
+        } catch (Exception e) {
+            cluster.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Addresses of all masters, usable as cluster seed nodes
+     */
+    public Set<HostAndPort> getNodes() {
+        Set<HostAndPort> nodes = new LinkedHashSet<>();
+        for (int port : ports) {
+            nodes.add(new HostAndPort("127.0.0.1", port));
+        }
+        return nodes;
+    }
+
+    /**
+     * Gets the master that owns a slot, following the even split made at startup.
+     *
+     * @param slot Hash slot (0-16383)
+     * @return Address of the owning master
+     */
+    public HostAndPort getNodeForSlot(int slot) {
+        return new HostAndPort("127.0.0.1", ports.get(slot / slotsPerNode()));
+    }
+
+    private int slotsPerNode() {
+        return (SLOTS + ports.size() - 1) / ports.size();
+    }
+
+    private void startNode(int port) throws Exception {
+        Process process = new ProcessBuilder(REDIS_SERVER,
+                "--port", String.valueOf(port),
+                "--bind", "127.0.0.1",
+                "--cluster-enabled", "yes",
+                "--cluster-config-file", "nodes-" + port + ".conf",
+                "--cluster-node-timeout", "5000",
+                "--dir", workDir.getAbsolutePath(),
+                "--save", "",
+                "--appendonly", "no")
+                .redirectErrorStream(true)
+                .redirectOutput(new File(workDir, "redis-" + port + ".log"))
+                .start();
+        processes.add(process);
+        ports.add(port);
+
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (true) {
+            try (Jedis jedis = new Jedis("127.0.0.1", port)) {
+                jedis.ping();
+                return;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("redis-server did not start on port " + port, e);
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private void assignSlots() {
+        int perNode = slotsPerNode();
+        for (int i = 0; i < ports.size(); i++) {
+            int from = i * perNode;
+            int to = Math.min(SLOTS, from + perNode);
+            int[] slots = new int[to - from];
+            for (int slot = from; slot < to; slot++) {
+                slots[slot - from] = slot;
+            }
+            try (Jedis jedis = new Jedis("127.0.0.1", ports.get(i))) {
+                jedis.clusterAddSlots(slots);
+                if (i > 0) {
+                    jedis.clusterMeet("127.0.0.1", ports.get(0));
+                }
+            }
+        }
+    }
+
+    private void awaitClusterOk() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        for (int port : ports) {
+            try (Jedis jedis = new Jedis("127.0.0.1", port)) {
+                while (!jedis.clusterInfo().contains("cluster_state:ok")
+                        || !jedis.clusterInfo().contains("cluster_known_nodes:" + ports.size())) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw new IllegalStateException("Cluster did not converge: " + jedis.clusterInfo());
+                    }
+                    Thread.sleep(100);
+                }
+            }
+        }
+    }
+
+    private static int freeClusterPort() throws IOException {
+        // The cluster bus uses port + 10000, so both must be free
+        while (true) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                int port = socket.getLocalPort();
+                if (port < 55535 && isFree(port + 10000)) {
+                    return port;
+                }
+            }
+        }
+    }
+
+    private static boolean isFree(int port) {
+        try {
+            new ServerSocket(port).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        File[] files = workDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        workDir.delete();
+    }
+}
@@ -0,0 +1,68 @@
+package com.redis.base;
+
+import com.redis.training.TestBase;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Tests for MemoryFootprintAnalyzer layouts and measurements.
+ */
+public class MemoryFootprintAnalyzerTest extends TestBase {
+
+    @Test
+    public void testBucketedHashesAreSmallestPerObject() {
+        MemoryFootprintAnalyzer analyzer = new MemoryFootprintAnalyzer(new PooledRedisExecutor(jedisPool),
+                getTestKey("footprint:"));
+        List<MemoryFootprintAnalyzer.Result> results = analyzer.analyze(profiles(1000));
+
+        MemoryFootprintAnalyzer.Result strings = results.get(0);
+        MemoryFootprintAnalyzer.Result hashes = results.get(1);
+        MemoryFootprintAnalyzer.Result buckets = results.get(2);
+        assertThat(strings.getKeys(), is(3000));
+        assertThat(hashes.getKeys(), is(1000));
+        assertThat("Buckets should hold several profiles", buckets.getKeys(), lessThan(100));
+        assertThat(buckets.getEncoding(), not(is("hashtable")));
+
+        assertThat(hashes.getBytesPerObject(), lessThan(strings.getBytesPerObject()));
+        assertThat(buckets.getBytesPerObject(), lessThan(hashes.getBytesPerObject()));
+        assertThat(buckets.getWritesPerSecond(), greaterThan(0d));
+        assertThat(buckets.getReadsPerSecond(), greaterThan(0d));
+    }
+
+    @Test
+    public void testKeysAreDeletedAfterEachLayout() {
+        String prefix = getTestKey("footprint:");
+        MemoryFootprintAnalyzer analyzer = new MemoryFootprintAnalyzer(new PooledRedisExecutor(jedisPool), prefix);
+        analyzer.setBucketSize(10);
+
+        MemoryFootprintAnalyzer.Result result = analyzer.analyze(MemoryFootprintAnalyzer.Layout.BUCKETED_HASH, profiles(95));
+
+        assertThat(result.getKeys(), is(10));
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.keys(prefix + "*").isEmpty(), is(true));
+        }
+    }
+
+    private static List<Map<String, String>> profiles(int count) {
+        List<Map<String, String>> profiles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, String> profile = new LinkedHashMap<>();
+            profile.put("firstname", "User" + i);
+            profile.put("email", "user" + i + "@example.com");
+            profile.put("department", "Sales");
+            profiles.add(profile);
+        }
+        return profiles;
+    }
+}
@@ -0,0 +1,142 @@
+package com.redis.base;
+
+import com.redis.training.TestBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.params.ClientKillParams;
+
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for NearCache: bounds, expiry and invalidation through client tracking.
+ */
+public class NearCacheTest extends TestBase {
+    private NearCache nearCache;
+
+    @Before
+    @Override
+    public void setUp() {
+        super.setUp();
+        nearCache = new NearCache(3, 60_000);
+    }
+
+    @After
+    @Override
+    public void tearDown() {
+        nearCache.close();
+        super.tearDown();
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        nearCache.put("a", "1");
+        nearCache.put("b", "2");
+        nearCache.put("c", "3");
+        nearCache.get("a");
+        nearCache.put("d", "4");
+
+        assertThat(nearCache.get("a"), is("1"));
+        assertThat("Least recently used entry should be evicted", nearCache.get("b"), is(nullValue()));
+        assertThat(nearCache.size(), is(3));
+        assertThat(nearCache.getEvictions(), is(1L));
+        assertThat(nearCache.getHits(), is(2L));
+        assertThat(nearCache.getMisses(), is(1L));
+    }
+
+    @Test
+    public void testEntriesExpire() throws InterruptedException {
+        NearCache shortLived = new NearCache(10, 50);
+        shortLived.put("a", "1");
+        assertThat(shortLived.get("a"), is("1"));
+
+        Thread.sleep(100);
+
+        assertThat("Entry should expire after the TTL", shortLived.get("a"), is(nullValue()));
+    }
+
+    @Test
+    public void testLoadInvalidatedWhileReadingIsNotCached() {
+        Object token = nearCache.beginLoad("a");
+        nearCache.invalidate("a");
+
+        assertThat(nearCache.completeLoad("a", token, "stale"), is(false));
+        assertThat(nearCache.get("a"), is(nullValue()));
+    }
+
+    @Test
+    public void testEvictsATenthOfTheEntriesAtOnce() {
+        NearCache large = new NearCache(100, 60_000);
+        for (int i = 0; i < 100; i++) {
+            large.put("key" + i, "value");
+        }
+        large.get("key0");
+        large.put("key100", "value");
+
+        assertThat(large.size(), is(91));
+        assertThat(large.getEvictions(), is(10L));
+        assertThat("Recently read entry should be kept", large.get("key0"), is("value"));
+        assertThat("Least recently used entry should be evicted", large.get("key1"), is(nullValue()));
+    }
+
+    @Test
+    public void testLostTrackingConnectionClearsAndResubscribes() throws InterruptedException {
+        String key = getTestKey("tracked");
+        RedisConfig config = RedisConnection.getConfig();
+        nearCache.startTracking(
+                Collections.singletonList(new HostAndPort(config.getHost(), config.getPort())), getTestKey());
+        nearCache.put(key, "old");
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            for (String client : jedis.clientList().split("\n")) {
+                if (client.contains(" name=" + NearCache.CONTROL_CLIENT_NAME + " ")) {
+                    jedis.clientKill(new ClientKillParams().id(client.substring(3, client.indexOf(' '))));
+                }
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (nearCache.get(key) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat("Cache should be cleared once the lost tracking is noticed", nearCache.get(key), is(nullValue()));
+
+        // Tracking is enabled again after the reconnect delay
+        deadline = System.currentTimeMillis() + 5000;
+        boolean invalidated = false;
+        while (!invalidated && System.currentTimeMillis() < deadline) {
+            nearCache.put(key, "old");
+            try (Jedis jedis = jedisPool.getResource()) {
+                jedis.set(key, "new");
+            }
+            Thread.sleep(100);
+            invalidated = nearCache.get(key) == null;
+        }
+        assertThat("Writes should invalidate entries again after resubscribing", invalidated, is(true));
+    }
+
+    @Test
+    public void testWritesFromOtherClientsInvalidateEntries() throws InterruptedException {
+        String key = getTestKey("tracked");
+        RedisConfig config = RedisConnection.getConfig();
+        nearCache.startTracking(
+                Collections.singletonList(new HostAndPort(config.getHost(), config.getPort())), getTestKey());
+        nearCache.put(key, "old");
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.set(key, "new");
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (nearCache.get(key) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat("Entry should be invalidated by the server", nearCache.get(key), is(nullValue()));
+    }
+}
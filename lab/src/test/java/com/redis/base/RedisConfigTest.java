@@ -0,0 +1,162 @@
+package com.redis.base;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+/**
+ * Tests for RedisConfig loading and for runtime reconfiguration in RedisConnection.
+ */
+public class RedisConfigTest {
+    private RedisConfig original;
+
+    @Before
+    public void setUp() {
+        original = RedisConnection.getConfig();
+    }
+
+    @After
+    public void tearDown() {
+        RedisConnection.reconfigure(original);
+    }
+
+    @Test
+    public void testEnvironmentVariableNames() {
+        assertThat(RedisConfig.toEnvName("redis.host"), is("LAB_REDIS_HOST"));
+        assertThat(RedisConfig.toEnvName("redis.pool.maxTotal"), is("LAB_REDIS_POOL_MAX_TOTAL"));
+        assertThat(RedisConfig.toEnvName("redis.cluster.pool.minIdle"), is("LAB_REDIS_CLUSTER_POOL_MIN_IDLE"));
+    }
+
+    @Test
+    public void testServiceLinkVariablesAreIgnored() {
+        // Kubernetes sets these for a service named "redis"
+        Map<String, String> env = new HashMap<>();
+        env.put("REDIS_PORT", "tcp://10.0.0.1:6379");
+        env.put("REDIS_SERVICE_HOST", "10.0.0.1");
+
+        RedisConfig config = RedisConfig.fromSources(new Properties(), env, new Properties());
+
+        assertThat(config.getPort(), is(6379));
+        assertThat(config.getHost(), is("localhost"));
+    }
+
+    @Test
+    public void testLaterSourcesWin() {
+        Properties file = new Properties();
+        file.setProperty(RedisConfig.HOST, "file-host");
+        file.setProperty(RedisConfig.PORT, "7000");
+        file.setProperty(RedisConfig.TIMEOUT, "1000");
+        Map<String, String> env = new HashMap<>();
+        env.put("LAB_REDIS_PORT", "7100");
+        env.put("LAB_REDIS_TIMEOUT", "1500");
+        Properties overrides = new Properties();
+        overrides.setProperty(RedisConfig.TIMEOUT, "3000");
+
+        RedisConfig config = RedisConfig.fromSources(file, env, overrides);
+
+        assertThat(config.getHost(), is("file-host"));
+        assertThat("Environment should override the file", config.getPort(), is(7100));
+        assertThat("System properties should override the environment", config.getTimeout(), is(3000));
+    }
+
+    @Test
+    public void testPoolSizeDerivedFromConcurrency() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        Properties file = new Properties();
+        int concurrency = 16 * processors;
+        file.setProperty(RedisConfig.EXPECTED_CONCURRENCY, String.valueOf(concurrency));
+
+        RedisConfig config = RedisConfig.fromSources(file, Collections.<String, String>emptyMap(), new Properties());
+
+        assertThat("Pool should fit the expected concurrency", config.getPoolMaxTotal(), is(concurrency));
+        assertThat(config.getPoolMaxIdle(), is(config.getPoolMaxTotal()));
+        assertThat(config.getClusterPoolMaxTotal(), is(Math.max(30, concurrency)));
+
+        RedisConfig defaults = RedisConfig.fromSources(new Properties(), Collections.<String, String>emptyMap(),
+                new Properties());
+        assertThat("Pool should never be smaller than two per core",
+                defaults.getPoolMaxTotal(), greaterThanOrEqualTo(2 * processors));
+    }
+
+    @Test
+    public void testClusterPoolNeverBelowPreviousFixedSizes() {
+        Properties file = new Properties();
+        file.setProperty(RedisConfig.EXPECTED_CONCURRENCY, "1");
+
+        RedisConfig config = RedisConfig.fromSources(file, Collections.<String, String>emptyMap(), new Properties());
+
+        assertThat(config.getClusterPoolMaxTotal(), greaterThanOrEqualTo(30));
+        assertThat(config.getClusterPoolMaxIdle(), greaterThanOrEqualTo(15));
+        assertThat(config.getClusterPoolMinIdle(), greaterThanOrEqualTo(3));
+    }
+
+    @Test
+    public void testResizeKeepsLivePool() {
+        JedisPool pool = RedisConnection.getPool();
+
+        RedisConnection.reconfigure(withOverride(RedisConfig.POOL_MAX_TOTAL, "3"));
+
+        assertThat("Resizing should not replace the pool", RedisConnection.getPool(), sameInstance(pool));
+        assertThat(pool.getMaxTotal(), is(3));
+    }
+
+    @Test
+    public void testEndpointChangeDoesNotDropInFlightRequests() throws InterruptedException {
+        JedisPool oldPool = RedisConnection.getPool();
+        Jedis inFlight = oldPool.getResource();
+
+        RedisConnection.reconfigure(withOverride(RedisConfig.TIMEOUT, "2500"));
+        JedisPool newPool = RedisConnection.getPool();
+
+        assertThat("Endpoint change should swap the pool", newPool, not(sameInstance(oldPool)));
+        Thread.sleep(1500);
+        assertThat("In-flight connection should keep working", inFlight.ping(), is("PONG"));
+        inFlight.close();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!oldPool.isClosed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat("Old pool should be closed once drained", oldPool.isClosed(), is(true));
+        try (Jedis jedis = newPool.getResource()) {
+            assertThat(jedis.ping(), is("PONG"));
+        }
+    }
+
+    @Test
+    public void testEndpointChangeKeepsExercisePoolOpen() throws InterruptedException {
+        LabBase exercise = new LabBase() {
+        };
+
+        RedisConnection.reconfigure(withOverride(RedisConfig.TIMEOUT, "2500"));
+        Thread.sleep(1500);
+
+        assertThat("The executor follows the swap", RedisConnection.getPool(), not(sameInstance(exercise.jedisPool)));
+        assertThat("The jedisPool field of the exercise stays usable", exercise.jedisPool.isClosed(), is(false));
+        try (Jedis jedis = exercise.jedisPool.getResource()) {
+            assertThat(jedis.ping(), is("PONG"));
+        }
+    }
+
+    private RedisConfig withOverride(String key, String value) {
+        Properties overrides = new Properties();
+        overrides.setProperty(RedisConfig.HOST, original.getHost());
+        overrides.setProperty(RedisConfig.PORT, String.valueOf(original.getPort()));
+        overrides.setProperty(RedisConfig.TIMEOUT, String.valueOf(original.getTimeout()));
+        overrides.setProperty(key, value);
+        return RedisConfig.fromSources(new Properties(), Collections.<String, String>emptyMap(), overrides);
+    }
+}
@@ -0,0 +1,257 @@
+package com.redis.base;
+
+import com.redis.training.L01_StringExercise;
+import com.redis.training.L02_HashExercise;
+import com.redis.training.L06_AnalyticsExercise;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.args.ListDirection;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Tests for the cluster support in RedisConnection and LabBase.
+ * Runs against local redis-server processes, so no Docker cluster is needed.
+ * Skipped when redis-server is not installed.
+ */
+public class RedisConnectionClusterTest {
+    private static final int MASTERS = 3;
+
+    private static LocalRedisCluster localCluster;
+    private static JedisCluster jedisCluster;
+
+    @BeforeClass
+    public static void startCluster() throws Exception {
+        Assume.assumeTrue("redis-server not available", LocalRedisCluster.isAvailable());
+        localCluster = LocalRedisCluster.start(MASTERS);
+        jedisCluster = RedisConnection.createCluster(localCluster.getNodes());
+    }
+
+    @AfterClass
+    public static void stopCluster() {
+        if (jedisCluster != null) {
+            RedisConnection.closeClusterExecutor(jedisCluster);
+            jedisCluster.close();
+        }
+        if (localCluster != null) {
+            localCluster.close();
+        }
+    }
+
+    @Test
+    public void testCreateClusterDiscoversAllMasters() {
+        assertThat("All masters should be discovered", jedisCluster.getClusterNodes().size(), is(MASTERS));
+    }
+
+    @Test
+    public void testKeysAreRoutedToSlotOwner() {
+        for (int i = 0; i < 300; i++) {
+            jedisCluster.set("routing:" + i, String.valueOf(i));
+        }
+
+        for (HostAndPort node : localCluster.getNodes()) {
+            try (Jedis jedis = new Jedis(node)) {
+                assertThat("Every master should hold part of the keys", jedis.dbSize(), greaterThan(0L));
+            }
+        }
+
+        for (int i = 0; i < 300; i++) {
+            String key = "routing:" + i;
+            HostAndPort owner = localCluster.getNodeForSlot(JedisClusterCRC16.getSlot(key));
+            try (Jedis jedis = new Jedis(owner)) {
+                assertThat("Key should live on the master owning its slot", jedis.get(key), is(String.valueOf(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testLabBaseResourceFollowsKeySlot() {
+        LabBase lab = new LabBase(jedisCluster) {
+        };
+        assertThat("Lab should run in cluster mode", lab.isCluster(), is(true));
+
+        for (int i = 0; i < 50; i++) {
+            String key = "{sale" + i + "}:stock";
+            jedisCluster.set(key, "10");
+            // A connection to the wrong master would fail with a MOVED error
+            try (Jedis jedis = lab.getResource(key)) {
+                assertThat(jedis.get(key), is("10"));
+                assertThat(jedis.incr("{sale" + i + "}:sold"), is(1L));
+            }
+        }
+    }
+
+    @Test
+    public void testClusterExecutorBatchSpansAllMasters() {
+        try (ClusterRedisExecutor executor = new ClusterRedisExecutor(jedisCluster)) {
+            List<CommandObject<?>> commands = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                commands.add(executor.commands().set("batch:" + i, String.valueOf(i)));
+            }
+            executor.executeBatch(commands);
+
+            commands.clear();
+            for (int i = 0; i < 100; i++) {
+                commands.add(executor.commands().get("batch:" + i));
+            }
+            List<Object> results = executor.executeBatch(commands);
+
+            for (int i = 0; i < 100; i++) {
+                assertThat("Replies should come back in command order", results.get(i), is((Object) String.valueOf(i)));
+            }
+            assertThat(executor.execute(executor.commands().get("batch:42")), is("42"));
+        }
+    }
+
+    @Test
+    public void testStringBatchesGroupKeysBySlot() {
+        L01_StringExercise exercise = new L01_StringExercise(jedisCluster);
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            values.put("mget:" + i, String.valueOf(i));
+        }
+
+        // MSET/MGET across slots would fail with CROSSSLOT without slot grouping
+        exercise.setStrings(values);
+        List<String> result = exercise.getStrings(new ArrayList<>(values.keySet()));
+
+        for (int i = 0; i < 200; i++) {
+            assertThat("Values should come back in input order", result.get(i), is(String.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void testBulkHashReadsSpanNodes() {
+        L02_HashExercise exercise = new L02_HashExercise(jedisCluster);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String key = "bulk:profile:" + i;
+            keys.add(key);
+            jedisCluster.hset(key, "email", "user" + i + "@example.com");
+        }
+
+        Map<String, Map<String, String>> profiles = exercise.getUserFields(keys, "email");
+
+        assertThat(profiles.size(), is(200));
+        assertThat("Profiles should come back in input order",
+                new ArrayList<>(profiles.keySet()), is(keys));
+        assertThat(profiles.get("bulk:profile:123").get("email"), is("user123@example.com"));
+        assertThat(exercise.getUserProfiles(keys).get("bulk:profile:5").get("email"), is("user5@example.com"));
+    }
+
+    @Test
+    public void testScriptedTrackingNeedsOneSlot() {
+        L06_AnalyticsExercise exercise = new L06_AnalyticsExercise(jedisCluster);
+
+        // The hash tag keeps the keys of an event in one slot, so the script runs
+        assertThat(exercise.recordPageViewScripted("{analytics}:", "home", "2024-01-15"), is(1L));
+        assertThat(exercise.recordPageViewScripted("{analytics}:", "home", "2024-01-15"), is(2L));
+        // Without it the keys span slots and the pipelined version runs instead
+        assertThat(exercise.recordPageViewScripted("analytics:", "home", "2024-01-15"), is(1L));
+        assertThat(exercise.recordTimeSpentScripted("analytics:", "user1", "home", 30), is(30L));
+    }
+
+    @Test
+    public void testMigrateCountersAcrossSlots() {
+        BucketedCounters counters = new BucketedCounters(RedisConnection.getClusterExecutor(jedisCluster), 4);
+        // One key shares the slot of its bucket through a hash tag, the other does not
+        jedisCluster.setex("{counters}:plain", 1000, "5");
+        jedisCluster.setex("counters:plain", 1000, "7");
+        String tagged = counters.bucketKey("{counters}:buckets", "tagged");
+        String untagged = counters.bucketKey("counters:buckets", "untagged");
+        assertThat(JedisClusterCRC16.getSlot("counters:plain") == JedisClusterCRC16.getSlot(untagged), is(false));
+
+        long moved = counters.migrate(Arrays.asList("{counters}:plain", "counters:plain"), key -> key.startsWith("{")
+                ? new BucketedCounters.Target("{counters}:buckets", "tagged", 0)
+                : new BucketedCounters.Target("counters:buckets", "untagged", 0));
+
+        assertThat(moved, is(2L));
+        assertThat(jedisCluster.exists("{counters}:plain"), is(false));
+        assertThat(jedisCluster.exists("counters:plain"), is(false));
+        assertThat(jedisCluster.hget(tagged, "tagged"), is("5"));
+        assertThat(jedisCluster.hget(untagged, "untagged"), is("7"));
+        assertThat("Buckets should keep the remaining TTL of the keys", jedisCluster.ttl(tagged),
+                allOf(greaterThan(0L), lessThanOrEqualTo(1000L)));
+        assertThat(jedisCluster.ttl(untagged), allOf(greaterThan(0L), lessThanOrEqualTo(1000L)));
+    }
+
+    @Test
+    public void testReliableQueueKeysStayInTheQueueSlot() throws InterruptedException {
+        try (ClusterRedisExecutor executor = new ClusterRedisExecutor(jedisCluster)) {
+            // No hash tag: LMOVE and the reaper script would fail with CROSSSLOT on plain suffixed keys
+            ReliableQueue queue = new ReliableQueue(executor, "reliable:queue", ListDirection.RIGHT);
+            queue.setVisibilityTimeoutMillis(100);
+            jedisCluster.lpush("reliable:queue", "m1", "m2");
+
+            assertThat(queue.dequeue("w1"), is("m1"));
+            Thread.sleep(150);
+            assertThat(queue.requeueExpired(), is(1L));
+            assertThat(queue.ackAndDequeue("w2", null), is("m1"));
+            assertThat(queue.ackAndDequeue("w2", "m1"), is("m2"));
+            assertThat(queue.ack("w2", "m2"), is(true));
+            assertThat(queue.dequeue("w2", 0.1), is((String) null));
+        }
+    }
+
+    @Test
+    public void testExercisesShareOneClusterExecutor() {
+        L01_StringExercise first = new L01_StringExercise(jedisCluster);
+        L02_HashExercise second = new L02_HashExercise(jedisCluster);
+
+        assertThat(first.executor, sameInstance(second.executor));
+        assertThat(first.executor, sameInstance((RedisExecutor) RedisConnection.getClusterExecutor(jedisCluster)));
+    }
+
+    @Test
+    public void testBatchFollowsMovedSlot() {
+        String key = "moved:key";
+        int slot = JedisClusterCRC16.getSlot(key);
+        try (ClusterRedisExecutor executor = new ClusterRedisExecutor(jedisCluster)) {
+            // Load the slot map of the pipelines before the slot moves
+            executor.executeBatch(Collections.singletonList(executor.commands().set(key, "before")));
+
+            HostAndPort owner = localCluster.getNodeForSlot(slot);
+            HostAndPort target = null;
+            for (HostAndPort node : localCluster.getNodes()) {
+                if (!node.equals(owner)) {
+                    target = node;
+                }
+            }
+            jedisCluster.del(key);
+            String targetId;
+            try (Jedis jedis = new Jedis(target)) {
+                targetId = jedis.clusterMyId();
+            }
+            for (HostAndPort node : localCluster.getNodes()) {
+                try (Jedis jedis = new Jedis(node)) {
+                    jedis.clusterSetSlotNode(slot, targetId);
+                }
+            }
+
+            List<Object> replies = executor.executeBatch(Collections.singletonList(executor.commands().set(key, "after")));
+            assertThat("The MOVED command is sent to the new owner", replies.get(0), is((Object) "OK"));
+            try (Jedis jedis = new Jedis(target)) {
+                assertThat(jedis.get(key), is("after"));
+            }
+        }
+    }
+}
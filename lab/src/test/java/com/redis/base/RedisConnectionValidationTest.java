@@ -0,0 +1,165 @@
+package com.redis.base;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.params.ClientKillParams;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the connection validation strategy in RedisConnection.
+ * Commands must cost one round trip, and dead idle connections must be evicted in the background.
+ */
+public class RedisConnectionValidationTest {
+    private static final int OPERATIONS = 200;
+
+    private JedisPool pool;
+
+    @Before
+    public void setUp() {
+        JedisPoolConfig poolConfig = RedisConnection.buildPoolConfig();
+        poolConfig.setTimeBetweenEvictionRuns(Duration.ofMillis(100));
+        pool = new JedisPool(poolConfig, "localhost", 6379, 2000);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void testPoolConfigDoesNotValidateOnHotPath() {
+        assertThat(RedisConnection.buildPoolConfig().getTestOnBorrow(), is(false));
+        assertThat(RedisConnection.buildPoolConfig().getTestOnReturn(), is(false));
+        assertThat(RedisConnection.buildPoolConfig().getTestWhileIdle(), is(true));
+        assertThat(RedisConnection.buildClusterPoolConfig().getTestOnBorrow(), is(false));
+        assertThat(RedisConnection.buildClusterPoolConfig().getTestOnReturn(), is(false));
+        assertThat(RedisConnection.buildClusterPoolConfig().getTestWhileIdle(), is(true));
+    }
+
+    @Test
+    public void testOneRoundTripPerOperation() {
+        // Stop the evictor so its background PINGs don't count
+        pool.setTimeBetweenEvictionRuns(Duration.ofMillis(-1));
+        Map<String, Long> before;
+        try (Jedis jedis = pool.getResource()) {
+            before = ConnectionMetrics.commandCalls(jedis);
+        }
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            try (Jedis jedis = pool.getResource()) {
+                jedis.get("validation:missing");
+            }
+        }
+
+        Map<String, Long> after;
+        try (Jedis jedis = pool.getResource()) {
+            after = ConnectionMetrics.commandCalls(jedis);
+        }
+        long getCalls = delta(before, after, "get");
+        long pingCalls = delta(before, after, "ping");
+        long totalCalls = 0;
+        for (String command : after.keySet()) {
+            totalCalls += delta(before, after, command);
+        }
+
+        assertThat("Each operation should send one GET", getCalls, is((long) OPERATIONS));
+        assertThat("No validation PING should be sent", pingCalls, is(0L));
+        // The INFO call of the first snapshot is the only other command counted
+        assertThat("Round trips per operation should be one", totalCalls - 1, is((long) OPERATIONS));
+    }
+
+    @Test
+    public void testDeadIdleConnectionsAreEvicted() throws InterruptedException {
+        List<Jedis> borrowed = new ArrayList<>();
+        List<Long> clientIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Jedis jedis = pool.getResource();
+            clientIds.add(jedis.clientId());
+            borrowed.add(jedis);
+        }
+        for (Jedis jedis : borrowed) {
+            jedis.close();
+        }
+
+        try (Jedis admin = new Jedis("localhost", 6379)) {
+            for (long clientId : clientIds) {
+                admin.clientKill(new ClientKillParams().id(String.valueOf(clientId)));
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ConnectionMetrics.of(pool).getDestroyedByEvictor() < clientIds.size()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertThat("Evictor should destroy the dead connections",
+                ConnectionMetrics.of(pool).getDestroyedByEvictor(), greaterThan(0L));
+        try (Jedis jedis = pool.getResource()) {
+            assertThat("Pool should hand out a live connection", jedis.ping(), is("PONG"));
+        }
+    }
+
+    @Test
+    public void testStaleConnectionIsRetriedOnce() {
+        // No evictor runs, as between two runs of the 30 second schedule
+        pool.setTimeBetweenEvictionRuns(Duration.ofMillis(-1));
+        long clientId;
+        try (Jedis jedis = pool.getResource()) {
+            clientId = jedis.clientId();
+        }
+        try (Jedis admin = new Jedis("localhost", 6379)) {
+            admin.clientKill(new ClientKillParams().id(String.valueOf(clientId)));
+        }
+
+        RedisExecutor executor = new PooledRedisExecutor(pool);
+        assertThat("The killed idle connection should be replaced transparently",
+                executor.execute(executor.commands().exists("test:RedisConnectionValidationTest:missing")), is(false));
+    }
+
+    @Test
+    public void testWriteOnStaleConnectionIsNotRetried() {
+        pool.setTimeBetweenEvictionRuns(Duration.ofMillis(-1));
+        long clientId;
+        try (Jedis jedis = pool.getResource()) {
+            clientId = jedis.clientId();
+        }
+        try (Jedis admin = new Jedis("localhost", 6379)) {
+            admin.clientKill(new ClientKillParams().id(String.valueOf(clientId)));
+        }
+
+        RedisExecutor executor = new PooledRedisExecutor(pool);
+        String key = "test:RedisConnectionValidationTest:counter";
+        try {
+            executor.execute(executor.commands().incr(key));
+            fail("A write on a broken connection may have been applied, so it should not be sent again");
+        } catch (JedisConnectionException expected) {
+            // The caller decides whether the INCR is safe to repeat
+        }
+        try {
+            assertThat("The broken connection was discarded", executor.execute(executor.commands().incr(key)), is(1L));
+        } finally {
+            executor.execute(executor.commands().del(key));
+        }
+    }
+
+    private static long delta(Map<String, Long> before, Map<String, Long> after, String command) {
+        Long start = before.get(command);
+        Long end = after.get(command);
+        return (end == null ? 0 : end) - (start == null ? 0 : start);
+    }
+}
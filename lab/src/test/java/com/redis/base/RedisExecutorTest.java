@@ -0,0 +1,137 @@
+package com.redis.base;
+
+import com.redis.training.TestBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for the RedisExecutor transports.
+ * Every transport runs the same workload and must give the same replies.
+ */
+public class RedisExecutorTest extends TestBase {
+    private List<RedisExecutor> executors;
+
+    @Before
+    @Override
+    public void setUp() {
+        super.setUp();
+        PooledRedisExecutor pooled = new PooledRedisExecutor(jedisPool);
+        executors = Arrays.asList(
+                pooled,
+                new PipelinedRedisExecutor(pooled, 64),
+                new AsyncRedisExecutor(pooled, 4));
+    }
+
+    @After
+    @Override
+    public void tearDown() {
+        for (RedisExecutor executor : executors) {
+            executor.close();
+        }
+        super.tearDown();
+    }
+
+    @Test
+    public void testExecuteSameWorkloadOnEveryTransport() {
+        for (RedisExecutor executor : executors) {
+            String key = getTestKey(executor.getClass().getSimpleName());
+
+            assertThat(executor.execute(executor.commands().set(key, "value")), is("OK"));
+            assertThat(executor.execute(executor.commands().get(key)), is("value"));
+            assertThat(executor.execute(executor.commands().get(key + ":missing")), is(nullValue()));
+            assertThat(executor.executeAsync(executor.commands().incr(key + ":counter")).join(), is(1L));
+        }
+    }
+
+    @Test
+    public void testExecuteBatchKeepsOrderAndErrors() {
+        for (RedisExecutor executor : executors) {
+            String key = getTestKey(executor.getClass().getSimpleName());
+            List<CommandObject<?>> commands = new ArrayList<>();
+            commands.add(executor.commands().set(key, "text"));
+            commands.add(executor.commands().incr(key));
+            commands.add(executor.commands().get(key));
+
+            List<Object> results = executor.executeBatch(commands);
+
+            assertThat(results.get(0), is((Object) "OK"));
+            assertThat("Failed command should keep its position", results.get(1), instanceOf(JedisDataException.class));
+            assertThat(results.get(2), is((Object) "text"));
+        }
+    }
+
+    @Test
+    public void testPipelinedExecutorUnderConcurrency() throws Exception {
+        RedisExecutor executor = executors.get(1);
+        String key = getTestKey("concurrent");
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        List<Future<Long>> results = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            results.add(callers.submit(() -> executor.execute(executor.commands().incr(key))));
+        }
+        callers.shutdown();
+        callers.awaitTermination(30, TimeUnit.SECONDS);
+
+        for (Future<Long> result : results) {
+            result.get();
+        }
+        assertThat(executor.execute(executor.commands().get(key)), is("1000"));
+    }
+
+    @Test(expected = JedisDataException.class)
+    public void testPipelinedExecutorPropagatesCommandError() {
+        RedisExecutor executor = executors.get(1);
+        String key = getTestKey("error");
+        executor.execute(executor.commands().set(key, "text"));
+        executor.execute(executor.commands().incr(key));
+    }
+
+    @Test
+    public void testClosedPipelinedExecutorRejectsCommands() {
+        RedisExecutor executor = new PipelinedRedisExecutor(executors.get(0), 16);
+        executor.close();
+
+        CompletableFuture<String> future = executor.executeAsync(executor.commands().get(getTestKey()));
+        assertThat("Closed executor should fail new commands", future.isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void testCommandsRacingCloseAlwaysComplete() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 20; round++) {
+                RedisExecutor executor = new PipelinedRedisExecutor(executors.get(0), 16);
+                List<Future<CompletableFuture<String>>> submitted = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    submitted.add(callers.submit(() -> executor.executeAsync(executor.commands().get(getTestKey()))));
+                }
+                executor.close();
+                for (Future<CompletableFuture<String>> future : submitted) {
+                    CompletableFuture<String> reply = future.get(5, TimeUnit.SECONDS);
+                    // Sent before the close or failed by it, but never left pending
+                    reply.handle((value, error) -> value).get(5, TimeUnit.SECONDS);
+                }
+            }
+        } finally {
+            callers.shutdown();
+        }
+    }
+}
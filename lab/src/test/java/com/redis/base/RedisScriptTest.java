@@ -0,0 +1,43 @@
+package com.redis.base;
+
+import com.redis.training.TestBase;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for RedisScript digests and NOSCRIPT reloading.
+ */
+public class RedisScriptTest extends TestBase {
+
+    @Test
+    public void testShaMatchesServerDigest() {
+        String source = "return redis.call('incr', KEYS[1])";
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(new RedisScript(source).getSha(), is(jedis.scriptLoad(source)));
+        }
+    }
+
+    @Test
+    public void testReloadsAfterScriptFlush() {
+        RedisExecutor executor = new PooledRedisExecutor(jedisPool);
+        // Unique source, so no other test has loaded it
+        RedisScript script = new RedisScript("return redis.call('incrby', KEYS[1], ARGV[1]) -- " + getTestKey());
+        String key = getTestKey("counter");
+
+        assertThat(script.execute(executor, Collections.singletonList(key), Collections.singletonList("2")), is(2L));
+        assertThat("First call should load the script", script.getLoads(), is(1L));
+        assertThat(script.execute(executor, Collections.singletonList(key), Collections.singletonList("2")), is(4L));
+        assertThat(script.getLoads(), is(1L));
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.scriptFlush();
+        }
+        assertThat(script.execute(executor, Collections.singletonList(key), Collections.singletonList("2")), is(6L));
+        assertThat(script.getLoads(), is(2L));
+    }
+}
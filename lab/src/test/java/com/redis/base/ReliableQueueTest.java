@@ -0,0 +1,164 @@
+package com.redis.base;
+
+import com.redis.training.TestBase;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.args.ListDirection;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for ReliableQueue acknowledgements, requeueing, crashed workers, key slots and long waits.
+ */
+public class ReliableQueueTest extends TestBase {
+
+    @Test
+    public void testExpiredMessagesReturnToHeadInOrder() throws InterruptedException {
+        RedisExecutor executor = new PooledRedisExecutor(jedisPool);
+        String key = getTestKey("queue");
+        ReliableQueue queue = new ReliableQueue(executor, key, ListDirection.RIGHT);
+        queue.setVisibilityTimeoutMillis(100);
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.lpush(key, "m1", "m2", "m3", "m4");
+        }
+
+        assertThat(queue.dequeue("w1"), is("m1"));
+        assertThat(queue.ackAndDequeue("w1", "m1"), is("m2"));
+        assertThat(queue.dequeue("w1"), is("m3"));
+        assertThat(queue.getProcessing("w1"), is(Arrays.asList("m3", "m2")));
+        assertThat("The lease is still held", queue.requeueExpired(), is(0L));
+
+        Thread.sleep(150);
+        assertThat(queue.requeueExpired(), is(2L));
+        assertThat(queue.getProcessing("w1").size(), is(0));
+        assertThat("Requeued messages come first, oldest first", queue.dequeue("w2"), is("m2"));
+        assertThat(queue.ackAndDequeue("w2", "m2"), is("m3"));
+        assertThat("A requeued message can no longer be acknowledged by its old worker", queue.ack("w1", "m3"), is(false));
+
+        queue.release("w2", "m3");
+        assertThat(queue.dequeue("w2"), is("m4"));
+        assertThat("A released message goes to the end", queue.ackAndDequeue("w2", "m4"), is("m3"));
+        assertThat(queue.ack("w2", "m3"), is(true));
+        assertThat(queue.dequeue("w2", 0.1), is((String) null));
+    }
+
+    @Test
+    public void testNoMessageIsLostWhenWorkersCrash() throws InterruptedException {
+        RedisExecutor executor = new PooledRedisExecutor(jedisPool);
+        String key = getTestKey("queue");
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            messages.add("message-" + i);
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.lpush(key, messages.toArray(new String[0]));
+        }
+
+        ReliableQueue queue = new ReliableQueue(executor, key, ListDirection.RIGHT);
+        queue.setVisibilityTimeoutMillis(200);
+        queue.start(50);
+        Set<String> handled = ConcurrentHashMap.newKeySet();
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            String worker = "worker-" + w;
+            // Workers 0 and 1 crash while holding a message, after 20 and 50 messages
+            int crashAfter = w == 0 ? 20 : w == 1 ? 50 : Integer.MAX_VALUE;
+            Thread thread = new Thread(() -> {
+                long deadline = System.currentTimeMillis() + 10_000;
+                String message = queue.dequeue(worker);
+                for (int done = 0; handled.size() < messages.size() && System.currentTimeMillis() < deadline; ) {
+                    if (message == null) {
+                        message = queue.dequeue(worker, 0.05);
+                        continue;
+                    }
+                    if (done == crashAfter) {
+                        return;
+                    }
+                    handled.add(message);
+                    done++;
+                    message = queue.ackAndDequeue(worker, message);
+                }
+                if (message != null) {
+                    // Every message was handled by then, so this is a requeued duplicate
+                    queue.ack(worker, message);
+                }
+            });
+            workers.add(thread);
+            thread.start();
+            if (w < 2) {
+                // Crash before the others start, so the survivors cannot drain the queue first
+                thread.join();
+            }
+        }
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        queue.close();
+
+        assertThat(handled.size(), is(messages.size()));
+        assertThat("Both crashed workers' messages were requeued", queue.getRequeued() >= 2, is(true));
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.llen(key), is(0L));
+            for (int w = 0; w < 4; w++) {
+                assertThat(queue.getProcessing("worker-" + w), is(Collections.<String>emptyList()));
+            }
+        }
+    }
+
+    @Test
+    public void testKeysShareTheSlotOfTheQueueKey() {
+        RedisExecutor executor = new PooledRedisExecutor(jedisPool);
+        String key = getTestKey("queue");
+        ReliableQueue queue = new ReliableQueue(executor, key, ListDirection.RIGHT);
+        assertThat(queue.getProcessingKey("w1"), is("{" + key + "}:processing:w1"));
+        assertThat(JedisClusterCRC16.getSlot(queue.getProcessingKey("w1")), is(JedisClusterCRC16.getSlot(key)));
+
+        ReliableQueue tagged = new ReliableQueue(executor, "{queue}:email", ListDirection.RIGHT);
+        assertThat("A hash tag of the queue key is kept", tagged.getProcessingKey("w1"), is("{queue}:email:processing:w1"));
+
+        try {
+            new ReliableQueue(executor, "queue}:email", ListDirection.RIGHT);
+            fail("A key that cannot be wrapped in a hash tag should be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Its derived keys would land in another slot
+        }
+    }
+
+    @Test
+    public void testLongWaitRenewsTheLease() throws Exception {
+        RedisExecutor executor = new PooledRedisExecutor(jedisPool);
+        String key = getTestKey("queue");
+        ReliableQueue queue = new ReliableQueue(executor, key, ListDirection.RIGHT);
+        queue.setVisibilityTimeoutMillis(200);
+        ExecutorService waiter = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> message = waiter.submit(() -> queue.dequeue("w1", 5));
+
+            Thread.sleep(600);
+            try (Jedis jedis = jedisPool.getResource()) {
+                assertThat("The lease outlives the visibility timeout while waiting",
+                        jedis.exists("{" + key + "}:lease:w1"), is(true));
+                jedis.lpush(key, "late");
+            }
+            assertThat(message.get(5, TimeUnit.SECONDS), is("late"));
+            assertThat("A message arriving late in the wait is not requeued", queue.requeueExpired(), is(0L));
+            assertThat(queue.getProcessing("w1"), is(Collections.singletonList("late")));
+        } finally {
+            waiter.shutdownNow();
+        }
+    }
+}
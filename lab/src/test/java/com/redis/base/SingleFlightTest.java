@@ -0,0 +1,134 @@
+package com.redis.base;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for SingleFlight.
+ */
+public class SingleFlightTest {
+    private static final int CALLERS = 16;
+
+    @Test
+    public void testConcurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<String> loads = new SingleFlight<>();
+        AtomicInteger loaderCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(pool.submit(() -> loads.execute("key", () -> {
+                    loaderCalls.incrementAndGet();
+                    await(release);
+                    return "value";
+                })));
+            }
+            while (loads.getLoads() + loads.getCoalesced() < CALLERS) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(), is("value"));
+            }
+            assertThat("Only one loader should run", loaderCalls.get(), is(1));
+            assertThat(loads.getCoalesced(), is((long) CALLERS - 1));
+            assertThat(loads.getInFlight(), is(0));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureIsSharedAndKeyReleased() throws Exception {
+        SingleFlight<String> loads = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = pool.submit(() -> loads.execute("key", () -> {
+                await(release);
+                throw new IllegalStateException("backend down");
+            }));
+            while (loads.getInFlight() == 0) {
+                Thread.sleep(5);
+            }
+            Future<String> follower = pool.submit(() -> loads.execute("key", () -> "not called"));
+            while (loads.getCoalesced() == 0) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertFailsWithIllegalState(leader);
+            assertFailsWithIllegalState(follower);
+            assertThat("Next call should load again", loads.execute("key", () -> "value"), is("value"));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testErrorIsSharedWithWaitingCallers() throws Exception {
+        SingleFlight<String> loads = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = pool.submit(() -> loads.execute("key", () -> {
+                await(release);
+                throw new OutOfMemoryError("loader");
+            }));
+            while (loads.getInFlight() == 0) {
+                Thread.sleep(5);
+            }
+            Future<String> follower = pool.submit(() -> loads.execute("key", () -> "not called"));
+            while (loads.getCoalesced() == 0) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<String> result : Arrays.asList(leader, follower)) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                    fail("Expected the load to fail");
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause(), instanceOf(OutOfMemoryError.class));
+                }
+            }
+            assertThat(loads.getInFlight(), is(0));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void assertFailsWithIllegalState(Future<String> result) throws InterruptedException {
+        try {
+            result.get();
+            fail("Expected the load to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.redis.base;
+
+import com.redis.training.TestBase;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.resps.StreamEntry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Tests for StreamQueue delivery, reclaiming and trimming.
+ */
+public class StreamQueueTest extends TestBase {
+
+    @Test
+    public void testEntriesOfDeadConsumerAreReclaimed() throws InterruptedException {
+        RedisExecutor executor = new PooledRedisExecutor(jedisPool);
+        StreamQueue queue = new StreamQueue(executor, getTestKey("stream"), "workers");
+        queue.setMinIdleMillis(100);
+        for (int i = 0; i < 5; i++) {
+            queue.enqueue(Collections.singletonMap("n", String.valueOf(i)));
+        }
+
+        // The first consumer reads everything and dies without acknowledging
+        assertThat(queue.read("dead", 10).size(), is(5));
+        assertThat(queue.read("alive", 10).size(), is(0));
+        assertThat("Entries are not idle long enough yet", queue.reclaim("alive", 10).size(), is(0));
+
+        Thread.sleep(150);
+        List<StreamEntry> reclaimed = queue.reclaim("alive", 3);
+        assertThat(reclaimed.size(), is(3));
+        assertThat(reclaimed.get(0).getFields().get("n"), is("0"));
+        assertThat(queue.ack(Collections.singletonList(reclaimed.get(0).getID())), is(1L));
+        assertThat(queue.getPendingCount(), is(4L));
+    }
+
+    @Test
+    public void testConsumerGroupHandlesEachEntryOnceAndTrims() throws InterruptedException {
+        RedisExecutor executor = new PooledRedisExecutor(jedisPool);
+        String key = getTestKey("stream");
+        StreamQueue queue = new StreamQueue(executor, key, "workers");
+        queue.setMaxLength(1000);
+        queue.setConsumerBatch(50, 50);
+        Set<String> handled = ConcurrentHashMap.newKeySet();
+        queue.start("worker", 4, entry -> {
+            if (!handled.add(entry.getFields().get("n"))) {
+                throw new IllegalStateException("Handled twice: " + entry.getID());
+            }
+        });
+        try {
+            for (int i = 0; i < 5000; i++) {
+                queue.enqueue(Collections.singletonMap("n", String.valueOf(i)));
+            }
+            for (int wait = 0; wait < 100 && queue.getProcessed() < 5000; wait++) {
+                Thread.sleep(50);
+            }
+        } finally {
+            queue.close();
+        }
+
+        assertThat(handled.size(), is(5000));
+        assertThat(queue.getFailed(), is(0L));
+        assertThat(queue.getPendingCount(), is(0L));
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat("MAXLEN ~ keeps the stream near its max length", jedis.xlen(key), lessThan(2000L));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.redis.base;
+
+import com.redis.training.TestBase;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for TimeSeriesRollup compaction and range queries.
+ */
+public class TimeSeriesRollupTest extends TestBase {
+    private static final long HOUR = 3_600_000;
+    private static final long DAY = 24 * HOUR;
+    private static final long NOW = Instant.parse("2024-03-10T12:30:00Z").toEpochMilli();
+
+    @Test
+    public void testCompactedDaysSurviveFinerBuckets() {
+        TimeSeriesRollup rollup = newRollup(NOW);
+        long fiveDaysAgo = NOW - 5 * DAY;
+        rollup.record("views", fiveDaysAgo, 3);
+        rollup.record("views", fiveDaysAgo + 2 * HOUR, 4);
+        rollup.record("views", NOW - 3 * DAY, 5);
+
+        // Days before yesterday are read from day buckets, which only the compactor writes
+        assertThat(rollup.query("views", TimeSeriesRollup.Resolution.DAY, fiveDaysAgo, fiveDaysAgo).get(day(fiveDaysAgo)), is(0L));
+        // A compactor running back then; the first run catches up on the last two days
+        newRollup(fiveDaysAgo + DAY + HOUR).compact();
+        newRollup(NOW - 2 * DAY + HOUR).compact();
+        newRollup(NOW - 2 * DAY + HOUR).compact();
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            // Minute and hour buckets expire long before day buckets
+            jedis.del(jedis.keys(getTestKey("rollup:views:[mh]:*")).toArray(new String[0]));
+        }
+        Map<Long, Long> days = rollup.query("views", TimeSeriesRollup.Resolution.DAY, fiveDaysAgo, NOW);
+        assertThat(days.size(), is(6));
+        assertThat(days.get(day(fiveDaysAgo)), is(7L));
+        assertThat(days.get(day(NOW - 4 * DAY)), is(0L));
+        assertThat(days.get(day(NOW - 3 * DAY)), is(5L));
+    }
+
+    @Test
+    public void testRecentPeriodsAreReadFromFinerBuckets() {
+        TimeSeriesRollup rollup = newRollup(NOW);
+        rollup.record("views", NOW, 1);
+        rollup.record("views", NOW - 60_000, 2);
+        rollup.record("views", NOW - HOUR, 4);
+        rollup.record("views", NOW - 3 * HOUR, 8);
+
+        Map<Long, Long> minutes = rollup.query("views", TimeSeriesRollup.Resolution.MINUTE, NOW - 60_000, NOW);
+        assertThat(new ArrayList<>(minutes.values()), is(Arrays.asList(2L, 1L)));
+
+        // Hours before the previous one need the compactor
+        Map<Long, Long> hours = rollup.query("views", TimeSeriesRollup.Resolution.HOUR, NOW - 3 * HOUR, NOW);
+        assertThat(new ArrayList<>(hours.values()), is(Arrays.asList(0L, 0L, 4L, 3L)));
+        rollup.compact();
+        hours = rollup.query("views", TimeSeriesRollup.Resolution.HOUR, NOW - 3 * HOUR, NOW);
+        assertThat(new ArrayList<>(hours.values()), is(Arrays.asList(8L, 0L, 4L, 3L)));
+
+        assertThat(rollup.query("views", TimeSeriesRollup.Resolution.DAY, NOW, NOW).get(day(NOW)), is(15L));
+    }
+
+    private TimeSeriesRollup newRollup(long now) {
+        TimeSeriesRollup rollup = new TimeSeriesRollup(new PooledRedisExecutor(jedisPool), getTestKey());
+        rollup.setClock(() -> now);
+        return rollup;
+    }
+
+    private static long day(long millis) {
+        return millis - millis % DAY;
+    }
+}
@@ -0,0 +1,77 @@
+package com.redis.base;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Tests for the value codecs.
+ */
+public class ValueCodecTest {
+    private static final String SMALL = "User:123:profile é";
+    private static final String LARGE = repeat("{\"name\":\"user\",\"city\":\"Lisbon\"},", 100);
+
+    @Test
+    public void testSmallValuesAreNotCompressed() {
+        StringCodec codec = new StringCodec(512);
+
+        byte[] bytes = codec.encode(SMALL);
+
+        assertThat(bytes[0], is(ValueCodec.STRING_FORMAT));
+        assertThat(bytes.length, is(SMALL.getBytes(StandardCharsets.UTF_8).length + 1));
+        assertThat(codec.decode(bytes), is(SMALL));
+    }
+
+    @Test
+    public void testLargeValuesAreCompressed() {
+        StringCodec codec = new StringCodec(512);
+
+        byte[] bytes = codec.encode(LARGE);
+
+        assertThat(bytes[0], is((byte) (ValueCodec.STRING_FORMAT | ValueCodec.DEFLATED)));
+        assertThat(bytes.length, lessThan(LARGE.length() / 4));
+        assertThat(codec.decode(bytes), is(LARGE));
+    }
+
+    @Test
+    public void testDecodesValuesWrittenWithOtherSettings() {
+        StringCodec raw = new StringCodec();
+        StringCodec compressing = new StringCodec(0);
+
+        assertThat(raw.decode(compressing.encode(LARGE)), is(LARGE));
+        assertThat(compressing.decode(raw.encode(LARGE)), is(LARGE));
+        assertThat("Plain strings stored before the codec should decode",
+                compressing.decode(LARGE.getBytes(StandardCharsets.UTF_8)), is(LARGE));
+        assertThat(raw.decode(null), is(nullValue()));
+    }
+
+    @Test
+    public void testMapRoundTrip() {
+        MapCodec codec = new MapCodec(64);
+        Map<String, String> profile = new LinkedHashMap<>();
+        profile.put("name", "João");
+        profile.put("email", "");
+        profile.put("bio", repeat("redis ", 50));
+
+        byte[] bytes = codec.encode(profile);
+
+        assertThat(bytes[0], is((byte) (ValueCodec.MAP_FORMAT | ValueCodec.DEFLATED)));
+        assertThat(codec.decode(bytes), is(profile));
+        assertThat(codec.decode(new MapCodec().encode(profile)), is(profile));
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
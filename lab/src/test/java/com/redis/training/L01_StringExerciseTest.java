@@ -4,6 +4,12 @@ import org.junit.Test;
 import org.junit.Before;
 import redis.clients.jedis.Jedis;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
@@ -167,4 +173,53 @@ public class L01_StringExerciseTest extends TestBase {
         assertThat("Key should have expiration", ttl, greaterThan(0L));
         assertThat("TTL should be around 30 seconds", ttl, lessThanOrEqualTo(30L));
     }
+
+    @Test
+    public void testSetAndGetStringsInBatches() {
+        l01StringExercise.setBatchSize(7);
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            values.put(getTestKey("batch:" + i), "value" + i);
+        }
+
+        l01StringExercise.setStrings(values);
+
+        List<String> keys = new ArrayList<>(values.keySet());
+        keys.add(3, getTestKey("batch:missing"));
+        List<String> result = l01StringExercise.getStrings(keys);
+
+        assertThat("Should return one value per key", result.size(), is(keys.size()));
+        assertThat("Missing key should return null", result.get(3), is(nullValue()));
+        for (int i = 0; i < keys.size(); i++) {
+            if (i != 3) {
+                assertThat("Values should come back in input order", result.get(i), is(values.get(keys.get(i))));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementCountersInBatches() {
+        l01StringExercise.setBatchSize(2);
+        String first = getTestKey("batchCounter:1");
+        String second = getTestKey("batchCounter:2");
+
+        List<Long> result = l01StringExercise.incrementCounters(Arrays.asList(first, second, first));
+
+        assertThat(result, is(Arrays.asList(1L, 1L, 2L)));
+    }
+
+    @Test
+    public void testSetStringsWithExpiration() {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put(getTestKey("batchExpiring:1"), "one");
+        values.put(getTestKey("batchExpiring:2"), "two");
+
+        l01StringExercise.setStringsWithExpiration(values, 30);
+
+        for (String key : values.keySet()) {
+            Long ttl = getKeyTTL(key);
+            assertThat("Key should have expiration", ttl, greaterThan(0L));
+            assertThat("TTL should be around 30 seconds", ttl, lessThanOrEqualTo(30L));
+        }
+    }
 }
@@ -1,11 +1,20 @@
 package com.redis.training;
 
+import com.redis.base.ConnectionMetrics;
+import com.redis.base.HashMapper;
+import com.redis.base.HashScanIterator;
 import org.junit.Test;
 import org.junit.Before;
 import redis.clients.jedis.Jedis;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -176,4 +185,138 @@ public class L02_HashExerciseTest extends TestBase {
         assertThat("Second value should be email", values.get(1), is("carol@example.com"));
         assertThat("Third value should be null for non-existent field", values.get(2), is(nullValue()));
     }
+
+    @Test
+    public void testLoadUserProfileReadsRequestedFieldsOnly() {
+        String key = getTestKey("mappedProfile");
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.hset(key, "firstname", "Jane");
+            jedis.hset(key, "email", "jane.doe@example.com");
+            jedis.hset(key, "yearjoined", "2020");
+        }
+
+        HashMapper.Tracked<L02_HashExercise.UserProfile> profile = l02HashExercise.loadUserProfile(key, "email");
+
+        assertThat(profile.get().email, is("jane.doe@example.com"));
+        assertThat("Fields not requested should not be loaded", profile.get().firstname, is(nullValue()));
+
+        l02HashExercise.getUserProfileMapper().loadMore(profile, "firstname", "yearjoined");
+        assertThat(profile.get().firstname, is("Jane"));
+        assertThat(profile.get().yearjoined, is(2020));
+    }
+
+    @Test
+    public void testSaveUserProfileWritesChangedFieldsOnly() {
+        String key = getTestKey("mappedProfile");
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.hset(key, "firstname", "Jane");
+            jedis.hset(key, "department", "Engineering");
+        }
+
+        HashMapper.Tracked<L02_HashExercise.UserProfile> profile = l02HashExercise.loadUserProfile(key);
+        assertThat("Nothing changed yet", l02HashExercise.saveUserProfile(profile), is(0));
+
+        profile.get().department = "Sales";
+        Map<String, Long> before;
+        try (Jedis jedis = jedisPool.getResource()) {
+            before = ConnectionMetrics.commandCalls(jedis);
+        }
+        assertThat(l02HashExercise.saveUserProfile(profile), is(1));
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            Map<String, Long> after = ConnectionMetrics.commandCalls(jedis);
+            assertThat("One HSET should be sent", after.get("hset") - before.get("hset"), is(1L));
+            assertThat(jedis.hget(key, "department"), is("Sales"));
+            assertThat(jedis.hget(key, "firstname"), is("Jane"));
+        }
+    }
+
+    @Test
+    public void testScanUserProfileVisitsEveryFieldInPages() {
+        String key = getTestKey("largeProfile");
+        Map<String, String> fields = largeHash(key, 5000);
+
+        Iterator<Map.Entry<String, String>> iterator = l02HashExercise.scanUserProfile(key, 100);
+        Map<String, String> seen = new HashMap<>();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> field = iterator.next();
+            seen.put(field.getKey(), field.getValue());
+        }
+
+        assertThat(seen, is(fields));
+        assertThat("Large hash should be read in several pages",
+                ((HashScanIterator) iterator).getPagesFetched(), greaterThan(10));
+    }
+
+    @Test
+    public void testStreamUserProfileIsLazy() {
+        String key = getTestKey("largeProfile");
+        largeHash(key, 5000);
+
+        HashScanIterator iterator = (HashScanIterator) l02HashExercise.scanUserProfile(key, 100);
+        Set<String> firstTen = new HashSet<>();
+        while (firstTen.size() < 10 && iterator.hasNext()) {
+            firstTen.add(iterator.next().getKey());
+        }
+        assertThat("Only the pages needed should be fetched", iterator.getPagesFetched(), lessThanOrEqualTo(2));
+
+        long matching = l02HashExercise.streamUserProfile(key, 100)
+                .filter(field -> field.getKey().endsWith("7"))
+                .map(Map.Entry::getKey)
+                .distinct()
+                .count();
+        assertThat(matching, is(500L));
+    }
+
+    @Test
+    public void testGetUserProfilesReadsManyHashesInOrder() {
+        List<String> keys = new ArrayList<>();
+        try (Jedis jedis = jedisPool.getResource()) {
+            for (int i = 0; i < 250; i++) {
+                String key = getTestKey("profile:" + i);
+                keys.add(key);
+                if (i % 50 != 0) {
+                    jedis.hset(key, "firstname", "User" + i);
+                    jedis.hset(key, "email", "user" + i + "@example.com");
+                }
+            }
+        }
+
+        l02HashExercise.setBatchSize(64);
+        Map<String, Map<String, String>> profiles = l02HashExercise.getUserProfiles(keys);
+
+        assertThat("Missing profiles should be left out", profiles.size(), is(245));
+        assertThat(profiles.get(keys.get(7)).get("email"), is("user7@example.com"));
+        assertThat(profiles.containsKey(keys.get(50)), is(false));
+        assertThat("Profiles should come back in input order",
+                profiles.keySet().iterator().next(), is(keys.get(1)));
+    }
+
+    @Test
+    public void testBulkGetUserFieldsProjectsFields() {
+        List<String> keys = Arrays.asList(getTestKey("profile:a"), getTestKey("profile:b"), getTestKey("profile:c"));
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.hset(keys.get(0), "firstname", "Jane");
+            jedis.hset(keys.get(0), "lastname", "Doe");
+            jedis.hset(keys.get(0), "department", "Sales");
+            jedis.hset(keys.get(1), "department", "Engineering");
+        }
+
+        Map<String, Map<String, String>> profiles = l02HashExercise.getUserFields(keys, "firstname", "lastname");
+
+        assertThat(profiles.size(), is(1));
+        assertThat(profiles.get(keys.get(0)).keySet(), contains("firstname", "lastname"));
+        assertThat(profiles.get(keys.get(0)).get("lastname"), is("Doe"));
+    }
+
+    private Map<String, String> largeHash(String key, int size) {
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            fields.put("field" + i, "value" + i);
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.hset(key, fields);
+        }
+        return fields;
+    }
 }
@@ -230,4 +230,25 @@ public class L03_ListExerciseTest extends TestBase {
             assertThat("Should keep correct range", remaining, contains("b", "c", "d", "e"));
         }
     }
+
+    @Test
+    public void testReliableDequeueKeepsItemUntilAcknowledged() throws InterruptedException {
+        String queueKey = getTestKey("queue");
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.rpush(queueKey, "item1", "item2");
+        }
+        l03ListExercise.setVisibilityTimeoutMillis(100);
+
+        assertThat(l03ListExercise.reliableDequeue(queueKey, "worker-1", 0), is("item1"));
+        assertThat(l03ListExercise.reliableDequeue(queueKey, "worker-1", 0), is("item2"));
+        assertThat(l03ListExercise.acknowledge(queueKey, "worker-1", "item2"), is(true));
+        assertThat("item1 is still held", l03ListExercise.requeueExpired(queueKey), is(0L));
+
+        // worker-1 dies without acknowledging item1
+        Thread.sleep(150);
+        assertThat(l03ListExercise.requeueExpired(queueKey), is(1L));
+        assertThat(l03ListExercise.reliableDequeue(queueKey, "worker-2", 1), is("item1"));
+        assertThat(l03ListExercise.acknowledge(queueKey, "worker-1", "item1"), is(false));
+        assertThat(l03ListExercise.acknowledge(queueKey, "worker-2", "item1"), is(true));
+    }
 }
@@ -1,19 +1,36 @@
 package com.redis.training;
 
+import com.redis.base.CacheWarmer;
 import com.redis.base.FakeService;
+import com.redis.base.NearCache;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 import redis.clients.jedis.Jedis;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
 /**
@@ -34,6 +51,14 @@ public class L05_CacheExerciseTest extends TestBase {
         l05CacheExercise = new L05_CacheExercise(jedisPool, fakeService);
     }
 
+    @After
+    @Override
+    public void tearDown() {
+        l05CacheExercise.disableNearCache();
+        l05CacheExercise.disableWriteBehind();
+        super.tearDown();
+    }
+
     @Test
     public void testGetUserDataCacheHit() {
         String userId = "123";
@@ -112,4 +137,356 @@ public class L05_CacheExerciseTest extends TestBase {
             }
         }
     }
+
+    @Test
+    public void testNearCacheServesRepeatedReads() throws InterruptedException {
+        String prefixKey = getTestKey();
+        l05CacheExercise.enableNearCache(prefixKey, 100, 60_000);
+        NearCache nearCache = l05CacheExercise.getNearCache();
+
+        // The first read loads and stores the profile; later reads cache it in memory
+        long deadline = System.currentTimeMillis() + 5000;
+        String result = l05CacheExercise.getUserDataNearCached(prefixKey, "123");
+        while (nearCache.getHits() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            result = l05CacheExercise.getUserDataNearCached(prefixKey, "123");
+        }
+
+        assertThat(result, is("something was done"));
+        verify(fakeService, Mockito.times(1)).doSomething("123");
+        assertThat("Repeated reads should hit the near cache", nearCache.getHits(), greaterThan(0L));
+    }
+
+    @Test
+    public void testNearCacheInvalidatedByRedisWrite() throws InterruptedException {
+        String prefixKey = getTestKey();
+        String key = prefixKey + "user:123:profile";
+        l05CacheExercise.enableNearCache(prefixKey, 100, 60_000);
+        l05CacheExercise.getUserDataNearCached(prefixKey, "123");
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.setex(key, 300, "Updated User Data");
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        String result = l05CacheExercise.getUserDataNearCached(prefixKey, "123");
+        while (!"Updated User Data".equals(result) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            result = l05CacheExercise.getUserDataNearCached(prefixKey, "123");
+        }
+
+        assertThat("Near cache should drop the stale profile", result, is("Updated User Data"));
+        assertThat(l05CacheExercise.getNearCache().getInvalidations(), greaterThan(0L));
+    }
+
+    @Test
+    public void testConcurrentMissesCallBackendOnce() throws Exception {
+        String prefixKey = getTestKey();
+        AtomicInteger backendCalls = slowBackend();
+
+        List<String> results = runConcurrently(20, () -> l05CacheExercise.getUserDataCoalesced(prefixKey, "123"));
+
+        for (String result : results) {
+            assertThat(result, is("something was done"));
+        }
+        assertThat("Only one caller should reach the backend", backendCalls.get(), is(1));
+        assertThat(l05CacheExercise.getUserDataLoads().getLoads(), is(1L));
+    }
+
+    @Test
+    public void testLoadLockCoalescesAcrossInstances() throws Exception {
+        String prefixKey = getTestKey();
+        AtomicInteger backendCalls = slowBackend();
+        // Each instance has its own single flight, like separate JVMs
+        L05_CacheExercise other = new L05_CacheExercise(jedisPool, fakeService);
+        l05CacheExercise.setLoadLockMillis(5000);
+        other.setLoadLockMillis(5000);
+
+        AtomicInteger next = new AtomicInteger();
+        List<String> results = runConcurrently(20, () -> (next.getAndIncrement() % 2 == 0 ? l05CacheExercise : other)
+                .getUserDataCoalesced(prefixKey, "123"));
+
+        for (String result : results) {
+            assertThat(result, is("something was done"));
+        }
+        assertThat("Only one instance should reach the backend", backendCalls.get(), is(1));
+        assertThat("Lock should be released", keyExists(prefixKey + "user:123:profile:lock"), is(false));
+    }
+
+    @Test
+    public void testXFetchRefreshesEntryCloseToExpiry() {
+        String prefixKey = getTestKey();
+        String key = prefixKey + "user:123:profile:entry";
+        // Expires in 10 ms but took 10 s to compute: the refresh is all but certain
+        storeEntry(key, "Old User Data", 10_000, System.currentTimeMillis() + 10);
+
+        String result = l05CacheExercise.getUserDataWithRefresh(prefixKey, "123");
+
+        assertThat(result, is("something was done"));
+        verify(fakeService, Mockito.times(1)).doSomething("123");
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.hget(key, "value"), is("something was done"));
+            assertThat("Expiry should move forward",
+                    Long.parseLong(jedis.hget(key, "expiry")), greaterThan(System.currentTimeMillis() + 200_000));
+        }
+    }
+
+    @Test
+    public void testXFetchKeepsFreshEntry() {
+        String prefixKey = getTestKey();
+        storeEntry(prefixKey + "user:123:profile:entry", "Cached User Data", 1, System.currentTimeMillis() + 300_000);
+
+        String result = l05CacheExercise.getUserDataWithRefresh(prefixKey, "123");
+
+        assertThat(result, is("Cached User Data"));
+        verify(fakeService, never()).doSomething(anyString());
+    }
+
+    @Test
+    public void testRefreshEntryDoesNotClashWithPlainProfile() {
+        String prefixKey = getTestKey();
+        l05CacheExercise.getUserDataCoalesced(prefixKey, "123");
+
+        assertThat(l05CacheExercise.getUserDataWithRefresh(prefixKey, "123"), is("something was done"));
+        assertThat("The plain profile should still be a string",
+                l05CacheExercise.getUserDataCoalesced(prefixKey, "123"), is("something was done"));
+    }
+
+    @Test
+    public void testStaleWhileRevalidateServesStaleValue() throws InterruptedException {
+        String prefixKey = getTestKey();
+        String key = prefixKey + "user:123:profile:entry";
+        l05CacheExercise.setRefreshMode(L05_CacheExercise.RefreshMode.STALE_WHILE_REVALIDATE);
+        storeEntry(key, "Old User Data", 1, System.currentTimeMillis() - 1000);
+        AtomicInteger backendCalls = slowBackend();
+
+        for (int i = 0; i < 5; i++) {
+            assertThat("Stale value should be served while refreshing",
+                    l05CacheExercise.getUserDataWithRefresh(prefixKey, "123"), is("Old User Data"));
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        String result = l05CacheExercise.getUserDataWithRefresh(prefixKey, "123");
+        while (!"something was done".equals(result) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            result = l05CacheExercise.getUserDataWithRefresh(prefixKey, "123");
+        }
+        assertThat(result, is("something was done"));
+        assertThat("One background refresh should run", backendCalls.get(), is(1));
+        assertThat("TTL should include the stale period", getKeyTTL(key), greaterThan(300L));
+    }
+
+    @Test
+    public void testWarmUpUserCacheInParallel() {
+        String prefixKey = getTestKey();
+        String[] userIds = userIds(250);
+        CacheWarmer warmer = l05CacheExercise.getCacheWarmer();
+        warmer.setThreads(4);
+        warmer.setChunkSize(50);
+
+        CacheWarmer.Result result = l05CacheExercise.warmUpUserCacheInParallel(prefixKey, userIds);
+
+        assertThat(result.getWarmedKeys(), is(250L));
+        assertThat(result.getFailures().isEmpty(), is(true));
+        for (String userId : userIds) {
+            String key = prefixKey + "user:" + userId + ":profile";
+            assertThat("User should be cached", keyExists(key), is(true));
+            assertThat("TTL should be around 600 seconds", getKeyTTL(key), lessThanOrEqualTo(600L));
+        }
+    }
+
+    @Test
+    public void testWarmUpResumesFromCheckpoint() {
+        String prefixKey = getTestKey();
+        String[] userIds = userIds(100);
+        CacheWarmer warmer = l05CacheExercise.getCacheWarmer();
+        warmer.setChunkSize(10);
+        warmer.setCheckpointKey(prefixKey + "warmup:checkpoint");
+        when(fakeService.doSomething("user42")).thenThrow(new IllegalStateException("backend down"));
+
+        CacheWarmer.Result first = l05CacheExercise.warmUpUserCacheInParallel(prefixKey, userIds);
+
+        assertThat(first.getWarmedKeys(), is(90L));
+        assertThat(first.getFailures().size(), is(1));
+        assertThat(first.getFailures().get(0).getChunkIndex(), is(4));
+
+        Mockito.reset(fakeService);
+        when(fakeService.doSomething(anyString())).thenAnswer(invocation -> "something was done");
+        CacheWarmer.Result second = l05CacheExercise.warmUpUserCacheInParallel(prefixKey, userIds);
+
+        assertThat("Only the failed chunk should be warmed again", second.getWarmedKeys(), is(10L));
+        assertThat(second.getSkippedChunks(), is(9));
+        verify(fakeService, Mockito.times(10)).doSomething(anyString());
+        assertThat("Checkpoint should be removed once complete", keyExists(prefixKey + "warmup:checkpoint"), is(false));
+    }
+
+    /**
+     * Enables write-behind and waits until its startup flush has written a seeded
+     * entry, so that flush cannot pick up the writes of the test.
+     */
+    private void enableWriteBehindAfterStartupFlush(String prefixKey) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.hset(prefixKey + "user:dirty", "0", "startup");
+        }
+        l05CacheExercise.enableWriteBehind(prefixKey, 60_000, 100, 60_000);
+        verify(fakeService, timeout(5000)).doSomething("startup");
+        Mockito.clearInvocations(fakeService);
+    }
+
+    @Test
+    public void testWriteBehindCoalescesHotKeyWrites() {
+        String prefixKey = getTestKey();
+        enableWriteBehindAfterStartupFlush(prefixKey);
+
+        for (int i = 0; i < 50; i++) {
+            assertThat(l05CacheExercise.updateUserDataWriteBehind(prefixKey, "123", "version" + i), is(true));
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat("Cache should hold the latest profile", jedis.get(prefixKey + "user:123:profile"), is("version49"));
+        }
+        verify(fakeService, never()).doSomething(anyString());
+
+        assertThat(l05CacheExercise.getWriteBehind().flush(), is(1));
+
+        verify(fakeService, Mockito.times(1)).doSomething(anyString());
+        verify(fakeService).doSomething("version49");
+        assertThat(l05CacheExercise.getWriteBehind().getPending(), is(0L));
+    }
+
+    @Test
+    public void testWriteBehindFlushesPendingWritesAfterRestart() throws InterruptedException {
+        String prefixKey = getTestKey();
+        enableWriteBehindAfterStartupFlush(prefixKey);
+        l05CacheExercise.updateUserDataWriteBehind(prefixKey, "1", "profile1");
+        l05CacheExercise.updateUserDataWriteBehind(prefixKey, "2", "profile2");
+
+        // Simulates a restart: a new instance picks up the dirty users the first never flushed
+        L05_CacheExercise restarted = new L05_CacheExercise(jedisPool, fakeService);
+        restarted.enableWriteBehind(prefixKey, 50, 100, 60_000);
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (restarted.getWriteBehind().getPending() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+        } finally {
+            restarted.disableWriteBehind();
+        }
+
+        verify(fakeService).doSomething("profile1");
+        verify(fakeService).doSomething("profile2");
+    }
+
+    @Test
+    public void testWriteBehindKeepsEntriesWhenBackendFails() {
+        String prefixKey = getTestKey();
+        enableWriteBehindAfterStartupFlush(prefixKey);
+        l05CacheExercise.updateUserDataWriteBehind(prefixKey, "123", "profile");
+        when(fakeService.doSomething("profile")).thenThrow(new IllegalStateException("backend down"));
+
+        try {
+            l05CacheExercise.getWriteBehind().flush();
+        } catch (IllegalStateException expected) {
+            // The entry stays dirty for the next flush
+        }
+
+        assertThat(l05CacheExercise.getWriteBehind().getPending(), is(1L));
+        Mockito.reset(fakeService);
+        assertThat(l05CacheExercise.getWriteBehind().flush(), is(1));
+    }
+
+    @Test
+    public void testEncodedProfilesAreCompressed() {
+        String prefixKey = getTestKey();
+        StringBuilder profile = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            profile.append("{\"name\":\"user\",\"city\":\"Lisbon\"},");
+        }
+
+        l05CacheExercise.updateUserDataEncoded(prefixKey, "123", profile.toString());
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            byte[] stored = jedis.get((prefixKey + "user:123:profile:encoded").getBytes(StandardCharsets.UTF_8));
+            assertThat("Stored profile should be compressed", stored.length, lessThanOrEqualTo(profile.length() / 4));
+        }
+        assertThat(l05CacheExercise.getUserDataEncoded(prefixKey, "123"), is(profile.toString()));
+        verify(fakeService, never()).doSomething("123");
+    }
+
+    @Test
+    public void testEncodedReadsPlainProfiles() {
+        String prefixKey = getTestKey();
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.setex(prefixKey + "user:123:profile", 300, "Cached User Data");
+        }
+
+        assertThat(l05CacheExercise.getUserDataEncoded(prefixKey, "123"), is("Cached User Data"));
+        verify(fakeService, never()).doSomething(anyString());
+    }
+
+    @Test
+    public void testEncodedProfilesDoNotReachPlainReaders() {
+        String prefixKey = getTestKey();
+        StringBuilder profile = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            profile.append("{\"name\":\"user\",\"city\":\"Lisbon\"},");
+        }
+
+        l05CacheExercise.updateUserDataEncoded(prefixKey, "123", profile.toString());
+
+        assertThat("Plain readers should not see codec bytes",
+                l05CacheExercise.getUserDataCoalesced(prefixKey, "123"), is("something was done"));
+        assertThat(l05CacheExercise.getUserDataEncoded(prefixKey, "123"), is(profile.toString()));
+    }
+
+    private static String[] userIds(int count) {
+        String[] userIds = new String[count];
+        for (int i = 0; i < count; i++) {
+            userIds[i] = "user" + i;
+        }
+        return userIds;
+    }
+
+    private void storeEntry(String key, String value, long deltaMillis, long expiry) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("value", value);
+        fields.put("delta", String.valueOf(deltaMillis));
+        fields.put("expiry", String.valueOf(expiry));
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.hset(key, fields);
+            jedis.expire(key, 300);
+        }
+    }
+
+    private AtomicInteger slowBackend() {
+        AtomicInteger backendCalls = new AtomicInteger();
+        when(fakeService.doSomething(anyString())).thenAnswer(invocation -> {
+            backendCalls.incrementAndGet();
+            Thread.sleep(200);
+            return "something was done";
+        });
+        return backendCalls;
+    }
+
+    private static List<String> runConcurrently(int callers, Callable<String> call) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return call.call();
+                }));
+            }
+            start.countDown();
+
+            List<String> results = new ArrayList<>();
+            for (Future<String> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 }
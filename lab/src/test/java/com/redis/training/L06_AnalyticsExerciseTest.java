@@ -1,12 +1,26 @@
 package com.redis.training;
 
+import com.redis.base.BucketedCounters;
+import com.redis.base.ConnectionMetrics;
+import com.redis.base.TimeSeriesRollup;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import redis.clients.jedis.Jedis;
 
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 /**
  * Tests for AnalyticsExercise.
@@ -22,6 +36,15 @@ public class L06_AnalyticsExerciseTest extends TestBase {
         l06AnalyticsExercise = new L06_AnalyticsExercise(jedisPool);
     }
 
+    @After
+    @Override
+    public void tearDown() {
+        l06AnalyticsExercise.disablePageViewBuffer();
+        l06AnalyticsExercise.disableRollupCompactors();
+        l06AnalyticsExercise.disableTrendingPages();
+        super.tearDown();
+    }
+
     @Test
     public void testTrackPageView() {
         String pageId = "home";
@@ -94,4 +117,317 @@ public class L06_AnalyticsExerciseTest extends TestBase {
         assertThat("Total views should be 0", analytics[1], is(0L));
         assertThat("Total time should be 0", analytics[2], is(0L));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBucketedCountersUseFewCompactKeys() {
+        String keyPrefix = getTestKey();
+        String date = "2024-01-15";
+        l06AnalyticsExercise.enableBucketedCounters(4);
+
+        for (int page = 0; page < 200; page++) {
+            assertThat(l06AnalyticsExercise.recordPageView(keyPrefix, "page" + page, date), is(1L));
+        }
+        assertThat(l06AnalyticsExercise.recordPageView(keyPrefix, "page7", date), is(2L));
+        assertThat(l06AnalyticsExercise.recordTimeSpent(keyPrefix, "user1", "page7", 120), is(120L));
+        assertThat(l06AnalyticsExercise.recordTimeSpent(keyPrefix, "user2", "page7", 30), is(30L));
+
+        Long[] analytics = l06AnalyticsExercise.readPageAnalytics(keyPrefix, "page7", date);
+        assertThat(analytics[0], is(2L));
+        assertThat(analytics[1], is(2L));
+        assertThat(analytics[2], is(150L));
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            // Daily and total views, user and page time: 4 groups of at most 4 buckets
+            assertThat(jedis.keys(keyPrefix + "*").size(), lessThanOrEqualTo(16));
+            String bucket = l06AnalyticsExercise.getBucketedCounters()
+                    .bucketKey(keyPrefix + "counters:pageviews:" + date, "page7");
+            assertThat(jedis.objectEncoding(bucket), is("ziplist"));
+            assertThat("Daily buckets should expire", jedis.ttl(bucket), greaterThan(0L));
+        }
+    }
+
+    @Test
+    public void testBucketedUserTimeCountsTheLastWeek() {
+        String keyPrefix = getTestKey();
+        l06AnalyticsExercise.enableBucketedCounters(4);
+        BucketedCounters counters = l06AnalyticsExercise.getBucketedCounters();
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        String threeDaysAgo = counters.bucketKey(keyPrefix + "counters:time:user:" + today.minusDays(3), "user1:home");
+        String eightDaysAgo = counters.bucketKey(keyPrefix + "counters:time:user:" + today.minusDays(8), "user1:home");
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.hset(threeDaysAgo, "user1:home", "40");
+            jedis.hset(eightDaysAgo, "user1:home", "1000");
+        }
+
+        assertThat(l06AnalyticsExercise.recordTimeSpent(keyPrefix, "user1", "home", 20), is(60L));
+        assertThat(l06AnalyticsExercise.recordTimeSpentScripted(keyPrefix, "user1", "home", 10), is(70L));
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            String todayBucket = counters.bucketKey(keyPrefix + "counters:time:user:" + today, "user1:home");
+            assertThat("A day bucket should outlive the week it is counted in by at most a day",
+                    jedis.ttl(todayBucket), lessThanOrEqualTo(8 * 24 * 60 * 60L));
+        }
+    }
+
+    @Test
+    public void testMigrateCountersToBuckets() {
+        String keyPrefix = getTestKey();
+        String date = "2024-01-15";
+        l06AnalyticsExercise.recordPageView(keyPrefix, "home", date);
+        l06AnalyticsExercise.recordPageView(keyPrefix, "home", date);
+        l06AnalyticsExercise.recordTimeSpent(keyPrefix, "user1", "home", 90);
+
+        l06AnalyticsExercise.enableBucketedCounters(8);
+        // Counts written after switching and before migrating are added up
+        l06AnalyticsExercise.recordPageView(keyPrefix, "home", date);
+        assertThat(l06AnalyticsExercise.readPageAnalytics(keyPrefix, "home", date)[1], is(3L));
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.expire(keyPrefix + "time:user1:home", 1000);
+        }
+        assertThat(l06AnalyticsExercise.migrateCountersToBuckets(keyPrefix), is(4L));
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.exists(keyPrefix + "pageviews:home:" + date), is(false));
+            assertThat(jedis.exists(keyPrefix + "time:user1:home"), is(false));
+            String timeBucket = l06AnalyticsExercise.getBucketedCounters().bucketKey(
+                    keyPrefix + "counters:time:user:" + LocalDate.now(ZoneOffset.UTC), "user1:home");
+            assertThat("The bucket should keep the remaining TTL of the key",
+                    jedis.ttl(timeBucket), allOf(greaterThan(0L), lessThanOrEqualTo(1000L)));
+        }
+        Long[] analytics = l06AnalyticsExercise.readPageAnalytics(keyPrefix, "home", date);
+        assertThat(analytics[0], is(3L));
+        assertThat(analytics[1], is(3L));
+        assertThat(analytics[2], is(90L));
+        assertThat(l06AnalyticsExercise.recordTimeSpent(keyPrefix, "user1", "home", 10), is(100L));
+    }
+
+    @Test
+    public void testBufferedPageViewsAreMergedPerPage() {
+        String keyPrefix = getTestKey();
+        String date = "2024-01-15";
+        l06AnalyticsExercise.enablePageViewBuffer(60_000, 1_000_000);
+
+        Map<String, Long> before;
+        try (Jedis jedis = jedisPool.getResource()) {
+            before = ConnectionMetrics.commandCalls(jedis);
+        }
+        for (int i = 0; i < 1000; i++) {
+            l06AnalyticsExercise.bufferPageView(keyPrefix, "page" + i % 2, date);
+        }
+        assertThat("Views should wait in the buffer",
+                l06AnalyticsExercise.readPageAnalytics(keyPrefix, "page0", date)[1], is(0L));
+
+        l06AnalyticsExercise.disablePageViewBuffer();
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            Map<String, Long> after = ConnectionMetrics.commandCalls(jedis);
+            assertThat("One INCRBY per page and counter", after.get("incrby") - before.getOrDefault("incrby", 0L), is(4L));
+            assertThat(jedis.ttl(keyPrefix + "pageviews:page0:" + date), greaterThan(0L));
+        }
+        Long[] analytics = l06AnalyticsExercise.readPageAnalytics(keyPrefix, "page0", date);
+        assertThat(analytics[0], is(500L));
+        assertThat(analytics[1], is(500L));
+    }
+
+    @Test
+    public void testBufferedPageViewsUseBucketsWhenEnabled() {
+        String keyPrefix = getTestKey();
+        String date = "2024-01-15";
+        l06AnalyticsExercise.enableBucketedCounters(4);
+        l06AnalyticsExercise.enablePageViewBuffer(10, 1000);
+
+        for (int i = 0; i < 50; i++) {
+            l06AnalyticsExercise.bufferPageView(keyPrefix, "home", date);
+        }
+        l06AnalyticsExercise.getPageViewBuffer().flush();
+
+        assertThat(l06AnalyticsExercise.readPageAnalytics(keyPrefix, "home", date)[0], is(50L));
+        assertThat(keyExists(keyPrefix + "pageviews:home:total"), is(false));
+    }
+
+    @Test
+    public void testScriptedTrackingMatchesPipelinedTracking() {
+        String keyPrefix = getTestKey();
+        String date = "2024-01-15";
+
+        assertThat(l06AnalyticsExercise.recordPageViewScripted(keyPrefix, "home", date), is(1L));
+        assertThat(l06AnalyticsExercise.recordPageViewScripted(keyPrefix, "home", date), is(2L));
+        assertThat(l06AnalyticsExercise.recordTimeSpentScripted(keyPrefix, "user1", "home", 120), is(120L));
+        assertThat(l06AnalyticsExercise.recordTimeSpentScripted(keyPrefix, "user1", "home", 30), is(150L));
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.ttl(keyPrefix + "pageviews:home:" + date), greaterThan(0L));
+            assertThat(jedis.ttl(keyPrefix + "time:user1:home"), greaterThan(0L));
+        }
+
+        // Bucketed counters still count the views stored as plain keys
+        l06AnalyticsExercise.enableBucketedCounters(4);
+        assertThat(l06AnalyticsExercise.recordPageViewScripted(keyPrefix, "home", date), is(3L));
+        assertThat(l06AnalyticsExercise.recordTimeSpentScripted(keyPrefix, "user1", "home", 50), is(200L));
+
+        Long[] analytics = l06AnalyticsExercise.readPageAnalytics(keyPrefix, "home", date);
+        assertThat(analytics[0], is(3L));
+        assertThat(analytics[1], is(3L));
+        assertThat(analytics[2], is(200L));
+    }
+
+    @Test
+    public void testUniqueVisitorsStayWithinHyperLogLogSize() {
+        String keyPrefix = getTestKey();
+        String date = "2024-01-15";
+        for (int i = 0; i < 20_000; i++) {
+            // Every visitor views the page twice
+            l06AnalyticsExercise.recordPageView(keyPrefix, "home", date, "visitor" + i % 10_000);
+        }
+
+        Long[] analytics = l06AnalyticsExercise.readPageAnalytics(keyPrefix, "home", date);
+        assertThat(analytics[1], is(20_000L));
+        assertThat((double) analytics[3], closeTo(10_000, 300));
+        try (Jedis jedis = jedisPool.getResource()) {
+            // 12304 bytes once dense, whatever the number of visitors
+            assertThat(jedis.strlen(keyPrefix + "uniques:{home}:" + date), lessThanOrEqualTo(12_304L));
+        }
+    }
+
+    @Test
+    public void testUniqueVisitorsRollUpByWeekAndMonth() {
+        String keyPrefix = getTestKey();
+        // 2024-01-15 is a Monday: day d of the week sees visitors d*100 .. d*100+199
+        for (int day = 0; day < 7; day++) {
+            String date = "2024-01-" + (15 + day);
+            for (int v = day * 100; v < day * 100 + 200; v++) {
+                l06AnalyticsExercise.recordPageView(keyPrefix, "home", date, "visitor" + v);
+            }
+        }
+        l06AnalyticsExercise.recordPageView(keyPrefix, "home", "2024-01-02", "visitor5000");
+
+        assertThat((double) l06AnalyticsExercise.getUniqueVisitors(keyPrefix, "home", "2024-01-16"), closeTo(200, 4));
+        long week = l06AnalyticsExercise.rollUpWeeklyUniqueVisitors(keyPrefix, "home", "2024-01-18");
+        assertThat((double) week, closeTo(800, 16));
+        assertThat(l06AnalyticsExercise.getUniqueVisitors(keyPrefix, "home", "2024-W03"), is(week));
+
+        long month = l06AnalyticsExercise.rollUpMonthlyUniqueVisitors(keyPrefix, "home", "2024-01");
+        assertThat((double) month, closeTo(801, 16));
+        assertThat("Rolling up again should not change the estimate",
+                l06AnalyticsExercise.rollUpMonthlyUniqueVisitors(keyPrefix, "home", "2024-01"), is(month));
+    }
+
+    @Test
+    public void testPageViewSeriesOverSeveralWeeks() {
+        String keyPrefix = getTestKey();
+        long hour = 3_600_000L;
+        long day = 24 * hour;
+        long now = System.currentTimeMillis();
+        long today = now - now % day;
+        TimeSeriesRollup rollup = l06AnalyticsExercise.getPageViewRollup(keyPrefix);
+
+        long total = 0;
+        for (int d = 20; d >= 0; d--) {
+            long dayStart = today - d * day;
+            for (int v = 0; v < d % 3; v++) {
+                l06AnalyticsExercise.recordPageViewAt(keyPrefix, "home", dayStart + v * hour);
+                total++;
+            }
+            // The compactor runs every hour
+            for (long h = dayStart + hour; h <= Math.min(now, dayStart + day); h += hour) {
+                long clock = h;
+                rollup.setClock(() -> clock);
+                rollup.compact();
+            }
+        }
+
+        rollup.setClock(() -> now);
+        Map<Long, Long> series = l06AnalyticsExercise.getPageViewSeries(keyPrefix, "home",
+                TimeSeriesRollup.Resolution.DAY, today - 20 * day, now);
+        assertThat(series.size(), is(21));
+        for (int d = 20; d >= 0; d--) {
+            assertThat(series.get(today - d * day), is((long) (d % 3)));
+        }
+        assertThat(l06AnalyticsExercise.readPageAnalytics(keyPrefix, "home", "1970-01-01")[1], is(total));
+
+        Map<Long, Long> hours = l06AnalyticsExercise.getPageViewSeries(keyPrefix, "home",
+                TimeSeriesRollup.Resolution.HOUR, today - 20 * day, today - 20 * day + 2 * hour);
+        assertThat(new ArrayList<>(hours.values()), is(Arrays.asList(1L, 1L, 0L)));
+    }
+
+    @Test
+    public void testTrendingPagesDecayOlderWindows() {
+        String keyPrefix = getTestKey();
+        long day = 24 * 3_600_000L;
+        l06AnalyticsExercise.enableTrendingPages(day, 3, 0.5, 100);
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.zadd("{" + keyPrefix + "trending}:" + (System.currentTimeMillis() / day - 1), 10, "old");
+        }
+
+        for (int i = 0; i < 6; i++) {
+            l06AnalyticsExercise.recordPageView(keyPrefix, "home", "2024-01-15");
+        }
+        l06AnalyticsExercise.recordPageView(keyPrefix, "about", "2024-01-15");
+
+        Map<String, Double> trending = l06AnalyticsExercise.getTrendingPages(keyPrefix, 2);
+        assertThat(new ArrayList<>(trending.keySet()), is(Arrays.asList("home", "old")));
+        assertThat(trending.get("home"), is(6.0));
+        assertThat("Views of the previous window count half", trending.get("old"), is(5.0));
+        assertThat(l06AnalyticsExercise.getTrendingPages(keyPrefix, 10).size(), is(3));
+    }
+
+    @Test
+    public void testTrendingMergeIsStoredOncePerWindow() {
+        String keyPrefix = getTestKey();
+        long day = 24 * 3_600_000L;
+        l06AnalyticsExercise.enableTrendingPages(day, 2, 0.5, 100);
+        String previous = "{" + keyPrefix + "trending}:" + (System.currentTimeMillis() / day - 1);
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.zadd(previous, 10, "old");
+        }
+        l06AnalyticsExercise.recordPageView(keyPrefix, "home", "2024-01-15");
+        assertThat(l06AnalyticsExercise.getTrendingPages(keyPrefix, 10).get("old"), is(5.0));
+
+        Set<String> keys;
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.zadd(previous, 100, "late");
+            keys = jedis.keys("{" + keyPrefix + "*");
+        }
+        l06AnalyticsExercise.recordPageView(keyPrefix, "home", "2024-01-15");
+        Map<String, Double> trending = l06AnalyticsExercise.getTrendingPages(keyPrefix, 10);
+
+        assertThat("Views after the merge should be added to it", trending.get("home"), is(2.0));
+        assertThat("Past windows should be merged once per window", trending.containsKey("late"), is(false));
+        L06_AnalyticsExercise otherProcess = new L06_AnalyticsExercise(jedisPool);
+        otherProcess.enableTrendingPages(day, 2, 0.5, 100);
+        assertThat("Other processes should read the same merge", otherProcess.getTrendingPages(keyPrefix, 10),
+                is(trending));
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat("Later reads should not store anything", jedis.keys("{" + keyPrefix + "*"), is(keys));
+        }
+    }
+
+    @Test
+    public void testTrendingWindowStaysWithinCapacity() {
+        String keyPrefix = getTestKey();
+        long day = 24 * 3_600_000L;
+        l06AnalyticsExercise.enableTrendingPages(day, 1, 1.0, 10);
+        l06AnalyticsExercise.recordPageView(keyPrefix, "page0", "2024-01-15");
+        l06AnalyticsExercise.getTrendingPages(keyPrefix, 3);
+
+        // Busiest pages first: a trim only cuts pages below the capacity
+        for (int page = 29; page >= 0; page--) {
+            for (int i = 0; i <= page; i++) {
+                l06AnalyticsExercise.recordPageView(keyPrefix, "page" + page, "2024-01-15");
+            }
+        }
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            long current = System.currentTimeMillis() / day;
+            String window = "{" + keyPrefix + "trending}:" + current;
+            String merge = "{" + keyPrefix + "trending}:decayed:" + current;
+            assertThat(jedis.zcard(window), is(10L));
+            assertThat(jedis.zcard(merge), is(10L));
+            assertThat(jedis.pttl(window), greaterThan(0L));
+            assertThat(jedis.pttl(merge), greaterThan(0L));
+        }
+        Map<String, Double> trending = l06AnalyticsExercise.getTrendingPages(keyPrefix, 3);
+        assertThat(new ArrayList<>(trending.keySet()), is(Arrays.asList("page29", "page28", "page27")));
+        assertThat(trending.get("page29"), is(30.0));
+    }
+}
@@ -1,12 +1,24 @@
 package com.redis.training;
 
+import com.redis.base.ConnectionMetrics;
+import com.redis.base.ReliableQueue;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import redis.clients.jedis.Jedis;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.lessThan;
 
 /**
  * Tests for QueueExercise.
@@ -22,6 +34,13 @@ public class L07_QueueExerciseTest extends TestBase {
         l07QueueExercise = new L07_QueueExercise(jedisPool);
     }
 
+    @After
+    @Override
+    public void tearDown() {
+        l07QueueExercise.stopNotificationWorkers();
+        super.tearDown();
+    }
+
     @Test
     public void testEnqueueNotification() {
         String type = "email";
@@ -99,4 +118,137 @@ public class L07_QueueExerciseTest extends TestBase {
         String thirdMessage = l07QueueExercise.processNextPriorityNotification(prefixKey);
         assertThat("Should return null when queues are empty", thirdMessage, is(nullValue()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFailedStreamNotificationIsProcessedAgain() throws InterruptedException {
+        String prefixKey = getTestKey();
+        l07QueueExercise.enqueueNotificationStream(prefixKey, "sms", "1234567890", "Message 1");
+        l07QueueExercise.enqueueNotificationStream(prefixKey, "sms", "0987654321", "Message 2");
+        l07QueueExercise.getNotificationStream(prefixKey, "sms").setMinIdleMillis(100);
+
+        // The gateway rejects the second message; it stays pending instead of being lost
+        String[] processed = l07QueueExercise.processNotificationStream(prefixKey, "sms", "worker-1", 10, notification -> {
+            if (notification.endsWith("Message 2")) {
+                throw new IllegalStateException("Gateway down");
+            }
+        });
+        assertThat(processed.length, is(1));
+        assertThat(processed[0], is("sms:1234567890:Message 1"));
+        assertThat(l07QueueExercise.processNotificationStream(prefixKey, "sms", "worker-2", 10, n -> { }).length, is(0));
+
+        Thread.sleep(150);
+        processed = l07QueueExercise.processNotificationStream(prefixKey, "sms", "worker-2", 10, n -> { });
+        assertThat(processed.length, is(1));
+        assertThat(processed[0], is("sms:0987654321:Message 2"));
+        assertThat(l07QueueExercise.getNotificationStream(prefixKey, "sms").getPendingCount(), is(0L));
+    }
+
+    @Test
+    public void testNotificationWorkersDrainStream() throws InterruptedException {
+        String prefixKey = getTestKey();
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        l07QueueExercise.startNotificationWorkers(prefixKey, "email", 3, sent::add);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            l07QueueExercise.enqueueNotificationStream(prefixKey, "email", "user" + i + "@example.com", "Hello");
+            expected.add("email:user" + i + "@example.com:Hello");
+        }
+        for (int wait = 0; wait < 100 && sent.size() < expected.size(); wait++) {
+            Thread.sleep(50);
+        }
+
+        assertThat(sent, containsInAnyOrder(expected.toArray()));
+    }
+
+    @Test
+    public void testDrainNotificationQueuePopsBatchesInFifoOrder() {
+        String prefixKey = getTestKey();
+        String queue = prefixKey + "queue:sms";
+        String[] messages = new String[1000];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = "sms:" + i + ":Message " + i;
+        }
+        Map<String, Long> before;
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.lpush(queue, messages);
+            before = ConnectionMetrics.commandCalls(jedis);
+        }
+
+        String[] drained = l07QueueExercise.drainNotificationQueue(prefixKey, "sms", 600);
+        assertThat(drained.length, is(600));
+        assertThat(drained[0], is("sms:0:Message 0"));
+        assertThat(drained[599], is("sms:599:Message 599"));
+        assertThat(l07QueueExercise.drainNotificationQueue(prefixKey, "sms", 1000).length, is(400));
+        assertThat(l07QueueExercise.drainNotificationQueue(prefixKey, "sms", 10).length, is(0));
+        assertThat("Each queue adapts its own batch size",
+                l07QueueExercise.getNotificationBatchSize(prefixKey, "email"), is(1));
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            long pops = ConnectionMetrics.commandCalls(jedis).get("rpop") - before.getOrDefault("rpop", 0L);
+            assertThat("Batches should grow well past one message", pops, lessThan(100L));
+            assertThat(jedis.exists(queue), is(false));
+        }
+    }
+
+    @Test
+    public void testParallelProcessingHandlesEachMessageOnce() {
+        String prefixKey = getTestKey();
+        String[] messages = new String[2000];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = "email:" + i + ":Hello";
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.lpush(prefixKey + "queue:email", messages);
+        }
+
+        Set<String> handled = ConcurrentHashMap.newKeySet();
+        int count = l07QueueExercise.processNotificationQueueParallel(prefixKey, "email", 1500, 4, message -> {
+            if (!handled.add(message)) {
+                throw new IllegalStateException("Handled twice: " + message);
+            }
+        });
+
+        assertThat(count, is(1500));
+        assertThat(handled.size(), is(1500));
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.llen(prefixKey + "queue:email"), is(500L));
+        }
+        assertThat(l07QueueExercise.processNotificationQueueParallel(prefixKey, "email", 1000, 4, handled::add), is(500));
+        assertThat(handled.size(), is(2000));
+    }
+
+    @Test
+    public void testReliableProcessingRequeuesCrashedWorkersMessages() throws InterruptedException {
+        String prefixKey = getTestKey();
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.lpush(prefixKey + "queue:sms", "sms:1:Message 1", "sms:2:Message 2", "sms:3:Message 3");
+        }
+        l07QueueExercise.getReliableNotificationQueue(prefixKey, "sms").setVisibilityTimeoutMillis(100);
+
+        // worker-1 crashes while sending the second message
+        try {
+            l07QueueExercise.processNotificationQueueReliably(prefixKey, "sms", "worker-1", 10, notification -> {
+                if (notification.endsWith("Message 2")) {
+                    throw new Error("Crash");
+                }
+            });
+        } catch (Error expected) {
+            // The message stays in the processing list of worker-1
+        }
+        assertThat(l07QueueExercise.getReliableNotificationQueue(prefixKey, "sms").getProcessing("worker-1"),
+                is(Collections.singletonList("sms:2:Message 2")));
+
+        l07QueueExercise.startNotificationReaper(prefixKey, "sms", 100);
+        Thread.sleep(300);
+        String[] processed = l07QueueExercise.processNotificationQueueReliably(prefixKey, "sms", "worker-2", 10, n -> { });
+        assertThat(processed.length, is(2));
+        assertThat(processed[0], is("sms:2:Message 2"));
+        assertThat(processed[1], is("sms:3:Message 3"));
+        ReliableQueue queue = l07QueueExercise.getReliableNotificationQueue(prefixKey, "sms");
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.exists(prefixKey + "queue:sms", queue.getProcessingKey("worker-1"),
+                    queue.getProcessingKey("worker-2")), is(0L));
+        }
+    }
+}
@@ -7,6 +7,7 @@ import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
 
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -53,11 +54,13 @@ public abstract class TestBase {
 
     /**
      * Deletes all keys created during this test.
-     * Uses the key prefix to identify and remove test keys.
+     * Uses the key prefix to identify and remove test keys, including keys that
+     * take a test key as hash tag ("{test:...}").
      */
     private void deleteAllTestKeys() {
         try (Jedis jedis = jedisPool.getResource()) {
-            Set<String> keys = jedis.keys(keyPrefix + "*");
+            Set<String> keys = new HashSet<>(jedis.keys(keyPrefix + "*"));
+            keys.addAll(jedis.keys("{" + keyPrefix + "*"));
             if (!keys.isEmpty()) {
                 jedis.del(keys.toArray(new String[0]));
             }